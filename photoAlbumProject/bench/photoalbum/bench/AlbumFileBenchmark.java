@@ -0,0 +1,111 @@
+package photoalbum.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import photoalbum.controller.PhotoAlbumController;
+import photoalbum.model.AlbumFile;
+import photoalbum.model.PhotoAlbumModel;
+
+/**
+ * The AlbumFileBenchmark class compares opening an album saved by {@link AlbumFile} with
+ * rebuilding it from its script, and measures saving it. Both files hold the same album.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AlbumFileBenchmark {
+  @Param({"1000", "100000"})
+  public int shapes;
+
+  @Param({"10", "100"})
+  public int snapshots;
+
+  private Path script;
+  private Path saved;
+  private Path scratch;
+  private PhotoAlbumModel album;
+
+  /**
+   * Writes the script and saves its album.
+   *
+   * @throws IOException if a file cannot be written
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.script = Workloads.script(this.shapes, this.snapshots);
+    this.saved = Files.createTempFile("album-", ".alb");
+    this.scratch = Files.createTempFile("album-", ".alb");
+    PhotoAlbumController controller = new PhotoAlbumController();
+    controller.read(new String[] {"-in", this.script.toString(), "-save", this.saved.toString()});
+    controller.readInputFile();
+    this.album = AlbumFile.load(this.saved);
+  }
+
+  /**
+   * Deletes the files.
+   *
+   * @throws IOException if a file cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(this.script);
+    Files.deleteIfExists(this.saved);
+    Files.deleteIfExists(this.scratch);
+  }
+
+  /**
+   * Opens the saved album.
+   *
+   * @return the album
+   * @throws IOException if the file cannot be read
+   */
+  @Benchmark
+  public PhotoAlbumModel load() throws IOException {
+    return AlbumFile.load(this.saved);
+  }
+
+  /**
+   * Rebuilds the album from its script, as it was opened before albums could be saved.
+   *
+   * @return the controller holding the album
+   * @throws IOException if the script cannot be read
+   */
+  @Benchmark
+  public PhotoAlbumController parseScript() throws IOException {
+    PhotoAlbumController controller = new PhotoAlbumController();
+    controller.read(new String[] {"-in", this.script.toString(), "-view", "web", "-out",
+        "unused"});
+    controller.readInputFile();
+    return controller;
+  }
+
+  /**
+   * Saves the album.
+   *
+   * @throws IOException if the file cannot be written
+   */
+  @Benchmark
+  public void save() throws IOException {
+    AlbumFile.save(this.album, this.scratch);
+  }
+}
@@ -0,0 +1,80 @@
+package photoalbum.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import photoalbum.controller.PhotoAlbumController;
+
+/**
+ * The LoadScalingBenchmark class measures loading scripts of doubling size into an album, to
+ * show that load time grows linearly with the size of the script: with the model's shapes indexed
+ * by name, every edit costs the same however many shapes the album holds. Each step doubles the
+ * number of shapes and, as the number of snapshots is fixed, the number of edits as well, so the
+ * time per load should roughly double from one step to the next.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class LoadScalingBenchmark {
+  private static final int SNAPSHOTS = 20;
+
+  @Param({"12500", "25000", "50000", "100000"})
+  public int shapes;
+
+  private Path script;
+  private String[] args;
+
+  /**
+   * Writes the script.
+   *
+   * @throws IOException if the script cannot be written
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.script = Workloads.script(this.shapes, SNAPSHOTS);
+    this.args = new String[] {"-in", this.script.toString(), "-view", "web", "-out", "unused"};
+  }
+
+  /**
+   * Deletes the script.
+   *
+   * @throws IOException if the script cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(this.script);
+  }
+
+  /**
+   * Loads the whole script into a new album.
+   *
+   * @return the controller holding the album
+   * @throws IOException if the script cannot be read
+   */
+  @Benchmark
+  public PhotoAlbumController load() throws IOException {
+    PhotoAlbumController controller = new PhotoAlbumController();
+    controller.read(this.args);
+    controller.readInputFile();
+    return controller;
+  }
+}
@@ -0,0 +1,178 @@
+package photoalbum.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import photoalbum.model.Color;
+import photoalbum.model.Oval;
+import photoalbum.model.PhotoAlbumModel;
+import photoalbum.model.Rectangle;
+import photoalbum.model.Shape;
+
+/**
+ * The ModelBenchmark class measures the edits of {@link PhotoAlbumModel} on an album holding a
+ * given number of shapes and snapshots. The album is rebuilt before every iteration, with each
+ * snapshot taken after one move, so every iteration starts from an album of the same size.
+ * Taking snapshots makes the album grow, so it is timed in fixed batches, each starting from a
+ * freshly built album, rather than for as long as an iteration lasts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelBenchmark {
+  // The number of precomputed random edits, cycled through by the benchmarks.
+  private static final int EDITS = 1 << 16;
+  // The number of snapshots taken by each timed batch of moveAndSnapshot.
+  private static final int SNAPSHOT_BATCH = 100;
+
+  @Param({"1000", "100000"})
+  public int shapes;
+
+  @Param({"1000", "10000"})
+  public int snapshots;
+
+  @Param({"false", "true"})
+  public boolean packed;
+
+  private Shape[] prototypes;
+  private String[] targets;
+  private double[] values;
+  private PhotoAlbumModel model;
+  private int next;
+
+  /**
+   * Creates the shapes and the random edits.
+   */
+  @Setup(Level.Trial)
+  public void setUpTrial() {
+    Random random = new Random(5004);
+    this.prototypes = new Shape[this.shapes];
+    for (int i = 0; i < this.shapes; i++) {
+      Color color = Color.of(random.nextInt(256) / 255.0, random.nextInt(256) / 255.0,
+          random.nextInt(256) / 255.0);
+      double x = random.nextInt(Workloads.CANVAS);
+      double y = random.nextInt(Workloads.CANVAS);
+      double width = 1 + random.nextInt(60);
+      double height = 1 + random.nextInt(60);
+      this.prototypes[i] = random.nextInt(4) == 0
+          ? new Oval("s" + i, x, y, width, height, color)
+          : new Rectangle("s" + i, x, y, width, height, color);
+    }
+    this.targets = new String[EDITS];
+    this.values = new double[EDITS * 2];
+    for (int i = 0; i < EDITS; i++) {
+      this.targets[i] = this.prototypes[random.nextInt(this.shapes)].getName();
+      this.values[i * 2] = random.nextInt(Workloads.CANVAS);
+      this.values[i * 2 + 1] = random.nextInt(Workloads.CANVAS);
+    }
+  }
+
+  /**
+   * Builds a fresh album holding every shape and the given number of snapshots.
+   */
+  @Setup(Level.Iteration)
+  public void setUpIteration() {
+    this.model = build();
+    this.next = 0;
+    for (int s = 0; s < this.snapshots; s++) {
+      int i = nextEdit();
+      this.model.move(this.targets[i], this.values[i * 2], this.values[i * 2 + 1]);
+      this.model.AddSnapshot("Setup");
+    }
+  }
+
+  /**
+   * Adds every shape to a new album.
+   *
+   * @return the album
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public PhotoAlbumModel addShapes() {
+    return build();
+  }
+
+  /**
+   * Moves one shape.
+   */
+  @Benchmark
+  public void move() {
+    int i = nextEdit();
+    this.model.move(this.targets[i], this.values[i * 2], this.values[i * 2 + 1]);
+  }
+
+  /**
+   * Resizes one shape.
+   */
+  @Benchmark
+  public void resize() {
+    int i = nextEdit();
+    this.model.resize(this.targets[i], this.values[i * 2] / 10, this.values[i * 2 + 1] / 10);
+  }
+
+  /**
+   * Removes one shape and adds it back, which keeps the size of the album steady.
+   */
+  @Benchmark
+  public void removeAndAdd() {
+    Shape shape = this.prototypes[nextEdit() % this.shapes];
+    this.model.remove(shape.getName());
+    this.model.addShape(shape);
+  }
+
+  /**
+   * Moves one shape and takes a snapshot. Each score is the time of a batch of
+   * {@value #SNAPSHOT_BATCH} snapshots, taken on an album that starts with the given number.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @Warmup(iterations = 10, batchSize = SNAPSHOT_BATCH)
+  @Measurement(iterations = 20, batchSize = SNAPSHOT_BATCH)
+  public void moveAndSnapshot() {
+    int i = nextEdit();
+    this.model.move(this.targets[i], this.values[i * 2], this.values[i * 2 + 1]);
+    this.model.AddSnapshot("Benchmark");
+  }
+
+  /**
+   * Adds every shape to a new album.
+   *
+   * @return the album
+   */
+  private PhotoAlbumModel build() {
+    PhotoAlbumModel album =
+        new PhotoAlbumModel(PhotoAlbumModel.DEFAULT_KEYFRAME_INTERVAL, this.packed);
+    for (Shape shape : this.prototypes) {
+      album.addShape(shape);
+    }
+    return album;
+  }
+
+  /**
+   * Returns the index of the next precomputed edit.
+   *
+   * @return the index
+   */
+  private int nextEdit() {
+    int i = this.next;
+    this.next = (i + 1) & (EDITS - 1);
+    return i;
+  }
+}
@@ -0,0 +1,84 @@
+package photoalbum.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import photoalbum.controller.PhotoAlbumController;
+
+/**
+ * The ParseBenchmark class measures {@link PhotoAlbumController#readInputFile} on a synthetic
+ * script, reading it sequentially or with {@code -parallel}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+  @Param({"1000", "100000"})
+  public int shapes;
+
+  @Param({"10", "100"})
+  public int snapshots;
+
+  @Param({"false", "true"})
+  public boolean parallel;
+
+  private Path script;
+  private String[] args;
+
+  /**
+   * Writes the script.
+   *
+   * @throws IOException if the script cannot be written
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.script = Workloads.script(this.shapes, this.snapshots);
+    this.args = this.parallel
+        ? new String[] {"-in", this.script.toString(), "-view", "web", "-out", "unused",
+            "-parallel"}
+        : new String[] {"-in", this.script.toString(), "-view", "web", "-out", "unused"};
+  }
+
+  /**
+   * Deletes the script.
+   *
+   * @throws IOException if the script cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(this.script);
+  }
+
+  /**
+   * Reads the whole script into a new album.
+   *
+   * @return the controller holding the album
+   * @throws IOException if the script cannot be read
+   */
+  @Benchmark
+  public PhotoAlbumController readInputFile() throws IOException {
+    PhotoAlbumController controller = new PhotoAlbumController();
+    controller.read(this.args);
+    controller.readInputFile();
+    return controller;
+  }
+}
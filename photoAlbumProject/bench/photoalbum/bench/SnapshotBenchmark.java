@@ -0,0 +1,95 @@
+package photoalbum.bench;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import photoalbum.model.IShape;
+import photoalbum.model.PhotoAlbumModel;
+import photoalbum.model.Snapshot;
+
+/**
+ * The SnapshotBenchmark class measures reading back the snapshots of a synthetic album through
+ * {@link PhotoAlbumModel#getSnapshots}, in album order as the views do and at random as the
+ * Select dialog does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotBenchmark {
+  @Param({"1000", "100000"})
+  public int shapes;
+
+  @Param({"10", "100"})
+  public int snapshots;
+
+  @Param({"false", "true"})
+  public boolean packed;
+
+  private PhotoAlbumModel album;
+  private int next;
+
+  /**
+   * Builds the album.
+   *
+   * @throws IOException if the album's script cannot be written or read
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.album = Workloads.album(this.shapes, this.snapshots, this.packed);
+  }
+
+  /**
+   * Reads every snapshot in order and the first and last shape of each.
+   *
+   * @param blackhole the sink of the shapes
+   */
+  @Benchmark
+  public void inOrder(Blackhole blackhole) {
+    for (Snapshot snapshot : this.album.getSnapshots()) {
+      touch(snapshot, blackhole);
+    }
+  }
+
+  /**
+   * Reads one snapshot, going through the album with a large stride so that consecutive reads
+   * rarely share a keyframe.
+   *
+   * @param blackhole the sink of the shapes
+   */
+  @Benchmark
+  public void randomAccess(Blackhole blackhole) {
+    List<Snapshot> list = this.album.getSnapshots();
+    this.next = (this.next + 7919) % list.size();
+    touch(list.get(this.next), blackhole);
+  }
+
+  /**
+   * Reads the first and last shape of a snapshot.
+   *
+   * @param snapshot  the snapshot
+   * @param blackhole the sink of the shapes
+   */
+  private static void touch(Snapshot snapshot, Blackhole blackhole) {
+    List<IShape> shapes = snapshot.getShapes();
+    blackhole.consume(shapes.get(0));
+    blackhole.consume(shapes.get(shapes.size() - 1));
+  }
+}
@@ -0,0 +1,69 @@
+package photoalbum.bench;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import photoalbum.model.Snapshot;
+import photoalbum.view.WebView;
+
+/**
+ * The WebViewBenchmark class measures {@link WebView#render} of a synthetic album into the null
+ * device, so that only producing the markup is timed and not the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebViewBenchmark {
+  private static final String NULL_DEVICE =
+      System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null";
+
+  @Param({"1000", "100000"})
+  public int shapes;
+
+  @Param({"10", "100"})
+  public int snapshots;
+
+  @Param({"1", "4"})
+  public int threads;
+
+  private List<Snapshot> album;
+  private WebView view;
+
+  /**
+   * Builds the album and the view.
+   *
+   * @throws IOException if the album's script cannot be written or read
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.album = Workloads.album(this.shapes, this.snapshots, false).getSnapshots();
+    this.view = new WebView(WebView.DEFAULT_PRECISION, this.threads);
+  }
+
+  /**
+   * Renders every snapshot of the album.
+   *
+   * @throws IOException if the null device cannot be written
+   */
+  @Benchmark
+  public void render() throws IOException {
+    this.view.render(this.album, Workloads.CANVAS, Workloads.CANVAS, NULL_DEVICE);
+  }
+}
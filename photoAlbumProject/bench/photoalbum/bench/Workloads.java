@@ -0,0 +1,82 @@
+package photoalbum.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import photoalbum.controller.PhotoAlbumController;
+import photoalbum.model.AlbumFile;
+import photoalbum.model.PhotoAlbumModel;
+import photoalbum.tools.ScriptGenerator;
+
+/**
+ * The Workloads class provides the synthetic albums the benchmarks run on, made by a
+ * {@link ScriptGenerator} with a fixed seed, so the same sizes always give the same album. The
+ * shapes are spread over a 1000 by 1000 canvas.
+ */
+public final class Workloads {
+  /**
+   * The width and height of the canvas the shapes are spread over.
+   */
+  public static final int CANVAS = 1000;
+  private static final long SEED = 5004;
+
+  private Workloads() {
+  }
+
+  /**
+   * Writes a script to a new temporary file, which is deleted when the JVM exits.
+   *
+   * @param shapes    the number of shapes
+   * @param snapshots the number of snapshots
+   * @return the script file
+   * @throws IOException if the file cannot be written
+   */
+  public static Path script(int shapes, int snapshots) throws IOException {
+    Path file = Files.createTempFile("album-" + shapes + "-" + snapshots + "-", ".txt");
+    file.toFile().deleteOnExit();
+    try (Writer out = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+      generator(shapes, snapshots).write(out);
+    }
+    return file;
+  }
+
+  /**
+   * Builds the album of a script by reading it through the controller, as the application does.
+   *
+   * @param shapes    the number of shapes
+   * @param snapshots the number of snapshots
+   * @param packed    true to store the album's shapes packed
+   * @return the album
+   * @throws IOException if the script cannot be written or read
+   */
+  public static PhotoAlbumModel album(int shapes, int snapshots, boolean packed)
+      throws IOException {
+    Path script = script(shapes, snapshots);
+    Path saved = Files.createTempFile("album-", ".alb");
+    try {
+      PhotoAlbumController controller = new PhotoAlbumController();
+      controller.read(new String[] {"-in", script.toString(), "-save", saved.toString()});
+      controller.readInputFile();
+      return AlbumFile.load(saved, packed);
+    } finally {
+      Files.delete(saved);
+    }
+  }
+
+  /**
+   * Returns the generator of a script. The script creates the shapes, takes a snapshot, and then
+   * moves, resizes, recolors or replaces a tenth of the shapes before each further snapshot.
+   *
+   * @param shapes    the number of shapes
+   * @param snapshots the number of snapshots, at least one
+   * @return the generator
+   */
+  public static ScriptGenerator generator(int shapes, int snapshots) {
+    int every = Math.max(1, shapes / 10);
+    return new ScriptGenerator(SEED).shapes(shapes).canvas(CANVAS, CANVAS)
+        .snapshotEvery(every).edits(every * (snapshots - 1));
+  }
+}
@@ -0,0 +1,216 @@
+package photoalbum.controller;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import photoalbum.bench.Workloads;
+import photoalbum.model.Color;
+import photoalbum.model.Oval;
+import photoalbum.model.PhotoAlbumModel;
+import photoalbum.model.Rectangle;
+import photoalbum.model.ShapeType;
+
+/**
+ * The ParserBenchmark class measures how many megabytes of script per second are read into an
+ * album by the {@link ScriptParser} and by the Scanner and regex reader it replaced, which is
+ * kept here as {@link #readWithScanner}. The megabytes counter gives the megabytes per second,
+ * the main score the whole scripts per second. A third benchmark feeds the ScriptParser to a
+ * handler that ignores every command, which times tokenizing alone. It lives in the controller
+ * package because the handler applying commands to a model is not public.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+  private static final CommandHandler IGNORE = new CommandHandler() {
+    @Override
+    public void shape(String name, ShapeType type, double x, double y, double width,
+                      double height, double red, double green, double blue) {
+    }
+
+    @Override
+    public void move(String name, double x, double y) {
+    }
+
+    @Override
+    public void resize(String name, double width, double height) {
+    }
+
+    @Override
+    public void color(String name, double red, double green, double blue) {
+    }
+
+    @Override
+    public void remove(String name) {
+    }
+
+    @Override
+    public void snapshot(String description) {
+    }
+  };
+
+  @Param({"1000", "100000"})
+  public int shapes;
+
+  @Param({"10", "100"})
+  public int snapshots;
+
+  private Path script;
+  private double megabytes;
+
+  /**
+   * The Throughput class counts the megabytes of script read, which JMH reports per second.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Throughput {
+    public double megabytes;
+
+    /**
+     * Resets the count before every iteration.
+     */
+    @Setup(Level.Iteration)
+    public void reset() {
+      this.megabytes = 0;
+    }
+  }
+
+  /**
+   * Writes the script.
+   *
+   * @throws IOException if the script cannot be written
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.script = Workloads.script(this.shapes, this.snapshots);
+    this.megabytes = Files.size(this.script) / 1e6;
+  }
+
+  /**
+   * Deletes the script.
+   *
+   * @throws IOException if the script cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(this.script);
+  }
+
+  /**
+   * Reads the script into a new album with the ScriptParser.
+   *
+   * @param throughput the megabytes read
+   * @return the album
+   * @throws IOException if the script cannot be read
+   */
+  @Benchmark
+  public PhotoAlbumModel scriptParser(Throughput throughput) throws IOException {
+    PhotoAlbumModel model = new PhotoAlbumModel();
+    try (InputStream in = new FileInputStream(this.script.toFile())) {
+      new ScriptParser(new ModelCommandHandler(model)).parse(in);
+    }
+    throughput.megabytes += this.megabytes;
+    return model;
+  }
+
+  /**
+   * Tokenizes the script with the ScriptParser, ignoring every command.
+   *
+   * @param throughput the megabytes read
+   * @throws IOException if the script cannot be read
+   */
+  @Benchmark
+  public void scriptParserTokenizeOnly(Throughput throughput) throws IOException {
+    try (InputStream in = new FileInputStream(this.script.toFile())) {
+      new ScriptParser(IGNORE).parse(in);
+    }
+    throughput.megabytes += this.megabytes;
+  }
+
+  /**
+   * Reads the script into a new album with the Scanner and regex reader.
+   *
+   * @param throughput the megabytes read
+   * @return the album
+   * @throws IOException if the script cannot be read
+   */
+  @Benchmark
+  public PhotoAlbumModel scanner(Throughput throughput) throws IOException {
+    PhotoAlbumModel model = readWithScanner(this.script.toFile());
+    throughput.megabytes += this.megabytes;
+    return model;
+  }
+
+  /**
+   * Reads a script into a new album the way the controller did before the ScriptParser, line
+   * by line through a Scanner, splitting each line with a regular expression.
+   *
+   * @param file the script
+   * @return the album
+   * @throws IOException if the script cannot be read
+   */
+  static PhotoAlbumModel readWithScanner(File file) throws IOException {
+    PhotoAlbumModel model = new PhotoAlbumModel();
+    try (Scanner sc = new Scanner(file)) {
+      while (sc.hasNextLine()) {
+        String line = sc.nextLine().trim();
+        String[] splitted = line.split("\\s+");
+        if (splitted[0].equalsIgnoreCase("#") || line.isEmpty()) {
+          continue;
+        }
+        if (splitted[0].equalsIgnoreCase("shape")) {
+          Color color = new Color(Double.parseDouble(splitted[7]) / 255,
+              Double.parseDouble(splitted[8]) / 255, Double.parseDouble(splitted[9]) / 255);
+          Double x = Double.parseDouble(splitted[3]);
+          Double y = Double.parseDouble(splitted[4]);
+          Double width = Double.parseDouble(splitted[5]);
+          Double height = Double.parseDouble(splitted[6]);
+          if (splitted[2].equalsIgnoreCase("rectangle")) {
+            model.addShape(new Rectangle(splitted[1], x, y, width, height, color));
+          } else if (splitted[2].equalsIgnoreCase("oval")) {
+            model.addShape(new Oval(splitted[1], x, y, width, height, color));
+          }
+        } else if (splitted[0].equalsIgnoreCase("snapshot")) {
+          model.AddSnapshot(line.length() == 8 ? "" : line.substring(9));
+        } else if (splitted[0].equalsIgnoreCase("move")) {
+          model.move(splitted[1], Integer.parseInt(splitted[2]), Integer.parseInt(splitted[3]));
+        } else if (splitted[0].equalsIgnoreCase("color")) {
+          model.changeColor(splitted[1], new Color(Double.parseDouble(splitted[2]) / 255,
+              Double.parseDouble(splitted[3]) / 255, Double.parseDouble(splitted[4]) / 255));
+        } else if (splitted[0].equalsIgnoreCase("resize")) {
+          model.resize(splitted[1], Integer.parseInt(splitted[2]),
+              Integer.parseInt(splitted[3]));
+        } else if (splitted[0].equalsIgnoreCase("remove")) {
+          model.remove(splitted[1]);
+        } else {
+          throw new IllegalArgumentException("Error reading input file");
+        }
+      }
+    }
+    return model;
+  }
+}
@@ -0,0 +1,117 @@
+package photoalbum.view;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The SvgWriterBenchmark class compares writing numbers with {@link SvgWriter#append(double)}
+ * against the {@code String.format("%f")} the web view used before, both for single numbers
+ * and for whole {@code <rect>} elements written as the web view writes them. The output goes to
+ * a writer that discards it, and every score is per number or per element. It lives in the view
+ * package because SvgWriter is not public.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SvgWriterBenchmark {
+  private static final int VALUES = 4096;
+  private static final String RECT =
+      "<rect x=\"%f\" y=\"%f\" width=\"%f\" height=\"%f\" fill=\"rgb(%d,%d,%d)\" />";
+
+  private final double[] values = new double[VALUES];
+  private final int[] colors = new int[VALUES];
+  private Writer sink;
+  private SvgWriter writer;
+
+  /**
+   * Makes numbers like those of a generated album: whole coordinates and sizes, with a fraction
+   * on one number in four.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(5004);
+    for (int i = 0; i < VALUES; i++) {
+      this.values[i] = random.nextInt(1000)
+          + (random.nextInt(4) == 0 ? random.nextInt(1000) / 1000.0 : 0);
+      this.colors[i] = random.nextInt(256);
+    }
+    this.sink = Writer.nullWriter();
+    this.writer = new SvgWriter(this.sink, SvgWriter.DEFAULT_PRECISION);
+  }
+
+  /**
+   * Writes every number with the SvgWriter.
+   *
+   * @throws IOException never, as the output is discarded
+   */
+  @Benchmark
+  @OperationsPerInvocation(VALUES)
+  public void svgWriterNumber() throws IOException {
+    for (double value : this.values) {
+      this.writer.append(value);
+    }
+  }
+
+  /**
+   * Writes every number with String.format.
+   *
+   * @throws IOException never, as the output is discarded
+   */
+  @Benchmark
+  @OperationsPerInvocation(VALUES)
+  public void stringFormatNumber() throws IOException {
+    for (double value : this.values) {
+      this.sink.write(String.format("%f", value));
+    }
+  }
+
+  /**
+   * Writes a rectangle per four numbers with the SvgWriter, as the web view does.
+   *
+   * @throws IOException never, as the output is discarded
+   */
+  @Benchmark
+  @OperationsPerInvocation(VALUES / 4)
+  public void svgWriterRectangle() throws IOException {
+    for (int i = 0; i < VALUES; i += 4) {
+      this.writer.append("<rect x=\"").append(this.values[i]).append("\" y=\"")
+          .append(this.values[i + 1]).append("\" width=\"").append(this.values[i + 2])
+          .append("\" height=\"").append(this.values[i + 3]).append("\" fill=\"rgb(")
+          .append(this.colors[i]).append(',').append(this.colors[i + 1]).append(',')
+          .append(this.colors[i + 2]).append(")\" />");
+    }
+  }
+
+  /**
+   * Writes a rectangle per four numbers with String.format, as the web view used to.
+   *
+   * @throws IOException never, as the output is discarded
+   */
+  @Benchmark
+  @OperationsPerInvocation(VALUES / 4)
+  public void stringFormatRectangle() throws IOException {
+    for (int i = 0; i < VALUES; i += 4) {
+      this.sink.write(String.format(RECT, this.values[i], this.values[i + 1],
+          this.values[i + 2], this.values[i + 3], this.colors[i], this.colors[i + 1],
+          this.colors[i + 2]));
+    }
+  }
+}
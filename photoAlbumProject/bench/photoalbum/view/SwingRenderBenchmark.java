@@ -0,0 +1,74 @@
+package photoalbum.view;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import photoalbum.bench.Workloads;
+import photoalbum.model.Snapshot;
+
+/**
+ * The SwingRenderBenchmark class measures drawing one snapshot the way
+ * {@link SwingPhotoAlbum#renderSnapshot} does, without a window. It lives in the view package
+ * because the frame a SwingPhotoAlbum builds cannot be created in a headless JVM, so it calls
+ * the drawing code the view uses directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SwingRenderBenchmark {
+  @Param({"1000", "100000"})
+  public int shapes;
+
+  @Param({"10", "100"})
+  public int snapshots;
+
+  @Param({"false", "true"})
+  public boolean directFill;
+
+  private List<Snapshot> album;
+  private BufferedImage image;
+  private int next;
+
+  /**
+   * Builds the album and the image drawn on.
+   *
+   * @throws IOException if the album's script cannot be written or read
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.album = Workloads.album(this.shapes, this.snapshots, false).getSnapshots();
+    this.image = new BufferedImage(Workloads.CANVAS, Workloads.CANVAS,
+        BufferedImage.TYPE_INT_RGB);
+  }
+
+  /**
+   * Draws the next snapshot of the album.
+   *
+   * @return the image drawn on
+   */
+  @Benchmark
+  public BufferedImage renderSnapshot() {
+    Snapshot snapshot = this.album.get(this.next);
+    this.next = (this.next + 1) % this.album.size();
+    SwingPhotoAlbum.draw(this.image, snapshot, this.directFill);
+    return this.image;
+  }
+}
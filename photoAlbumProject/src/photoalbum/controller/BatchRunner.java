@@ -0,0 +1,187 @@
+package photoalbum.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The BatchRunner class processes many input files in one JVM, several at a time on a pool of
+ * threads, so a job with thousands of small albums pays for starting the JVM and warming it up
+ * only once. Every file is processed on its own: an error in one is recorded and the others
+ * carry on. When every file has been processed, the number of files per second and every
+ * failure are reported.
+ */
+final class BatchRunner {
+  private static final String SCRIPT_SUFFIX = ".txt";
+
+  private final int threads;
+  private final PrintStream report;
+
+  /**
+   * The Task interface processes one input file.
+   */
+  interface Task {
+    /**
+     * Processes an input file.
+     *
+     * @param input the input file
+     * @throws IOException if the file cannot be read or its output not written
+     */
+    void process(Path input) throws IOException;
+  }
+
+  /**
+   * Constructs a runner.
+   *
+   * @param threads the number of files processed at once
+   * @param report  the stream the summary is reported to
+   * @throws IllegalArgumentException if the number of threads is not positive
+   */
+  BatchRunner(int threads, PrintStream report) {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Number of threads must be positive");
+    }
+    this.threads = threads;
+    this.report = report;
+  }
+
+  /**
+   * Finds the input files a batch argument names: the {@code .txt} files in a directory, the
+   * files matching a glob pattern such as {@code scripts/*.txt} or {@code scripts/**.txt}, or a
+   * single file. The files are returned in name order.
+   *
+   * @param pattern the directory, glob pattern or file
+   * @return the input files
+   * @throws IOException              if a directory cannot be listed
+   * @throws IllegalArgumentException if no file matches
+   */
+  static List<Path> expand(String pattern) throws IOException {
+    List<Path> inputs;
+    int wildcard = firstWildcard(pattern);
+    if (wildcard < 0) {
+      Path path = Paths.get(pattern);
+      if (Files.isDirectory(path)) {
+        try (Stream<Path> files = Files.list(path)) {
+          inputs = files.filter(file -> Files.isRegularFile(file)
+                  && file.getFileName().toString().endsWith(SCRIPT_SUFFIX))
+              .sorted().collect(Collectors.toList());
+        }
+      } else {
+        inputs = Files.isRegularFile(path) ? List.of(path) : List.of();
+      }
+    } else {
+      int separator = Math.max(pattern.lastIndexOf('/', wildcard),
+          pattern.lastIndexOf(File.separatorChar, wildcard));
+      Path base = Paths.get(separator < 0 ? "" : pattern.substring(0, separator + 1));
+      PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+      // Unless the pattern has a **, no match lies deeper than the pattern's own separators.
+      int depth = pattern.contains("**") ? Integer.MAX_VALUE
+          : (int) pattern.substring(separator + 1).chars()
+              .filter(c -> c == '/' || c == File.separatorChar).count() + 1;
+      try (Stream<Path> files = Files.walk(separator < 0 ? Paths.get("") : base, depth)) {
+        inputs = files.filter(file -> Files.isRegularFile(file) && matcher.matches(file))
+            .sorted().collect(Collectors.toList());
+      }
+    }
+    if (inputs.isEmpty()) {
+      throw new IllegalArgumentException("No input files match: " + pattern);
+    }
+    return inputs;
+  }
+
+  /**
+   * Processes every input file on the pool and reports the summary.
+   *
+   * @param inputs the input files
+   * @param task   what is done with each file
+   * @return the number of files that failed
+   */
+  int run(List<Path> inputs, Task task) {
+    long start = System.nanoTime();
+    ExecutorService pool = Executors.newFixedThreadPool(this.threads, runnable -> {
+      Thread thread = new Thread(runnable, "album-batch");
+      thread.setDaemon(true);
+      return thread;
+    });
+    List<Future<Exception>> results = new ArrayList<>(inputs.size());
+    try {
+      for (Path input : inputs) {
+        results.add(pool.submit(() -> {
+          try {
+            task.process(input);
+            return null;
+          } catch (IOException | RuntimeException e) {
+            return e;
+          }
+        }));
+      }
+      List<String> failures = new ArrayList<>();
+      for (int i = 0; i < inputs.size(); i++) {
+        Exception failure = await(results.get(i));
+        if (failure != null) {
+          failures.add(inputs.get(i) + ": " + (failure.getMessage() != null
+              ? failure.getMessage() : failure.toString()));
+        }
+      }
+      double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+      this.report.printf("Processed %d files in %.2f s (%.2f files per second): %d succeeded, "
+              + "%d failed%n", inputs.size(), seconds, inputs.size() / seconds,
+          inputs.size() - failures.size(), failures.size());
+      for (String failure : failures) {
+        this.report.println("Failed: " + failure);
+      }
+      return failures.size();
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Waits for a file to be processed.
+   *
+   * @param future the pending file
+   * @return the exception the file failed with, or null if it succeeded
+   */
+  private static Exception await(Future<Exception> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new IOException("Interrupted while processing", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      return new IOException(cause);
+    }
+  }
+
+  /**
+   * Returns the index of the first glob character in a pattern.
+   *
+   * @param pattern the pattern
+   * @return the index, or -1 if the pattern is a plain path
+   */
+  private static int firstWildcard(String pattern) {
+    for (int i = 0; i < pattern.length(); i++) {
+      if ("*?[{".indexOf(pattern.charAt(i)) >= 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
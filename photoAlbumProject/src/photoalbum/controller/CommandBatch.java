@@ -0,0 +1,232 @@
+package photoalbum.controller;
+
+import java.util.Arrays;
+import java.util.function.IntSupplier;
+
+import photoalbum.model.ShapeType;
+
+/**
+ * The CommandBatch class records parsed commands in compact primitive arrays so they can be
+ * replayed later, in order, to another {@link CommandHandler}. It lets a part of a script be
+ * parsed on one thread and applied to the model on another.
+ */
+class CommandBatch implements CommandHandler {
+  private static final byte SHAPE_RECTANGLE = 0;
+  private static final byte SHAPE_OVAL = 1;
+  private static final byte MOVE = 2;
+  private static final byte RESIZE = 3;
+  private static final byte COLOR = 4;
+  private static final byte REMOVE = 5;
+  private static final byte SNAPSHOT = 6;
+  private static final int[] ARITY = {7, 7, 2, 2, 3, 0, 0};
+
+  private final ScriptParser parser;
+  private final IntSupplier lineNumbers;
+  private byte[] ops = new byte[256];
+  private int[] lines = new int[256];
+  private String[] strings = new String[256];
+  private double[] numbers = new double[1024];
+  private int size;
+  private int numberCount;
+  private int lineCount;
+
+  /**
+   * Constructs an empty batch. The parser is asked for the line number of every command.
+   */
+  CommandBatch() {
+    this.parser = new ScriptParser(this);
+    this.lineNumbers = this.parser::getLineNumber;
+  }
+
+  /**
+   * Constructs an empty batch that is fed commands by a parser of its own caller, which is
+   * asked for the line number of every command.
+   *
+   * @param lineNumbers gives the number of the line of the command being recorded
+   */
+  CommandBatch(IntSupplier lineNumbers) {
+    this.parser = null;
+    this.lineNumbers = lineNumbers;
+  }
+
+  /**
+   * Returns the parser that records into this batch.
+   *
+   * @return the parser, or null if the batch is fed by another parser
+   */
+  ScriptParser parser() {
+    return this.parser;
+  }
+
+  /**
+   * Returns the number of recorded commands.
+   *
+   * @return the number of commands
+   */
+  int size() {
+    return this.size;
+  }
+
+  /**
+   * Returns the number of lines of script the batch was parsed from.
+   *
+   * @return the number of lines
+   */
+  int lineCount() {
+    return this.lineCount;
+  }
+
+  /**
+   * Sets the number of lines of script the batch was parsed from.
+   *
+   * @param lineCount the number of lines
+   */
+  void setLineCount(int lineCount) {
+    this.lineCount = lineCount;
+  }
+
+  /**
+   * Replays the recorded commands, in order, to a handler.
+   *
+   * @param target     the handler to replay to
+   * @param lineOffset the number of script lines before this batch, used in error messages
+   * @throws ScriptException if the target rejects a command
+   */
+  void replay(CommandHandler target, int lineOffset) {
+    int n = 0;
+    for (int i = 0; i < this.size; i++) {
+      double[] a = this.numbers;
+      String name = this.strings[i];
+      try {
+        switch (this.ops[i]) {
+          case SHAPE_RECTANGLE:
+          case SHAPE_OVAL:
+            target.shape(name, this.ops[i] == SHAPE_OVAL ? ShapeType.OVAL : ShapeType.RECTANGLE,
+                a[n], a[n + 1], a[n + 2], a[n + 3], a[n + 4], a[n + 5], a[n + 6]);
+            break;
+          case MOVE:
+            target.move(name, a[n], a[n + 1]);
+            break;
+          case RESIZE:
+            target.resize(name, a[n], a[n + 1]);
+            break;
+          case COLOR:
+            target.color(name, a[n], a[n + 1], a[n + 2]);
+            break;
+          case REMOVE:
+            target.remove(name);
+            break;
+          default:
+            target.snapshot(name);
+            break;
+        }
+      } catch (ScriptException e) {
+        throw e;
+      } catch (IllegalArgumentException e) {
+        throw new ScriptException(lineOffset + this.lines[i], 1, e.getMessage());
+      }
+      n += ARITY[this.ops[i]];
+    }
+  }
+
+  /**
+   * Records a shape command.
+   */
+  @Override
+  public void shape(String name, ShapeType type, double x, double y, double width,
+                    double height, double red, double green, double blue) {
+    add(type == ShapeType.OVAL ? SHAPE_OVAL : SHAPE_RECTANGLE, name);
+    int n = reserve(7);
+    this.numbers[n] = x;
+    this.numbers[n + 1] = y;
+    this.numbers[n + 2] = width;
+    this.numbers[n + 3] = height;
+    this.numbers[n + 4] = red;
+    this.numbers[n + 5] = green;
+    this.numbers[n + 6] = blue;
+  }
+
+  /**
+   * Records a move command.
+   */
+  @Override
+  public void move(String name, double x, double y) {
+    add(MOVE, name);
+    int n = reserve(2);
+    this.numbers[n] = x;
+    this.numbers[n + 1] = y;
+  }
+
+  /**
+   * Records a resize command.
+   */
+  @Override
+  public void resize(String name, double width, double height) {
+    add(RESIZE, name);
+    int n = reserve(2);
+    this.numbers[n] = width;
+    this.numbers[n + 1] = height;
+  }
+
+  /**
+   * Records a color command.
+   */
+  @Override
+  public void color(String name, double red, double green, double blue) {
+    add(COLOR, name);
+    int n = reserve(3);
+    this.numbers[n] = red;
+    this.numbers[n + 1] = green;
+    this.numbers[n + 2] = blue;
+  }
+
+  /**
+   * Records a remove command.
+   */
+  @Override
+  public void remove(String name) {
+    add(REMOVE, name);
+  }
+
+  /**
+   * Records a snapshot command.
+   */
+  @Override
+  public void snapshot(String description) {
+    add(SNAPSHOT, description);
+  }
+
+  /**
+   * Appends a command with its string argument.
+   *
+   * @param op     the command code
+   * @param string the shape name, or the description of a snapshot
+   */
+  private void add(byte op, String string) {
+    if (this.size == this.ops.length) {
+      int capacity = this.size * 2;
+      this.ops = Arrays.copyOf(this.ops, capacity);
+      this.lines = Arrays.copyOf(this.lines, capacity);
+      this.strings = Arrays.copyOf(this.strings, capacity);
+    }
+    this.ops[this.size] = op;
+    this.lines[this.size] = this.lineNumbers.getAsInt();
+    this.strings[this.size] = string;
+    this.size++;
+  }
+
+  /**
+   * Reserves room for the numeric arguments of the last command.
+   *
+   * @param count the number of arguments
+   * @return the index where the first argument goes
+   */
+  private int reserve(int count) {
+    if (this.numberCount + count > this.numbers.length) {
+      this.numbers = Arrays.copyOf(this.numbers, this.numbers.length * 2);
+    }
+    int start = this.numberCount;
+    this.numberCount += count;
+    return start;
+  }
+}
@@ -0,0 +1,69 @@
+package photoalbum.controller;
+
+import photoalbum.model.ShapeType;
+
+/**
+ * The CommandHandler interface receives the commands of an album script as the
+ * {@link ScriptParser} reads them. Colors are passed exactly as written in the script, as
+ * components from 0 to 255.
+ */
+public interface CommandHandler {
+
+  /**
+   * Handles a shape command, which creates a new shape.
+   *
+   * @param name   the name of the shape
+   * @param type   the type of the shape
+   * @param x      the X-coordinate of the shape
+   * @param y      the Y-coordinate of the shape
+   * @param width  the width (or X radius) of the shape
+   * @param height the height (or Y radius) of the shape
+   * @param red    the red component of the shape's color (0 to 255)
+   * @param green  the green component of the shape's color (0 to 255)
+   * @param blue   the blue component of the shape's color (0 to 255)
+   */
+  void shape(String name, ShapeType type, double x, double y, double width, double height,
+             double red, double green, double blue);
+
+  /**
+   * Handles a move command.
+   *
+   * @param name the name of the shape to move
+   * @param x    the new X-coordinate
+   * @param y    the new Y-coordinate
+   */
+  void move(String name, double x, double y);
+
+  /**
+   * Handles a resize command.
+   *
+   * @param name   the name of the shape to resize
+   * @param width  the new width
+   * @param height the new height
+   */
+  void resize(String name, double width, double height);
+
+  /**
+   * Handles a color command.
+   *
+   * @param name  the name of the shape to recolor
+   * @param red   the new red component (0 to 255)
+   * @param green the new green component (0 to 255)
+   * @param blue  the new blue component (0 to 255)
+   */
+  void color(String name, double red, double green, double blue);
+
+  /**
+   * Handles a remove command.
+   *
+   * @param name the name of the shape to remove
+   */
+  void remove(String name);
+
+  /**
+   * Handles a snapshot command.
+   *
+   * @param description the description of the snapshot, empty if none was given
+   */
+  void snapshot(String description);
+}
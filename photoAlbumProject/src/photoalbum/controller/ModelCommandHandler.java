@@ -0,0 +1,78 @@
+package photoalbum.controller;
+
+import photoalbum.model.Color;
+import photoalbum.model.Oval;
+import photoalbum.model.PhotoAlbumModel;
+import photoalbum.model.Rectangle;
+import photoalbum.model.ShapeType;
+
+/**
+ * The ModelCommandHandler class applies the commands of an album script to a
+ * {@link PhotoAlbumModel}.
+ */
+class ModelCommandHandler implements CommandHandler {
+  private final PhotoAlbumModel model;
+
+  /**
+   * Constructs a handler that applies commands to the given model.
+   *
+   * @param model the model to update
+   */
+  ModelCommandHandler(PhotoAlbumModel model) {
+    this.model = model;
+  }
+
+  /**
+   * Adds a new rectangle or oval to the model.
+   */
+  @Override
+  public void shape(String name, ShapeType type, double x, double y, double width,
+                    double height, double red, double green, double blue) {
+    Color color = Color.of(red / 255, green / 255, blue / 255);
+    if (type == ShapeType.RECTANGLE) {
+      this.model.addShape(new Rectangle(name, x, y, width, height, color));
+    } else {
+      this.model.addShape(new Oval(name, x, y, width, height, color));
+    }
+  }
+
+  /**
+   * Moves a shape in the model.
+   */
+  @Override
+  public void move(String name, double x, double y) {
+    this.model.move(name, x, y);
+  }
+
+  /**
+   * Resizes a shape in the model.
+   */
+  @Override
+  public void resize(String name, double width, double height) {
+    this.model.resize(name, width, height);
+  }
+
+  /**
+   * Changes the color of a shape in the model.
+   */
+  @Override
+  public void color(String name, double red, double green, double blue) {
+    this.model.changeColor(name, Color.of(red / 255, green / 255, blue / 255));
+  }
+
+  /**
+   * Removes a shape from the model.
+   */
+  @Override
+  public void remove(String name) {
+    this.model.remove(name);
+  }
+
+  /**
+   * Takes a snapshot of the model.
+   */
+  @Override
+  public void snapshot(String description) {
+    this.model.AddSnapshot(description);
+  }
+}
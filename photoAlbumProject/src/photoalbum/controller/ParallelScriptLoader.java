@@ -0,0 +1,183 @@
+package photoalbum.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The ParallelScriptLoader class reads very large album scripts on several cores. The file is
+ * memory-mapped and cut into chunks at line boundaries; each chunk is tokenized on a worker
+ * thread into a {@link CommandBatch}, and the batches are replayed to the handler strictly in
+ * file order on the calling thread. Only tokenizing and number parsing run in parallel, so the
+ * handler sees exactly the same commands, in the same order, as with {@link ScriptParser}.
+ *
+ * <p>At most two chunks per thread are parsed ahead of the one being replayed, so memory use
+ * does not grow with the size of the file.</p>
+ */
+public class ParallelScriptLoader {
+  private static final int CHUNK_SIZE = 8 << 20;
+
+  private final int threads;
+
+  /**
+   * Constructs a loader that parses on the given number of threads.
+   *
+   * @param threads the number of parsing threads
+   * @throws IllegalArgumentException if the number of threads is not positive
+   */
+  public ParallelScriptLoader(int threads) {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Number of threads must be positive");
+    }
+    this.threads = threads;
+  }
+
+  /**
+   * Reads a whole script file and passes its commands, in order, to a handler.
+   *
+   * @param file    the script file
+   * @param handler the handler that receives the commands
+   * @throws IOException     if the file cannot be read
+   * @throws ScriptException if the script contains an invalid command
+   */
+  public void load(Path file, CommandHandler handler) throws IOException {
+    ExecutorService pool = Executors.newFixedThreadPool(this.threads, runnable -> {
+      Thread thread = new Thread(runnable, "script-parser");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      Deque<Future<CommandBatch>> pending = new ArrayDeque<>();
+      int lineOffset = 0;
+      long start = 0;
+      while (start < size || !pending.isEmpty()) {
+        while (start < size && pending.size() < this.threads * 2) {
+          long end = chunkEnd(channel, start, size);
+          ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+          pending.add(pool.submit(() -> parse(chunk)));
+          start = end;
+        }
+        CommandBatch batch;
+        try {
+          batch = await(pending.poll());
+        } catch (ScriptException e) {
+          throw e.offsetBy(lineOffset);
+        }
+        batch.replay(handler, lineOffset);
+        lineOffset += batch.lineCount();
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Tokenizes one chunk of a script.
+   *
+   * @param chunk the bytes of the chunk, which start and end at line boundaries
+   * @return the commands of the chunk
+   * @throws IOException     never in practice, as the chunk is already in memory
+   * @throws ScriptException if the chunk contains an invalid command, with chunk-relative lines
+   */
+  private static CommandBatch parse(ByteBuffer chunk) throws IOException {
+    CommandBatch batch = new CommandBatch();
+    batch.parser().parse(new ByteBufferInputStream(chunk));
+    batch.setLineCount(batch.parser().getLineNumber());
+    return batch;
+  }
+
+  /**
+   * Waits for a chunk to be parsed.
+   *
+   * @param future the pending chunk
+   * @return the parsed chunk
+   * @throws IOException     if the chunk could not be read
+   * @throws ScriptException if the chunk contains an invalid command, with chunk-relative lines
+   */
+  private CommandBatch await(Future<CommandBatch> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while parsing", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof ScriptException) {
+        throw (ScriptException) cause;
+      } else if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Finds the end of the chunk that starts at a position: the first line break at or after the
+   * nominal chunk size, or the end of the file.
+   *
+   * @param channel the file
+   * @param start   the start of the chunk
+   * @param size    the size of the file
+   * @return the position just past the chunk's last line break
+   * @throws IOException if the file cannot be read
+   */
+  private static long chunkEnd(FileChannel channel, long start, long size) throws IOException {
+    long position = start + CHUNK_SIZE;
+    if (position >= size) {
+      return size;
+    }
+    ByteBuffer probe = ByteBuffer.allocate(4096);
+    while (position < size) {
+      probe.clear();
+      int n = channel.read(probe, position);
+      if (n <= 0) {
+        break;
+      }
+      for (int i = 0; i < n; i++) {
+        if (probe.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+      position += n;
+    }
+    return size;
+  }
+
+  /**
+   * The ByteBufferInputStream class reads the remaining bytes of a buffer as a stream.
+   */
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return this.buffer.hasRemaining() ? this.buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (!this.buffer.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(len, this.buffer.remaining());
+      this.buffer.get(b, off, n);
+      return n;
+    }
+  }
+}
@@ -1,9 +1,13 @@
 package photoalbum.controller;
 
-import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.Scanner;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 
 import photoalbum.model.*;
 import photoalbum.view.*;
@@ -11,14 +15,25 @@ import photoalbum.view.*;
 /**
  * The PhotoAlbumController class manages the interaction between the model and the view.
  * It processes input arguments, reads input files, and handles rendering of snapshots
- * through the specified view type (graphical or web).
+ * through the specified view type (graphical, web or png).
  */
 public class PhotoAlbumController {
-  private final PhotoAlbumModel model;
+  private PhotoAlbumModel model;
   private IPhotoAlbumView view;
   private String inputFile;
   private String outputFile;
+  private String loadFile;
+  private String saveFile;
   private String version;
+  private boolean parallel;
+  private int precision = WebView.DEFAULT_PRECISION;
+  private long cacheBytes = SwingPhotoAlbum.DEFAULT_CACHE_BYTES;
+  private boolean softCache;
+  private boolean directFill;
+  private boolean packed;
+  private boolean pipeline;
+  private String batch;
+  private int threads = Runtime.getRuntime().availableProcessors();
   private int sizeX = 1000;
   private int sizeY = 1000;
 
@@ -31,12 +46,17 @@ public class PhotoAlbumController {
 
   /**
    * Reads and processes the command-line arguments to initialize input/output files,
-   * view type, and canvas size.
+   * view type, and canvas size. An album saved with -save can be reopened with -load instead of
+   * -in, and the view may be left out when the album is only being saved. With -batch a
+   * directory or glob pattern of scripts is given instead of -in, and each output is named after
+   * its script.
    *
    * @param args the command-line arguments provided to the program
    * @throws IllegalArgumentException if required arguments are missing or invalid
    */
   public void read(String[] args) {
+    boolean cache = false;
+    boolean threadCount = false;
     for (int i = 0; i < args.length; i++) {
       if (args[i].equalsIgnoreCase("-in")) {
         inputFile = args[++i];
@@ -44,6 +64,31 @@ public class PhotoAlbumController {
         outputFile = args[++i];
       } else if (args[i].equalsIgnoreCase("-v") || args[i].equalsIgnoreCase("-view")) {
         version = args[i + 1];
+      } else if (args[i].equalsIgnoreCase("-parallel")) {
+        parallel = true;
+      } else if (args[i].equalsIgnoreCase("-load")) {
+        loadFile = args[++i];
+      } else if (args[i].equalsIgnoreCase("-save")) {
+        saveFile = args[++i];
+      } else if (args[i].equalsIgnoreCase("-precision")) {
+        precision = Integer.parseInt(args[++i]);
+      } else if (args[i].equalsIgnoreCase("-cache")) {
+        cacheBytes = Long.parseLong(args[++i]) << 20;
+        cache = true;
+      } else if (args[i].equalsIgnoreCase("-softcache")) {
+        softCache = true;
+        cache = true;
+      } else if (args[i].equalsIgnoreCase("-directfill")) {
+        directFill = true;
+      } else if (args[i].equalsIgnoreCase("-packed")) {
+        packed = true;
+      } else if (args[i].equalsIgnoreCase("-pipeline")) {
+        pipeline = true;
+      } else if (args[i].equalsIgnoreCase("-batch")) {
+        batch = args[++i];
+      } else if (args[i].equalsIgnoreCase("-threads")) {
+        threads = Integer.parseInt(args[++i]);
+        threadCount = true;
       }
     }
     try {
@@ -57,80 +102,209 @@ public class PhotoAlbumController {
 
     }
 
-    if (inputFile.isEmpty() || version.isEmpty() || (version == "web" && outputFile.isEmpty())) {
+    if (threadCount && batch == null) {
+      throw new IllegalArgumentException("-threads sets how many files -batch processes at once "
+          + "and only works with -batch");
+    }
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Number of threads must be positive");
+    }
+    if (batch != null) {
+      if (inputFile != null || outputFile != null || loadFile != null || saveFile != null) {
+        throw new IllegalArgumentException("-batch names each output after its input and "
+            + "cannot be combined with -in, -out, -load or -save");
+      }
+      if (parallel || cache) {
+        throw new IllegalArgumentException("-batch reads each file on one thread and shows no "
+            + "window, so it cannot be combined with -parallel, -cache or -softcache");
+      }
+      if (version == null || version.equalsIgnoreCase("graphical")) {
+        throw new IllegalArgumentException("-batch only works with the web and png views");
+      }
+      if (isEmpty(batch)) {
+        throw new IllegalArgumentException("Something went wrong with your args");
+      }
+      useHeadlessToolkit();
+      return;
+    }
+    if ((isEmpty(inputFile) && isEmpty(loadFile)) || (isEmpty(version) && isEmpty(saveFile))) {
       throw new IllegalArgumentException("Something went wrong with your args");
     }
+    if (pipeline && (isEmpty(inputFile) || loadFile != null || saveFile != null)) {
+      throw new IllegalArgumentException("-pipeline reads a script with -in and cannot load or "
+          + "save an album");
+    }
+    if (packed) {
+      this.model = new PhotoAlbumModel(PhotoAlbumModel.DEFAULT_KEYFRAME_INTERVAL, true);
+    }
+    if (version == null) {
+      return;
+    }
+    if ((version.equalsIgnoreCase("web") || version.equalsIgnoreCase("png"))
+        && this.outputFile == null) {
+      throw new IllegalArgumentException("No output name is found");
+    }
+    if (version.equalsIgnoreCase("png")) {
+      useHeadlessToolkit();
+    }
+    int cores = Runtime.getRuntime().availableProcessors();
+    this.view = createView(parallel ? cores : 1, cores, System.out);
+    if (pipeline && !(this.view instanceof StreamingView)) {
+      throw new IllegalArgumentException("-pipeline only works with the web and png views");
+    }
+  }
+
+  /**
+   * Creates the view the version names.
+   *
+   * @param webThreads the number of threads the web view renders on
+   * @param pngThreads the number of threads the png view draws and encodes on
+   * @param report     the stream the png view reports its frame rate to, or null for none
+   * @return the view
+   * @throws IllegalArgumentException if the version is not supported
+   */
+  private IPhotoAlbumView createView(int webThreads, int pngThreads, PrintStream report) {
     if (version.equalsIgnoreCase("web")) {
-      if (this.outputFile == null) {
-        throw new IllegalArgumentException("No output name is found");
-      }
-      this.view = new WebView();
+      return new WebView(precision, webThreads);
+    } else if (version.equalsIgnoreCase("png")) {
+      return new PngView(pngThreads, directFill, report);
     } else if (version.equalsIgnoreCase("graphical")) {
-      this.view = new SwingPhotoAlbum();
+      return new SwingPhotoAlbum(cacheBytes, softCache, directFill);
     } else {
       throw new IllegalArgumentException("version doesn't support.");
     }
   }
 
+  /**
+   * Runs AWT headless, unless asked otherwise, so the png view works without a display.
+   */
+  private static void useHeadlessToolkit() {
+    if (System.getProperty("java.awt.headless") == null) {
+      System.setProperty("java.awt.headless", "true");
+    }
+  }
+
   /**
    * Reads the input file to create and modify shapes, take snapshots, and perform
-   * other operations as specified by the input commands.
+   * other operations as specified by the input commands. With the -parallel option the file is
+   * memory-mapped and tokenized on all available cores, which pays off for very large scripts.
+   * With -load a saved album is opened instead, and with -save the album is saved once built.
+   * With -packed the album's shapes are stored packed, which takes much less memory.
+   *
+   * <p>With -pipeline the script is parsed, applied to the model and rendered all at once by a
+   * {@link ScriptPipeline}, each snapshot being rendered as soon as it is taken and let go
+   * afterwards, so output starts at once and memory use does not grow with the length of the
+   * script. The album is then rendered already when this returns.</p>
+   *
+   * <p>With -batch every script the pattern matches is read and rendered here, each into its own
+   * model and view, on a {@link BatchRunner} pool of -threads threads. A script that fails does
+   * not stop the others; the number of scripts per second and every failure are reported at the
+   * end.</p>
    *
    * @throws FileNotFoundException    if the input file cannot be found
-   * @throws IllegalArgumentException if the file contains invalid commands
+   * @throws IOException              if the input file cannot be read or the album not saved, or
+   *                                  if any script of a batch failed
+   * @throws IllegalArgumentException if the file contains invalid commands, or no script matches
+   *                                  the batch pattern
    */
-  public void readInputFile() throws FileNotFoundException {
-    File file = new File(inputFile);
-    Scanner sc = new Scanner(file);
-    while (sc.hasNextLine()) {
-      String line = sc.nextLine().trim();
-      String[] splitted = line.split("\\s+");
-      if (splitted[0].equalsIgnoreCase("#") || line.isEmpty()) continue;
-      if (splitted[0].equalsIgnoreCase("shape")) {
-        Color color = new Color(Double.parseDouble(splitted[7]) / 255,
-            Double.parseDouble(splitted[8]) / 255, Double.parseDouble(splitted[9]) / 255);
-        Double X = Double.parseDouble(splitted[3]);
-        Double Y = Double.parseDouble(splitted[4]);
-        Double XX = Double.parseDouble(splitted[5]);
-        Double YY = Double.parseDouble(splitted[6]);
-        if (splitted[2].equalsIgnoreCase("rectangle")) {
-          this.model.addShape(new Rectangle(splitted[1], X, Y, XX, YY, color));
-        } else if (splitted[2].equalsIgnoreCase("oval")) {
-          this.model.addShape(new Oval(splitted[1], X, Y, XX, YY, color));
-        }
-      } else if (splitted[0].equalsIgnoreCase("snapshot")) {
-        if (line.length() == 8) this.model.AddSnapshot("");
-        else this.model.AddSnapshot(line.substring(9));
-      } else if (splitted[0].equalsIgnoreCase("move")) {
-        int x = Integer.parseInt(splitted[2]);
-        int y = Integer.parseInt(splitted[3]);
-        this.model.move(splitted[1], x, y);
-      } else if (splitted[0].equalsIgnoreCase("color")) {
-        Color color = new Color(Double.parseDouble(splitted[2]) / 255,
-            Double.parseDouble(splitted[3]) / 255, Double.parseDouble(splitted[4]) / 255);
-        this.model.changeColor(splitted[1], color);
-      } else if (splitted[0].equalsIgnoreCase("resize")) {
-        int x = Integer.parseInt(splitted[2]);
-        int y = Integer.parseInt(splitted[3]);
-        this.model.resize(splitted[1], x, y);
-      } else if (splitted[0].equalsIgnoreCase("remove")) {
-        this.model.remove(splitted[1]);
-      } else {
-        sc.close();
-        throw new IllegalArgumentException("Error reading input file");
+  public void readInputFile() throws IOException {
+    if (this.batch != null) {
+      List<Path> inputs = BatchRunner.expand(this.batch);
+      int failed = new BatchRunner(this.threads, System.out).run(inputs, this::process);
+      if (failed > 0) {
+        throw new IOException(failed + " of " + inputs.size() + " input files failed");
+      }
+      return;
+    }
+    if (this.pipeline) {
+      // The script is opened first, so a missing script leaves no output behind.
+      try (InputStream in = new FileInputStream(this.inputFile);
+           SnapshotSink sink = ((StreamingView) this.view).open(this.sizeX, this.sizeY,
+               this.outputFile)) {
+        new ScriptPipeline(this.model).run(in, sink);
       }
+      return;
+    }
+    if (this.loadFile != null) {
+      this.model = AlbumFile.load(Paths.get(this.loadFile), this.packed);
+    } else {
+      parseInputFile();
+    }
+    if (this.saveFile != null) {
+      AlbumFile.save(this.model, Paths.get(this.saveFile));
+    }
+  }
+
+  /**
+   * Reads and renders one script of a batch with a controller of its own, which takes the
+   * options of this one. The output is written next to the script, named after it: the web view
+   * writes {@code name.html} and the png view {@code name-0001.png} and so on. The files of a
+   * batch are already processed in parallel, so each one is parsed and rendered on one thread.
+   *
+   * @param input the script
+   * @throws IOException if the script cannot be read or its output not written
+   */
+  private void process(Path input) throws IOException {
+    String name = input.getFileName().toString();
+    int dot = name.lastIndexOf('.');
+    String base = dot > 0 ? name.substring(0, dot) : name;
+    String suffix = this.version.equalsIgnoreCase("web") ? ".html" : ".png";
+    PhotoAlbumController album = new PhotoAlbumController();
+    album.inputFile = input.toString();
+    album.outputFile = input.resolveSibling(base + suffix).toString();
+    album.version = this.version;
+    album.precision = this.precision;
+    album.directFill = this.directFill;
+    album.packed = this.packed;
+    album.pipeline = this.pipeline;
+    album.sizeX = this.sizeX;
+    album.sizeY = this.sizeY;
+    if (album.packed) {
+      album.model = new PhotoAlbumModel(PhotoAlbumModel.DEFAULT_KEYFRAME_INTERVAL, true);
+    }
+    album.view = album.createView(1, 1, null);
+    album.readInputFile();
+    album.render();
+  }
 
+  /**
+   * Parses the input script into the model.
+   *
+   * @throws IOException if the input file cannot be read
+   */
+  private void parseInputFile() throws IOException {
+    CommandHandler handler = new ModelCommandHandler(this.model);
+    if (this.parallel) {
+      new ParallelScriptLoader(Runtime.getRuntime().availableProcessors())
+          .load(Paths.get(inputFile), handler);
+      return;
+    }
+    try (InputStream in = new FileInputStream(inputFile)) {
+      new ScriptParser(handler).parse(in);
     }
-    sc.close();
   }
 
   /**
-   * Renders the snapshots using the specified view type (graphical or web).
+   * Renders the snapshots using the specified view type (graphical, web or png). With -pipeline
+   * or -batch the snapshots were rendered while the input file was read, and nothing is left to
+   * do.
    *
    * @throws IOException if an error occurs during rendering
    */
   public void render() throws IOException {
+    if (this.view == null || this.pipeline || this.batch != null) {
+      return;
+    }
     this.view.render(this.model.getSnapshots(), this.sizeX, this.sizeY, this.outputFile);
   }
 
+  /**
+   * Returns true if an argument was not given or is empty.
+   *
+   * @param arg the argument
+   * @return true if the argument is missing
+   */
+  private static boolean isEmpty(String arg) {
+    return arg == null || arg.isEmpty();
+  }
 }
@@ -0,0 +1,67 @@
+package photoalbum.controller;
+
+/**
+ * The ScriptException class reports an invalid command in an album script, together with the
+ * line and column where it was found.
+ */
+public class ScriptException extends IllegalArgumentException {
+  private static final long serialVersionUID = 1L;
+
+  private final int line;
+  private final int column;
+  private final String reason;
+
+  /**
+   * Constructs a ScriptException for a position in a script.
+   *
+   * @param line   the 1-based line number
+   * @param column the 1-based column number
+   * @param reason what went wrong
+   */
+  public ScriptException(int line, int column, String reason) {
+    super("Error reading input file at line " + line + ", column " + column + ": " + reason);
+    this.line = line;
+    this.column = column;
+    this.reason = reason;
+  }
+
+  /**
+   * Returns the line of the script where the error was found.
+   *
+   * @return the 1-based line number
+   */
+  public int getLine() {
+    return this.line;
+  }
+
+  /**
+   * Returns the column of the script where the error was found.
+   *
+   * @return the 1-based column number
+   */
+  public int getColumn() {
+    return this.column;
+  }
+
+  /**
+   * Returns the description of the error without its position.
+   *
+   * @return what went wrong
+   */
+  public String getReason() {
+    return this.reason;
+  }
+
+  /**
+   * Returns a copy of this exception with its line moved down by the given number of lines. This
+   * is used when a part of a script was parsed on its own.
+   *
+   * @param lines the number of lines before the part that was parsed
+   * @return the relocated exception
+   */
+  public ScriptException offsetBy(int lines) {
+    ScriptException moved = new ScriptException(this.line + lines, this.column, this.reason);
+    moved.initCause(this);
+    return moved;
+  }
+}
@@ -0,0 +1,411 @@
+package photoalbum.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import photoalbum.model.ShapeType;
+
+/**
+ * The ScriptParser class reads album scripts and passes each command to a
+ * {@link CommandHandler}. It works directly on the bytes of the script: lines are split and
+ * tokenized in place, keywords are matched without building strings, numbers are parsed without
+ * boxing, and shape names are looked up in a small table so each distinct name is turned into a
+ * String only once.
+ *
+ * <p>Keywords and shape types are case-insensitive. Blank lines and lines starting with
+ * {@code #} are skipped. Errors are reported as a {@link ScriptException} naming the line and
+ * column of the offending token.</p>
+ */
+public class ScriptParser {
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final byte[] SHAPE = bytes("shape");
+  private static final byte[] MOVE = bytes("move");
+  private static final byte[] RESIZE = bytes("resize");
+  private static final byte[] COLOR = bytes("color");
+  private static final byte[] REMOVE = bytes("remove");
+  private static final byte[] SNAPSHOT = bytes("snapshot");
+  private static final byte[] RECTANGLE = bytes("rectangle");
+  private static final byte[] OVAL = bytes("oval");
+  private static final double[] POWERS_OF_TEN = new double[23];
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private final CommandHandler handler;
+  private final NameTable names = new NameTable();
+  private byte[] line;
+  private int lineNumber;
+  private int lineStart;
+  private int pos;
+  private int end;
+  private int tokenStart;
+
+  /**
+   * Constructs a parser that passes commands to the given handler.
+   *
+   * @param handler the handler that receives the commands
+   */
+  public ScriptParser(CommandHandler handler) {
+    this.handler = handler;
+  }
+
+  /**
+   * Reads a whole script from a stream. The stream is read in large blocks, so it does not need
+   * to be buffered, and it is not closed.
+   *
+   * @param in the stream holding the script
+   * @throws IOException     if the stream cannot be read
+   * @throws ScriptException if the script contains an invalid command
+   */
+  public void parse(InputStream in) throws IOException {
+    byte[] buf = new byte[BUFFER_SIZE];
+    int start = 0;
+    int scanned = 0;
+    int limit = 0;
+    int number = 0;
+    while (true) {
+      int n = in.read(buf, limit, buf.length - limit);
+      if (n < 0) {
+        if (start < limit) {
+          parseLine(buf, start, limit, ++number);
+        }
+        return;
+      }
+      limit += n;
+      for (int i = scanned; i < limit; i++) {
+        if (buf[i] == '\n') {
+          parseLine(buf, start, i, ++number);
+          start = i + 1;
+        }
+      }
+      if (start > 0) {
+        System.arraycopy(buf, start, buf, 0, limit - start);
+        limit -= start;
+        start = 0;
+      }
+      scanned = limit;
+      if (limit == buf.length) {
+        buf = Arrays.copyOf(buf, buf.length * 2);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of the line being parsed, or of the last line parsed. Handlers can call
+   * this while they receive a command to learn where it came from.
+   *
+   * @return the 1-based line number
+   */
+  public int getLineNumber() {
+    return this.lineNumber;
+  }
+
+  /**
+   * Parses a single line of a script and passes its command, if any, to the handler.
+   *
+   * @param buf        the buffer holding the line
+   * @param start      the index of the first byte of the line
+   * @param end        the index just past the last byte of the line, excluding the line break
+   * @param lineNumber the 1-based number of the line, used in error messages
+   * @throws ScriptException if the line contains an invalid command
+   */
+  public void parseLine(byte[] buf, int start, int end, int lineNumber) {
+    this.line = buf;
+    this.lineNumber = lineNumber;
+    this.lineStart = start;
+    this.pos = start;
+    this.end = end;
+    while (this.end > this.pos && isSpace(buf[this.end - 1])) {
+      this.end--;
+    }
+    skipSpace();
+    if (this.pos == this.end || buf[this.pos] == '#') {
+      return;
+    }
+    nextToken();
+    int keywordStart = this.tokenStart;
+    int keywordEnd = this.pos;
+    if (matches(SHAPE)) {
+      String name = nextName();
+      ShapeType type = nextType();
+      double x = nextNumber();
+      double y = nextNumber();
+      double width = nextNumber();
+      double height = nextNumber();
+      double red = nextNumber();
+      double green = nextNumber();
+      double blue = nextNumber();
+      if (type != null) {
+        try {
+          this.handler.shape(name, type, x, y, width, height, red, green, blue);
+        } catch (IllegalArgumentException e) {
+          throw error(keywordStart, e.getMessage());
+        }
+      }
+    } else if (matches(MOVE)) {
+      String name = nextName();
+      this.handler.move(name, nextNumber(), nextNumber());
+    } else if (matches(RESIZE)) {
+      String name = nextName();
+      this.handler.resize(name, nextNumber(), nextNumber());
+    } else if (matches(COLOR)) {
+      String name = nextName();
+      this.handler.color(name, nextNumber(), nextNumber(), nextNumber());
+    } else if (matches(REMOVE)) {
+      this.handler.remove(nextName());
+    } else if (matches(SNAPSHOT)) {
+      // The description is the rest of the line after the single separator following the keyword.
+      String description = keywordEnd == this.end ? ""
+          : new String(buf, keywordEnd + 1, this.end - keywordEnd - 1, StandardCharsets.UTF_8);
+      this.handler.snapshot(description);
+    } else {
+      throw error(keywordStart, "unknown command '" + token() + "'");
+    }
+  }
+
+  /**
+   * Returns true if the current token is the given lower-case keyword, ignoring case.
+   *
+   * @param keyword the keyword in lower case
+   * @return true if the token matches
+   */
+  private boolean matches(byte[] keyword) {
+    int length = this.pos - this.tokenStart;
+    if (length != keyword.length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if ((this.line[this.tokenStart + i] | 0x20) != keyword[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Advances to the next token and returns it as a shape name.
+   *
+   * @return the shape name
+   * @throws ScriptException if the line has no more tokens
+   */
+  private String nextName() {
+    nextToken();
+    return this.names.get(this.line, this.tokenStart, this.pos);
+  }
+
+  /**
+   * Advances to the next token and returns it as a shape type.
+   *
+   * @return the shape type, or null if the type is not known
+   * @throws ScriptException if the line has no more tokens
+   */
+  private ShapeType nextType() {
+    nextToken();
+    if (matches(RECTANGLE)) {
+      return ShapeType.RECTANGLE;
+    } else if (matches(OVAL)) {
+      return ShapeType.OVAL;
+    }
+    return null;
+  }
+
+  /**
+   * Advances to the next token and parses it as a decimal number. Plain decimals of up to 15
+   * significant digits, which covers every number a script normally holds, are converted exactly
+   * with a single multiplication or division; anything else falls back to
+   * {@link Double#parseDouble}.
+   *
+   * @return the number
+   * @throws ScriptException if the line has no more tokens or the token is not a number
+   */
+  private double nextNumber() {
+    nextToken();
+    byte[] b = this.line;
+    int i = this.tokenStart;
+    boolean negative = false;
+    if (b[i] == '-' || b[i] == '+') {
+      negative = b[i] == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean any = false;
+    for (; i < this.pos && b[i] >= '0' && b[i] <= '9'; i++) {
+      any = true;
+      if (digits < 18) {
+        mantissa = mantissa * 10 + (b[i] - '0');
+        digits += mantissa != 0 ? 1 : 0;
+      } else {
+        exponent++;
+      }
+    }
+    if (i < this.pos && b[i] == '.') {
+      for (i++; i < this.pos && b[i] >= '0' && b[i] <= '9'; i++) {
+        any = true;
+        if (digits < 18) {
+          mantissa = mantissa * 10 + (b[i] - '0');
+          digits += mantissa != 0 ? 1 : 0;
+          exponent--;
+        }
+      }
+    }
+    if (any && i == this.pos && digits <= 15 && exponent >= -22 && exponent <= 22) {
+      double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent]
+          : mantissa * POWERS_OF_TEN[exponent];
+      return negative ? -value : value;
+    }
+    try {
+      return Double.parseDouble(token());
+    } catch (NumberFormatException e) {
+      throw error(this.tokenStart, "invalid number '" + token() + "'");
+    }
+  }
+
+  /**
+   * Advances to the next whitespace-separated token of the line.
+   *
+   * @throws ScriptException if the line has no more tokens
+   */
+  private void nextToken() {
+    skipSpace();
+    if (this.pos == this.end) {
+      throw error(this.pos, "missing argument");
+    }
+    this.tokenStart = this.pos;
+    while (this.pos < this.end && !isSpace(this.line[this.pos])) {
+      this.pos++;
+    }
+  }
+
+  /**
+   * Skips whitespace and control characters.
+   */
+  private void skipSpace() {
+    while (this.pos < this.end && isSpace(this.line[this.pos])) {
+      this.pos++;
+    }
+  }
+
+  /**
+   * Returns true if a byte is whitespace or an ASCII control character. Bytes of multi-byte UTF-8
+   * characters are negative and so must be compared unsigned, to stay part of their token.
+   *
+   * @param b the byte
+   * @return true if the byte separates tokens
+   */
+  private static boolean isSpace(byte b) {
+    return (b & 0xff) <= ' ';
+  }
+
+  /**
+   * Returns the current token as a string, for use in error messages.
+   *
+   * @return the current token
+   */
+  private String token() {
+    return new String(this.line, this.tokenStart, this.pos - this.tokenStart,
+        StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Creates the exception reported for an error at a position of the current line.
+   *
+   * @param at      the index of the offending byte
+   * @param message what went wrong
+   * @return the exception to throw
+   */
+  private ScriptException error(int at, String message) {
+    return new ScriptException(this.lineNumber, at - this.lineStart + 1, message);
+  }
+
+  /**
+   * Encodes a keyword as bytes.
+   *
+   * @param keyword the keyword
+   * @return the keyword's bytes
+   */
+  private static byte[] bytes(String keyword) {
+    return keyword.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * The NameTable class maps the bytes of shape names to String instances, so that the many
+   * commands naming the same shape share one String instead of decoding a new one each time.
+   * It is a cache: when it grows too large it is simply cleared.
+   */
+  private static final class NameTable {
+    private static final int MAX_SIZE = 1 << 20;
+    private byte[][] keys = new byte[1024][];
+    private String[] values = new String[1024];
+    private int size;
+
+    /**
+     * Returns the String for the name stored in a range of a buffer.
+     *
+     * @param buf   the buffer
+     * @param start the index of the first byte of the name
+     * @param end   the index just past the last byte of the name
+     * @return the name
+     */
+    private String get(byte[] buf, int start, int end) {
+      int hash = 0;
+      for (int i = start; i < end; i++) {
+        hash = 31 * hash + buf[i];
+      }
+      int mask = this.keys.length - 1;
+      int index = (hash ^ (hash >>> 16)) & mask;
+      for (byte[] key = this.keys[index]; key != null; key = this.keys[index]) {
+        if (Arrays.equals(key, 0, key.length, buf, start, end)) {
+          return this.values[index];
+        }
+        index = (index + 1) & mask;
+      }
+      String name = new String(buf, start, end - start, StandardCharsets.UTF_8);
+      if (this.size >= MAX_SIZE) {
+        Arrays.fill(this.keys, null);
+        Arrays.fill(this.values, null);
+        this.size = 0;
+        return name;
+      }
+      this.keys[index] = Arrays.copyOfRange(buf, start, end);
+      this.values[index] = name;
+      if (++this.size * 2 > this.keys.length) {
+        grow();
+      }
+      return name;
+    }
+
+    /**
+     * Doubles the capacity of the table.
+     */
+    private void grow() {
+      byte[][] oldKeys = this.keys;
+      String[] oldValues = this.values;
+      this.keys = new byte[oldKeys.length * 2][];
+      this.values = new String[oldKeys.length * 2];
+      int mask = this.keys.length - 1;
+      for (int i = 0; i < oldKeys.length; i++) {
+        byte[] key = oldKeys[i];
+        if (key != null) {
+          int hash = 0;
+          for (byte b : key) {
+            hash = 31 * hash + b;
+          }
+          int index = (hash ^ (hash >>> 16)) & mask;
+          while (this.keys[index] != null) {
+            index = (index + 1) & mask;
+          }
+          this.keys[index] = key;
+          this.values[index] = oldValues[i];
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,317 @@
+package photoalbum.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+
+import photoalbum.model.PhotoAlbumModel;
+import photoalbum.model.ShapeType;
+import photoalbum.model.Snapshot;
+import photoalbum.view.SnapshotSink;
+
+/**
+ * The ScriptPipeline class reads an album script, applies it to a model and renders its
+ * snapshots all at once, in three stages on three threads. A parser thread tokenizes the script
+ * into {@link CommandBatch}es, the calling thread applies the batches to the model in order, and
+ * every snapshot the script takes is handed, as soon as it is taken, to a render thread that
+ * passes it to a {@link SnapshotSink}. The stages are linked by small bounded queues, so a stage
+ * that runs ahead waits for the next one.
+ *
+ * <p>The model keeps only its current shapes: snapshots are taken with
+ * {@link PhotoAlbumModel#takeSnapshot} rather than added to the album, and are let go once they
+ * have been rendered. Memory use therefore depends on the number of shapes in the album but not
+ * on the length of the script or the number of snapshots.</p>
+ *
+ * <p>The first error stops every stage and aborts the sink. An invalid command is reported with
+ * its line, as by {@link ScriptParser}, in preference to an error rendering a snapshot taken
+ * before it.</p>
+ */
+final class ScriptPipeline {
+  // A batch is handed on after this many commands, or earlier at a snapshot.
+  private static final int BATCH_COMMANDS = 4096;
+  private static final int QUEUED_BATCHES = 8;
+  private static final int QUEUED_SNAPSHOTS = 4;
+  private static final CommandBatch END_OF_SCRIPT = new CommandBatch(() -> 0);
+  private static final Snapshot END_OF_ALBUM = new Snapshot("", new ArrayList<>());
+
+  private final PhotoAlbumModel model;
+  private final BlockingQueue<CommandBatch> batches = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+  private final BlockingQueue<Snapshot> snapshots = new ArrayBlockingQueue<>(QUEUED_SNAPSHOTS);
+  private volatile Exception parseFailure;
+  private volatile Exception renderFailure;
+
+  /**
+   * Constructs a pipeline that applies a script to a model. A pipeline runs once.
+   *
+   * @param model the model the commands are applied to
+   */
+  ScriptPipeline(PhotoAlbumModel model) {
+    this.model = model;
+  }
+
+  /**
+   * Reads a whole script, applies its commands to the model and renders each snapshot it takes.
+   * Neither the script nor the sink is closed, but the sink is aborted first if any stage fails
+   * or the calling thread is interrupted, so that closing it does not finish the output.
+   *
+   * @param in   the script
+   * @param sink the sink the snapshots are rendered to, in order
+   * @throws IOException     if the script cannot be read or a snapshot cannot be rendered
+   * @throws ScriptException if the script contains an invalid command
+   */
+  void run(InputStream in, SnapshotSink sink) throws IOException {
+    Thread parser = new Thread(() -> parse(in), "script-parser");
+    Thread renderer = new Thread(() -> render(sink), "snapshot-renderer");
+    parser.setDaemon(true);
+    renderer.setDaemon(true);
+    parser.start();
+    renderer.start();
+    RuntimeException applyFailure = null;
+    boolean interrupted = false;
+    try {
+      apply();
+    } catch (InterruptedException | CancellationException e) {
+      interrupted = true;
+    } catch (RuntimeException e) {
+      applyFailure = e;
+    } finally {
+      parser.interrupt();
+      interrupted |= !join(parser);
+      interrupted |= !putUninterruptibly(END_OF_ALBUM);
+      interrupted |= !join(renderer);
+    }
+    if (applyFailure != null || this.parseFailure != null || this.renderFailure != null
+        || interrupted) {
+      sink.abort();
+    }
+    if (applyFailure != null) {
+      throw applyFailure;
+    }
+    rethrow(this.parseFailure);
+    rethrow(this.renderFailure);
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading");
+    }
+  }
+
+  /**
+   * The model stage: applies the batches to the model in order until the script ends or a
+   * snapshot cannot be rendered, handing every snapshot to the render stage.
+   *
+   * @throws InterruptedException  if the calling thread is interrupted
+   * @throws CancellationException if the calling thread is interrupted while handing on a
+   *                               snapshot
+   * @throws ScriptException       if the model rejects a command
+   */
+  private void apply() throws InterruptedException {
+    CommandHandler handler = new ModelCommandHandler(this.model) {
+      @Override
+      public void snapshot(String description) {
+        try {
+          snapshots.put(model.takeSnapshot(description));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new CancellationException("Interrupted while handing on a snapshot");
+        }
+      }
+    };
+    while (this.renderFailure == null) {
+      CommandBatch batch = this.batches.take();
+      if (batch == END_OF_SCRIPT) {
+        return;
+      }
+      // The batches record the script's own line numbers.
+      batch.replay(handler, 0);
+    }
+  }
+
+  /**
+   * The parse stage: tokenizes the script into batches and queues them. It stops quietly when
+   * interrupted, which only happens once the model stage has stopped.
+   *
+   * @param in the script
+   */
+  private void parse(InputStream in) {
+    Recorder recorder = new Recorder();
+    try {
+      recorder.parser.parse(in);
+      recorder.handOn();
+      this.batches.put(END_OF_SCRIPT);
+    } catch (InterruptedException | CancellationException e) {
+      return;
+    } catch (IOException | RuntimeException e) {
+      this.parseFailure = e;
+    }
+    if (this.parseFailure != null) {
+      try {
+        this.batches.put(END_OF_SCRIPT);
+      } catch (InterruptedException e) {
+        // The model stage has stopped already.
+      }
+    }
+  }
+
+  /**
+   * The render stage: passes the snapshots to the sink in order. After a snapshot fails to
+   * render, the rest are taken off the queue and dropped, so the model stage never waits for it.
+   *
+   * @param sink the sink
+   */
+  private void render(SnapshotSink sink) {
+    while (true) {
+      Snapshot snapshot;
+      try {
+        snapshot = this.snapshots.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (snapshot == END_OF_ALBUM) {
+        return;
+      }
+      if (this.renderFailure == null) {
+        try {
+          sink.accept(snapshot);
+        } catch (IOException | RuntimeException e) {
+          this.renderFailure = e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Queues the end of the album for the render stage, waiting for room if needed even when the
+   * calling thread is interrupted.
+   *
+   * @param end the end marker
+   * @return false if the calling thread was interrupted while waiting
+   */
+  private boolean putUninterruptibly(Snapshot end) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        this.snapshots.put(end);
+        return !interrupted;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+  }
+
+  /**
+   * Waits for a stage's thread to finish, even when the calling thread is interrupted.
+   *
+   * @param thread the thread
+   * @return false if the calling thread was interrupted while waiting
+   */
+  private static boolean join(Thread thread) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        thread.join();
+        return !interrupted;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+  }
+
+  /**
+   * Rethrows the failure of a stage, if it failed.
+   *
+   * @param failure the failure, or null
+   * @throws IOException if the stage could not read or write
+   */
+  private static void rethrow(Exception failure) throws IOException {
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    } else if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+  }
+
+  /**
+   * The Recorder class records the commands of the parser it owns into batches and queues each
+   * batch once it is full or ends with a snapshot.
+   */
+  private final class Recorder implements CommandHandler {
+    private final ScriptParser parser = new ScriptParser(this);
+    private CommandBatch batch = new CommandBatch(this.parser::getLineNumber);
+
+    @Override
+    public void shape(String name, ShapeType type, double x, double y, double width,
+                      double height, double red, double green, double blue) {
+      this.batch.shape(name, type, x, y, width, height, red, green, blue);
+      handOnIfFull();
+    }
+
+    @Override
+    public void move(String name, double x, double y) {
+      this.batch.move(name, x, y);
+      handOnIfFull();
+    }
+
+    @Override
+    public void resize(String name, double width, double height) {
+      this.batch.resize(name, width, height);
+      handOnIfFull();
+    }
+
+    @Override
+    public void color(String name, double red, double green, double blue) {
+      this.batch.color(name, red, green, blue);
+      handOnIfFull();
+    }
+
+    @Override
+    public void remove(String name) {
+      this.batch.remove(name);
+      handOnIfFull();
+    }
+
+    @Override
+    public void snapshot(String description) {
+      this.batch.snapshot(description);
+      handOnNow();
+    }
+
+    /**
+     * Queues the current batch if it is full.
+     */
+    private void handOnIfFull() {
+      if (this.batch.size() >= BATCH_COMMANDS) {
+        handOnNow();
+      }
+    }
+
+    /**
+     * Queues the current batch from within a command, turning an interrupt into an unchecked
+     * exception the parser lets through.
+     *
+     * @throws CancellationException if the thread is interrupted
+     */
+    private void handOnNow() {
+      try {
+        handOn();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CancellationException("Interrupted while handing on commands");
+      }
+    }
+
+    /**
+     * Queues the current batch unless it is empty, and starts a new one.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting for room
+     */
+    private void handOn() throws InterruptedException {
+      if (this.batch.size() > 0) {
+        batches.put(this.batch);
+        this.batch = new CommandBatch(this.parser::getLineNumber);
+      }
+    }
+  }
+}
@@ -0,0 +1,411 @@
+package photoalbum.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The AlbumFile class saves a fully built {@link PhotoAlbumModel} in a compact binary form and
+ * loads it back, so an album does not have to be rebuilt from its script every time it is opened.
+ *
+ * <p>A file starts with a header made of the magic number {@code PALB}, a format version and the
+ * album's keyframe interval. It is followed by the snapshots, then the album's current shapes.
+ * Each one is written as the list of slots that changed since the previous one, or in full when
+ * the slots were renumbered. Shape names and other strings form a string table, and shapes form
+ * a table of packed records. Both tables are built up as the file is written: an entry is written
+ * in place the first time it is referenced, and later references use its index. A shape shared by
+ * many snapshots is therefore written once and shared again after loading.</p>
+ */
+public final class AlbumFile {
+  private static final int MAGIC = 0x50414C42;
+  private static final int VERSION = 1;
+  private static final int NONE = -1;
+  private static final int FULL = 0;
+  private static final int DELTA = 1;
+  private static final int OVAL = 1;
+  private static final int PACKED_COLOR = 2;
+  private static final int RGB_BITS = 0xFFFFFF;
+
+  private AlbumFile() {
+  }
+
+  /**
+   * Saves an album to a file, replacing the file if it exists.
+   *
+   * @param model the album to save
+   * @param file  the file to write
+   * @throws IOException if the file cannot be written
+   */
+  public static void save(PhotoAlbumModel model, Path file) throws IOException {
+    try (OutputStream out = Files.newOutputStream(file)) {
+      write(model, out);
+    }
+  }
+
+  /**
+   * Loads an album from a file.
+   *
+   * @param file the file to read
+   * @return the album
+   * @throws IOException if the file cannot be read or is not a valid album file
+   */
+  public static PhotoAlbumModel load(Path file) throws IOException {
+    return load(file, false);
+  }
+
+  /**
+   * Loads an album from a file, optionally into a packed album.
+   *
+   * @param file   the file to read
+   * @param packed true to store the album's shapes packed
+   * @return the album
+   * @throws IOException if the file cannot be read or is not a valid album file
+   * @see PhotoAlbumModel#PhotoAlbumModel(int, boolean)
+   */
+  public static PhotoAlbumModel load(Path file, boolean packed) throws IOException {
+    try (InputStream in = Files.newInputStream(file)) {
+      return read(in, packed);
+    }
+  }
+
+  /**
+   * Writes an album to a stream. The stream is flushed but not closed.
+   *
+   * @param model the album to write
+   * @param out   the stream to write to
+   * @throws IOException if the stream cannot be written
+   */
+  public static void write(PhotoAlbumModel model, OutputStream out) throws IOException {
+    Encoder encoder = new Encoder(new DataOutputStream(new BufferedOutputStream(out, 1 << 16)));
+    SnapshotTimeline timeline = model.timeline();
+    encoder.out.writeInt(MAGIC);
+    encoder.out.writeInt(VERSION);
+    encoder.out.writeInt(timeline.keyframeInterval());
+    encoder.out.writeInt(timeline.size());
+    ShapeVector previous = ShapeVector.EMPTY;
+    for (int i = 0; i < timeline.size(); i++) {
+      Snapshot snapshot = timeline.get(i);
+      LocalDateTime timestamp = snapshot.getTimestamp();
+      encoder.writeString(snapshot.getSnapshotId());
+      encoder.out.writeLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+      encoder.out.writeInt(timestamp.getNano());
+      encoder.writeString(snapshot.getDescription());
+      ShapeVector shapes = snapshot.shapeVector();
+      encoder.writeShapes(previous, shapes, timeline.isRenumbered(i));
+      previous = shapes;
+    }
+    encoder.writeShapes(previous, model.currentShapes(),
+        timeline.size() == 0 || timeline.isResetPending());
+    encoder.out.flush();
+  }
+
+  /**
+   * Reads an album from a stream.
+   *
+   * @param in the stream to read from
+   * @return the album
+   * @throws IOException if the stream cannot be read or does not hold a valid album
+   */
+  public static PhotoAlbumModel read(InputStream in) throws IOException {
+    return read(in, false);
+  }
+
+  /**
+   * Reads an album from a stream, optionally into a packed album.
+   *
+   * @param in     the stream to read from
+   * @param packed true to store the album's shapes packed
+   * @return the album
+   * @throws IOException if the stream cannot be read or does not hold a valid album
+   */
+  public static PhotoAlbumModel read(InputStream in, boolean packed) throws IOException {
+    ShapeVector empty = packed ? ShapeVector.PACKED_EMPTY : ShapeVector.EMPTY;
+    Decoder decoder = new Decoder(new DataInputStream(new BufferedInputStream(in, 1 << 16)),
+        empty);
+    if (decoder.in.readInt() != MAGIC) {
+      throw new IOException("Not a photo album file");
+    }
+    int version = decoder.in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported photo album file version " + version);
+    }
+    int keyframeInterval = decoder.in.readInt();
+    int count = decoder.in.readInt();
+    if (keyframeInterval <= 0 || count < 0) {
+      throw corrupt();
+    }
+    SnapshotTimeline timeline = new SnapshotTimeline(keyframeInterval);
+    Object edit = new Object();
+    ShapeVector shapes = empty;
+    for (int i = 0; i < count; i++) {
+      String snapshotId = decoder.readString();
+      LocalDateTime timestamp;
+      try {
+        timestamp = LocalDateTime.ofEpochSecond(decoder.in.readLong(), decoder.in.readInt(),
+            ZoneOffset.UTC);
+      } catch (DateTimeException e) {
+        throw corrupt();
+      }
+      String description = decoder.readString();
+      shapes = decoder.readShapes(shapes, timeline, edit);
+      if (timeline.add(snapshotId, timestamp, description, shapes)) {
+        edit = new Object();
+      }
+    }
+    shapes = decoder.readShapes(shapes, timeline, edit);
+    return new PhotoAlbumModel(timeline, shapes);
+  }
+
+  /**
+   * Creates the exception reported for a file whose contents make no sense.
+   *
+   * @return the exception to throw
+   */
+  private static IOException corrupt() {
+    return new IOException("Corrupt photo album file");
+  }
+
+  /**
+   * The Encoder class holds the state of one save: the stream and the two tables.
+   */
+  private static final class Encoder {
+    private final DataOutputStream out;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final Map<Shape, Integer> shapes = new IdentityHashMap<>();
+
+    private Encoder(DataOutputStream out) {
+      this.out = out;
+    }
+
+    /**
+     * Writes a version of the album's shapes, as a change of the previous version unless the
+     * slots were renumbered in between.
+     *
+     * @param previous the previous version
+     * @param current  the version to write
+     * @param full     true to write every slot rather than the changed ones
+     * @throws IOException if the stream cannot be written
+     */
+    private void writeShapes(ShapeVector previous, ShapeVector current, boolean full)
+        throws IOException {
+      if (full) {
+        this.out.writeByte(FULL);
+        this.out.writeInt(current.size());
+        for (int slot = 0; slot < current.size(); slot++) {
+          writeShape(current.get(slot));
+        }
+        return;
+      }
+      List<Integer> slots = new ArrayList<>();
+      List<Shape> values = new ArrayList<>();
+      current.diff(previous, (slot, shape) -> {
+        slots.add(slot);
+        values.add(shape);
+      });
+      this.out.writeByte(DELTA);
+      this.out.writeInt(slots.size());
+      for (int i = 0; i < slots.size(); i++) {
+        this.out.writeInt(slots.get(i));
+        writeShape(values.get(i));
+      }
+    }
+
+    /**
+     * Writes a reference to a shape, followed by the shape's record if it is new.
+     *
+     * @param shape the shape, or null for an empty slot
+     * @throws IOException if the stream cannot be written
+     */
+    private void writeShape(Shape shape) throws IOException {
+      if (shape == null) {
+        this.out.writeInt(NONE);
+        return;
+      }
+      Integer index = this.shapes.get(shape);
+      if (index != null) {
+        this.out.writeInt(index);
+        return;
+      }
+      this.out.writeInt(this.shapes.size());
+      this.shapes.put(shape, this.shapes.size());
+      Color color = shape.getColor();
+      int rgb = color.packedRgb();
+      int flags = (shape.getType() == ShapeType.OVAL ? OVAL : 0) | (rgb >= 0 ? PACKED_COLOR : 0);
+      this.out.writeByte(flags);
+      writeString(shape.getName());
+      this.out.writeDouble(shape.getX());
+      this.out.writeDouble(shape.getY());
+      this.out.writeDouble(shape.getWidth());
+      this.out.writeDouble(shape.getHeight());
+      if (rgb >= 0) {
+        this.out.writeInt(rgb);
+      } else {
+        this.out.writeDouble(color.getRed());
+        this.out.writeDouble(color.getGreen());
+        this.out.writeDouble(color.getBlue());
+      }
+    }
+
+    /**
+     * Writes a reference to a string, followed by the string itself if it is new.
+     *
+     * @param string the string
+     * @throws IOException if the stream cannot be written
+     */
+    private void writeString(String string) throws IOException {
+      Integer index = this.strings.get(string);
+      if (index != null) {
+        this.out.writeInt(index);
+        return;
+      }
+      this.out.writeInt(this.strings.size());
+      this.strings.put(string, this.strings.size());
+      byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      this.out.writeInt(bytes.length);
+      this.out.write(bytes);
+    }
+  }
+
+  /**
+   * The Decoder class holds the state of one load: the stream and the two tables.
+   */
+  private static final class Decoder {
+    private final DataInputStream in;
+    private final List<String> strings = new ArrayList<>();
+    private final List<Shape> shapes = new ArrayList<>();
+    private final ShapeVector empty;
+
+    private Decoder(DataInputStream in, ShapeVector empty) {
+      this.in = in;
+      this.empty = empty;
+    }
+
+    /**
+     * Reads a version of the album's shapes and reports its changed slots to the timeline.
+     *
+     * @param previous the previous version
+     * @param timeline the timeline being rebuilt
+     * @param edit     the current edit token
+     * @return the version read
+     * @throws IOException if the stream cannot be read or is corrupt
+     */
+    private ShapeVector readShapes(ShapeVector previous, SnapshotTimeline timeline, Object edit)
+        throws IOException {
+      int kind = this.in.readByte();
+      int count = this.in.readInt();
+      if (count < 0) {
+        throw corrupt();
+      }
+      ShapeVector shapes;
+      if (kind == FULL) {
+        timeline.reset();
+        shapes = this.empty;
+        for (int i = 0; i < count; i++) {
+          shapes = shapes.append(readShape(), edit);
+        }
+        return shapes;
+      } else if (kind != DELTA) {
+        throw corrupt();
+      }
+      shapes = previous;
+      for (int i = 0; i < count; i++) {
+        int slot = this.in.readInt();
+        Shape shape = readShape();
+        if (slot < 0) {
+          throw corrupt();
+        } else if (slot < shapes.size()) {
+          shapes = shapes.set(slot, shape, edit);
+        } else if (slot == shapes.size()) {
+          shapes = shapes.append(shape, edit);
+        } else {
+          throw corrupt();
+        }
+        timeline.changed(slot);
+      }
+      return shapes;
+    }
+
+    /**
+     * Reads a reference to a shape, and the shape's record if it is new.
+     *
+     * @return the shape, or null for an empty slot
+     * @throws IOException if the stream cannot be read or is corrupt
+     */
+    private Shape readShape() throws IOException {
+      int index = this.in.readInt();
+      if (index == NONE) {
+        return null;
+      } else if (index < NONE) {
+        throw corrupt();
+      } else if (index < this.shapes.size()) {
+        return this.shapes.get(index);
+      } else if (index != this.shapes.size()) {
+        throw corrupt();
+      }
+      int flags = this.in.readByte();
+      String name = readString();
+      double x = this.in.readDouble();
+      double y = this.in.readDouble();
+      double width = this.in.readDouble();
+      double height = this.in.readDouble();
+      Color color;
+      if ((flags & PACKED_COLOR) != 0) {
+        int rgb = this.in.readInt();
+        if ((rgb & ~RGB_BITS) != 0) {
+          throw corrupt();
+        }
+        color = Color.ofPacked(rgb);
+      } else {
+        color = new Color(this.in.readDouble(), this.in.readDouble(), this.in.readDouble());
+      }
+      Shape shape = (flags & OVAL) != 0 ? new Oval(name, x, y, width, height, color)
+          : new Rectangle(name, x, y, width, height, color);
+      shape.freeze();
+      this.shapes.add(shape);
+      return shape;
+    }
+
+    /**
+     * Reads a reference to a string, and the string itself if it is new.
+     *
+     * @return the string
+     * @throws IOException if the stream cannot be read or is corrupt
+     */
+    private String readString() throws IOException {
+      int index = this.in.readInt();
+      if (index < 0 || index > this.strings.size()) {
+        throw corrupt();
+      } else if (index < this.strings.size()) {
+        return this.strings.get(index);
+      }
+      int length = this.in.readInt();
+      if (length < 0) {
+        throw corrupt();
+      }
+      // The bytes are read in blocks, so a corrupt length fails at the end of the file instead
+      // of allocating a huge array up front.
+      byte[] bytes = this.in.readNBytes(length);
+      if (bytes.length != length) {
+        throw corrupt();
+      }
+      String string = new String(bytes, StandardCharsets.UTF_8);
+      this.strings.add(string);
+      return string;
+    }
+  }
+}
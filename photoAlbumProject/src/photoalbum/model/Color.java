@@ -6,11 +6,27 @@ import java.util.Objects;
  * The Color class represents a color using RGB values.
  * Each color is defined by its red, green, and blue components,
  * where each component is a double value between 0.0 and 1.0.
+ *
+ * <p>Colors made with {@link #of} are interned: every color whose components are exact
+ * multiples of 1/255, as those of a script are, is created once and shared by everything that
+ * uses it, so a shape that is copied, moved or rendered never allocates a new color. A color also
+ * carries its 24-bit RGB value and caches the strings the web view writes, so renderers can use
+ * it directly.</p>
  */
 public class Color {
+  private static final int NOT_PACKED = -1;
+  // Interned colors, an open-addressing table keyed by packed RGB value. It is only updated
+  // under the class lock and replaced by a larger copy when half full.
+  private static volatile Color[] interned = new Color[256];
+  private static int internedCount;
+
   private final double red;
   private final double green;
   private final double blue;
+  private final int rgb;
+  private final int packed;
+  private String rgbString;
+  private String hexString;
 
   /**
    * Constructs a Color object with the specified red, green, and blue values.
@@ -23,6 +39,109 @@ public class Color {
     this.red = red;
     this.green = green;
     this.blue = blue;
+    this.rgb = channel(red) << 16 | channel(green) << 8 | channel(blue);
+    this.packed = pack(red, green, blue);
+  }
+
+  /**
+   * Returns the color with the specified red, green, and blue values. Colors whose components
+   * are exact multiples of 1/255 are interned, so asking twice for the same one returns the same
+   * object without allocating; any other color is created anew.
+   *
+   * @param red   the red component of the color (0.0 to 1.0)
+   * @param green the green component of the color (0.0 to 1.0)
+   * @param blue  the blue component of the color (0.0 to 1.0)
+   * @return the color
+   */
+  public static Color of(double red, double green, double blue) {
+    int packed = pack(red, green, blue);
+    return packed == NOT_PACKED ? new Color(red, green, blue) : ofPacked(packed);
+  }
+
+  /**
+   * Returns the interned color of a 24-bit RGB value.
+   *
+   * @param packed the color as 0xRRGGBB
+   * @return the color, whose components are the value's bytes divided by 255
+   */
+  static Color ofPacked(int packed) {
+    Color color = find(interned, packed);
+    return color != null ? color : intern(packed);
+  }
+
+  /**
+   * Creates and interns the color of a 24-bit RGB value, unless another thread already has.
+   *
+   * @param packed the color as 0xRRGGBB
+   * @return the interned color
+   */
+  private static synchronized Color intern(int packed) {
+    Color color = find(interned, packed);
+    if (color != null) {
+      return color;
+    }
+    Color[] table = interned;
+    if ((internedCount + 1) * 2 > table.length) {
+      Color[] larger = new Color[table.length * 2];
+      for (Color old : table) {
+        if (old != null) {
+          insert(larger, old);
+        }
+      }
+      table = larger;
+    }
+    color = new Color((packed >> 16 & 0xff) / 255.0, (packed >> 8 & 0xff) / 255.0,
+        (packed & 0xff) / 255.0);
+    insert(table, color);
+    internedCount++;
+    // Colors are immutable apart from their cached strings, so readers that find one through
+    // the table without taking the lock always see it whole.
+    interned = table;
+    return color;
+  }
+
+  /**
+   * Looks a packed RGB value up in a table of interned colors.
+   *
+   * @param table  the table
+   * @param packed the color as 0xRRGGBB
+   * @return the interned color, or null if the table does not hold it
+   */
+  private static Color find(Color[] table, int packed) {
+    int mask = table.length - 1;
+    for (int i = slot(packed, mask); table[i] != null; i = (i + 1) & mask) {
+      if (table[i].packed == packed) {
+        return table[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Adds a color to a table of interned colors that does not hold it yet.
+   *
+   * @param table the table, with at least one free entry
+   * @param color the color
+   */
+  private static void insert(Color[] table, Color color) {
+    int mask = table.length - 1;
+    int i = slot(color.packed, mask);
+    while (table[i] != null) {
+      i = (i + 1) & mask;
+    }
+    table[i] = color;
+  }
+
+  /**
+   * Returns the first entry of a table to probe for a packed RGB value.
+   *
+   * @param packed the color as 0xRRGGBB
+   * @param mask   the size of the table minus one
+   * @return the entry
+   */
+  private static int slot(int packed, int mask) {
+    int h = packed * 0x9E3779B9;
+    return (h ^ h >>> 16) & mask;
   }
 
 
@@ -53,6 +172,86 @@ public class Color {
     return this.blue;
   }
 
+  /**
+   * Returns the color as a 24-bit RGB value, the way it is drawn: each component is scaled to
+   * 0 to 255, truncated, and clamped to that range.
+   *
+   * @return the color as 0xRRGGBB
+   */
+  public int getRgb() {
+    return this.rgb;
+  }
+
+  /**
+   * Returns the color as an SVG {@code rgb(r,g,b)} value, with each component scaled to 0 to 255
+   * and truncated. The string is built once per color.
+   *
+   * @return the color as an rgb() string
+   */
+  public String toRgbString() {
+    String result = this.rgbString;
+    if (result == null) {
+      result = "rgb(" + (int) (this.red * 255) + "," + (int) (this.green * 255) + ","
+          + (int) (this.blue * 255) + ")";
+      this.rgbString = result;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the color as a {@code #rrggbb} hex string of its {@link #getRgb()} value. The string
+   * is built once per color.
+   *
+   * @return the color as a hex string
+   */
+  public String toHexString() {
+    String result = this.hexString;
+    if (result == null) {
+      result = String.format("#%06x", this.rgb);
+      this.hexString = result;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the color as a 24-bit RGB value if each of its components is an exact multiple of
+   * 1/255, so that it can be stored in that form without loss.
+   *
+   * @return the color as 0xRRGGBB, or -1 if it cannot be packed exactly
+   */
+  int packedRgb() {
+    return this.packed;
+  }
+
+  /**
+   * Packs three components into a 24-bit RGB value if each is an exact multiple of 1/255.
+   *
+   * @param red   the red component
+   * @param green the green component
+   * @param blue  the blue component
+   * @return the packed value, or -1 if it would lose precision
+   */
+  private static int pack(double red, double green, double blue) {
+    long r = Math.round(red * 255);
+    long g = Math.round(green * 255);
+    long b = Math.round(blue * 255);
+    if (r < 0 || r > 255 || g < 0 || g > 255 || b < 0 || b > 255
+        || r / 255.0 != red || g / 255.0 != green || b / 255.0 != blue) {
+      return NOT_PACKED;
+    }
+    return (int) (r << 16 | g << 8 | b);
+  }
+
+  /**
+   * Converts a color component to its 8-bit value.
+   *
+   * @param component the component, from 0.0 to 1.0
+   * @return the component from 0 to 255
+   */
+  private static int channel(double component) {
+    return Math.max(0, Math.min(255, (int) (component * 255)));
+  }
+
   /**
    * Compares this Color object with another object for equality.
    * Two Color objects are considered equal if they have the same red,
@@ -4,6 +4,9 @@ package photoalbum.model;
  * The IShape interface defines the structure and behavior of a geometric shape.
  * Shapes implementing this interface have properties such as position, size, and color,
  * and provide methods to manipulate and retrieve these properties.
+ *
+ * <p>Shapes handed out by the model and by snapshots are read-only: their setters throw an
+ * {@link IllegalStateException}.</p>
  */
 public interface IShape {
 
@@ -14,6 +17,13 @@ public interface IShape {
    */
   String getName();
 
+  /**
+   * Returns the kind of the shape.
+   *
+   * @return the type of the shape
+   */
+  ShapeType getType();
+
   /**
    * Returns the X-coordinate of the shape.
    *
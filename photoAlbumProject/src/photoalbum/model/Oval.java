@@ -6,8 +6,6 @@ package photoalbum.model;
  * such as the radii along the X and Y axes.
  */
 public class Oval extends Shape {
-  private double radiusX;
-  private double radiusY;
 
   /**
    * Constructs an Oval object with the specified parameters.
@@ -21,17 +19,16 @@ public class Oval extends Shape {
    */
   public Oval(String name, double X, double Y, double radiusX, double radiusY, Color color) {
     super(name, X, Y, radiusX, radiusY, color);
-    this.radiusX = radiusX;
-    this.radiusY = radiusY;
   }
 
   /**
-   * Returns the radius of the oval along the X-axis.
+   * Returns the radius of the oval along the X-axis. For an oval the radii are its width and
+   * height, so resizing the oval changes them.
    *
    * @return the radius along the X-axis
    */
   public double getRadiusX() {
-    return radiusX;
+    return this.width;
   }
 
   /**
@@ -40,7 +37,8 @@ public class Oval extends Shape {
    * @param radiusX the new radius along the X-axis
    */
   public void setRadiusX(double radiusX) {
-    this.radiusX = radiusX;
+    checkMutable();
+    this.width = radiusX;
   }
 
   /**
@@ -49,7 +47,7 @@ public class Oval extends Shape {
    * @return the radius along the Y-axis
    */
   public double getRadiusY() {
-    return radiusY;
+    return this.height;
   }
 
   /**
@@ -58,7 +56,18 @@ public class Oval extends Shape {
    * @param radiusY the new radius along the Y-axis
    */
   public void setRadiusY(double radiusY) {
-    this.radiusY = radiusY;
+    checkMutable();
+    this.height = radiusY;
+  }
+
+  /**
+   * Returns the type of the shape.
+   *
+   * @return ShapeType.OVAL
+   */
+  @Override
+  public ShapeType getType() {
+    return ShapeType.OVAL;
   }
 
   /**
@@ -71,8 +80,8 @@ public class Oval extends Shape {
   public String toString() {
     return "Name: " + getName()
         + "\nType: oval"
-        + "\nCenter: (" + getX() + "," + getY() + "), X radius: " + radiusX
-        + ", Y radius: " + radiusY + ", Color: (" + this.color.getRed() + ","
+        + "\nCenter: (" + getX() + "," + getY() + "), X radius: " + getRadiusX()
+        + ", Y radius: " + getRadiusY() + ", Color: (" + this.color.getRed() + ","
         + this.color.getGreen() + "," + this.color.getBlue() + ")" + "\n";
   }
 
@@ -82,6 +91,6 @@ public class Oval extends Shape {
    * @return a new Shape object that is an exact copy of the current shape
    */
   public Shape copy() {
-    return new Oval(this.name, this.X, this.Y, this.radiusX, this.radiusY, this.getColor());
+    return new Oval(this.name, this.X, this.Y, this.width, this.height, this.getColor());
   }
 }
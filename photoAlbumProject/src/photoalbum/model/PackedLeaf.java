@@ -0,0 +1,361 @@
+package photoalbum.model;
+
+/**
+ * The PackedLeaf class stores a block of shapes as parallel primitive arrays instead of one
+ * object per shape: four doubles of geometry, a packed RGB color, a type code and a reference to
+ * the name. It is the leaf of a packed {@link ShapeVector}, which makes a shape cost about 41
+ * bytes plus its name rather than a {@link Shape} object.
+ *
+ * <p>Colors whose components are exact multiples of 1/255, as every color read from a script
+ * is, are kept as 24-bit values and read back as the shared {@link Color#ofPacked interned}
+ * color; any other color is kept as an object in a side array that is only created when
+ * needed. Shapes are read back either as {@link View}s, flyweights that point
+ * at a row of the arrays, or as newly built read-only {@link Shape}s.</p>
+ *
+ * <p>Like the vector's other nodes, a leaf belongs to an edit token and is only updated in place
+ * under that token; otherwise it is copied first.</p>
+ */
+final class PackedLeaf {
+  private static final byte EMPTY = 0;
+  private static final byte RECTANGLE = 1;
+  private static final byte OVAL = 2;
+  private static final int UNPACKED = -1;
+
+  private final Object edit;
+  private final double[] geometry;
+  private final int[] rgb;
+  private final byte[] types;
+  private final String[] names;
+  private Color[] colors;
+
+  /**
+   * Constructs an empty leaf.
+   *
+   * @param edit     the edit token that owns the leaf
+   * @param capacity the number of rows
+   */
+  PackedLeaf(Object edit, int capacity) {
+    this.edit = edit;
+    this.geometry = new double[capacity * 4];
+    this.rgb = new int[capacity];
+    this.types = new byte[capacity];
+    this.names = new String[capacity];
+  }
+
+  /**
+   * Constructs a copy of a leaf owned by another edit token.
+   *
+   * @param edit   the edit token that owns the copy
+   * @param source the leaf to copy
+   */
+  private PackedLeaf(Object edit, PackedLeaf source) {
+    this.edit = edit;
+    this.geometry = source.geometry.clone();
+    this.rgb = source.rgb.clone();
+    this.types = source.types.clone();
+    this.names = source.names.clone();
+    this.colors = source.colors == null ? null : source.colors.clone();
+  }
+
+  /**
+   * Returns a leaf that may be modified under an edit token: this leaf if the token owns it,
+   * otherwise a copy owned by the token.
+   *
+   * @param edit the caller's edit token
+   * @return a leaf owned by the edit token
+   */
+  PackedLeaf editable(Object edit) {
+    return edit != null && this.edit == edit ? this : new PackedLeaf(edit, this);
+  }
+
+  /**
+   * Stores a shape's properties in a row, or empties the row.
+   *
+   * @param row   the row
+   * @param shape the shape to store, or null to empty the row
+   */
+  void put(int row, IShape shape) {
+    if (shape == null) {
+      this.types[row] = EMPTY;
+      this.names[row] = null;
+      if (this.colors != null) {
+        this.colors[row] = null;
+      }
+      return;
+    }
+    this.types[row] = shape.getType() == ShapeType.OVAL ? OVAL : RECTANGLE;
+    this.names[row] = shape.getName();
+    this.geometry[row * 4] = shape.getX();
+    this.geometry[row * 4 + 1] = shape.getY();
+    this.geometry[row * 4 + 2] = shape.getWidth();
+    this.geometry[row * 4 + 3] = shape.getHeight();
+    Color color = shape.getColor();
+    int packed = color.packedRgb();
+    this.rgb[row] = packed;
+    if (packed == UNPACKED) {
+      if (this.colors == null) {
+        this.colors = new Color[this.types.length];
+      }
+      this.colors[row] = color;
+    } else if (this.colors != null) {
+      this.colors[row] = null;
+    }
+  }
+
+  /**
+   * Returns true if a row holds no shape.
+   *
+   * @param row the row
+   * @return true if the row is empty
+   */
+  boolean isEmpty(int row) {
+    return this.types[row] == EMPTY;
+  }
+
+  /**
+   * Returns the name of the shape in a row.
+   *
+   * @param row the row
+   * @return the name, or null if the row is empty
+   */
+  String name(int row) {
+    return this.names[row];
+  }
+
+  /**
+   * Returns a flyweight view of the shape in a row. The view reads the row each time it is asked
+   * for a property, so it stays valid only while the leaf is not updated in place.
+   *
+   * @param row the row
+   * @return a read-only view of the shape, or null if the row is empty
+   */
+  IShape view(int row) {
+    return isEmpty(row) ? null : new View(this, row);
+  }
+
+  /**
+   * Builds a read-only shape holding the properties stored in a row.
+   *
+   * @param row the row
+   * @return a new read-only shape, or null if the row is empty
+   */
+  Shape get(int row) {
+    if (isEmpty(row)) {
+      return null;
+    }
+    int at = row * 4;
+    Shape shape = this.types[row] == OVAL
+        ? new Oval(this.names[row], this.geometry[at], this.geometry[at + 1],
+            this.geometry[at + 2], this.geometry[at + 3], color(row))
+        : new Rectangle(this.names[row], this.geometry[at], this.geometry[at + 1],
+            this.geometry[at + 2], this.geometry[at + 3], color(row));
+    shape.freeze();
+    return shape;
+  }
+
+  /**
+   * Returns true if a row of this leaf and a row of another hold the same shape, property by
+   * property.
+   *
+   * @param row      the row of this leaf
+   * @param other    the other leaf
+   * @param otherRow the row of the other leaf
+   * @return true if both rows are empty or both hold equal properties
+   */
+  boolean sameRow(int row, PackedLeaf other, int otherRow) {
+    if (this.types[row] != other.types[otherRow]) {
+      return false;
+    }
+    if (this.types[row] == EMPTY) {
+      return true;
+    }
+    for (int i = 0; i < 4; i++) {
+      if (Double.doubleToRawLongBits(this.geometry[row * 4 + i])
+          != Double.doubleToRawLongBits(other.geometry[otherRow * 4 + i])) {
+        return false;
+      }
+    }
+    return this.names[row].equals(other.names[otherRow]) && this.rgb[row] == other.rgb[otherRow]
+        && (this.rgb[row] != UNPACKED || this.colors[row].equals(other.colors[otherRow]));
+  }
+
+  /**
+   * Returns the color of the shape in a row.
+   *
+   * @param row the row
+   * @return the color
+   */
+  private Color color(int row) {
+    int packed = this.rgb[row];
+    if (packed == UNPACKED) {
+      return this.colors[row];
+    }
+    return Color.ofPacked(packed);
+  }
+
+  /**
+   * The View class is a read-only flyweight over one row of a leaf. It holds no properties of
+   * its own; every getter reads the leaf's arrays.
+   */
+  static final class View implements IShape {
+    private final PackedLeaf leaf;
+    private final int row;
+
+    /**
+     * Constructs a view of a row.
+     *
+     * @param leaf the leaf
+     * @param row  the row
+     */
+    private View(PackedLeaf leaf, int row) {
+      this.leaf = leaf;
+      this.row = row;
+    }
+
+    /**
+     * Gets the name of the shape.
+     *
+     * @return the name of the shape
+     */
+    @Override
+    public String getName() {
+      return this.leaf.names[this.row];
+    }
+
+    /**
+     * Gets the type of the shape.
+     *
+     * @return the type of the shape
+     */
+    @Override
+    public ShapeType getType() {
+      return this.leaf.types[this.row] == OVAL ? ShapeType.OVAL : ShapeType.RECTANGLE;
+    }
+
+    /**
+     * Gets the X-coordinate of the shape.
+     *
+     * @return the X-coordinate of the shape
+     */
+    @Override
+    public double getX() {
+      return this.leaf.geometry[this.row * 4];
+    }
+
+    /**
+     * Always fails, as the view is read-only.
+     *
+     * @param x the new X-coordinate
+     * @throws IllegalStateException always
+     */
+    @Override
+    public void setX(double x) {
+      throw readOnly();
+    }
+
+    /**
+     * Gets the Y-coordinate of the shape.
+     *
+     * @return the Y-coordinate of the shape
+     */
+    @Override
+    public double getY() {
+      return this.leaf.geometry[this.row * 4 + 1];
+    }
+
+    /**
+     * Always fails, as the view is read-only.
+     *
+     * @param y the new Y-coordinate
+     * @throws IllegalStateException always
+     */
+    @Override
+    public void setY(double y) {
+      throw readOnly();
+    }
+
+    /**
+     * Gets the width of the shape.
+     *
+     * @return the width of the shape
+     */
+    @Override
+    public double getWidth() {
+      return this.leaf.geometry[this.row * 4 + 2];
+    }
+
+    /**
+     * Always fails, as the view is read-only.
+     *
+     * @param width the new width
+     * @throws IllegalStateException always
+     */
+    @Override
+    public void setWidth(double width) {
+      throw readOnly();
+    }
+
+    /**
+     * Gets the height of the shape.
+     *
+     * @return the height of the shape
+     */
+    @Override
+    public double getHeight() {
+      return this.leaf.geometry[this.row * 4 + 3];
+    }
+
+    /**
+     * Always fails, as the view is read-only.
+     *
+     * @param height the new height
+     * @throws IllegalStateException always
+     */
+    @Override
+    public void setHeight(double height) {
+      throw readOnly();
+    }
+
+    /**
+     * Gets the color of the shape.
+     *
+     * @return the color of the shape
+     */
+    @Override
+    public Color getColor() {
+      return this.leaf.color(this.row);
+    }
+
+    /**
+     * Always fails, as the view is read-only.
+     *
+     * @param r the red component
+     * @param g the green component
+     * @param b the blue component
+     * @throws IllegalStateException always
+     */
+    @Override
+    public void changeColor(double r, double g, double b) {
+      throw readOnly();
+    }
+
+    /**
+     * Returns the same description as the shape itself would.
+     *
+     * @return a string describing the shape
+     */
+    @Override
+    public String toString() {
+      return this.leaf.get(this.row).toString();
+    }
+
+    /**
+     * Builds the exception thrown by every setter.
+     *
+     * @return the exception
+     */
+    private IllegalStateException readOnly() {
+      return new IllegalStateException("Shape " + getName() + " is read-only");
+    }
+  }
+}
@@ -1,37 +1,117 @@
 package photoalbum.model;
 
 
-import java.util.ArrayList;
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
  * The PhotoAlbumModel class represents a photo album that manages shapes and snapshots.
  * It allows adding and removing shapes, creating snapshots, and retrieving information about the
  * album's contents.
+ *
+ * <p>Shapes live in a persistent {@link ShapeVector}. Stored shapes are never modified: an edit
+ * replaces the shape with an updated copy. Snapshots are kept in a {@link SnapshotTimeline}, which
+ * stores only the slots that changed between snapshots plus a keyframe version of the vector
+ * every few snapshots, so unchanged shapes are shared by every snapshot that contains them.</p>
+ *
+ * <p>The current shapes can be looked up by position through a {@link SpatialIndex}. The index is
+ * built the first time it is queried and kept up to date by every later change, so reading an
+ * album that is never queried costs nothing extra.</p>
+ *
+ * <p>An album can be packed, in which case its vector keeps the shapes' properties in primitive
+ * arrays rather than as one object per shape, which takes several times less memory for large
+ * albums. The shapes of a packed album are handed out as read-only flyweights over those arrays,
+ * and its snapshots and lookups behave exactly as those of an ordinary album.</p>
  */
 public class PhotoAlbumModel {
-  private final List<Shape> shapes;
-  private final List<Snapshot> snapshots;
+  // Compaction only starts once this many slots have been emptied by remove.
+  private static final int COMPACT_THRESHOLD = 1024;
+
+  /**
+   * The default maximum number of snapshots between two keyframes.
+   */
+  public static final int DEFAULT_KEYFRAME_INTERVAL = 32;
+
+  private final SlotTable slots;
+  private final SnapshotTimeline snapshots;
+  private ShapeVector shapes;
+  private Object edit;
+  private SpatialIndex index;
 
   /**
    * Constructs a PhotoAlbumModel with empty shape and snapshot lists.
    */
   public PhotoAlbumModel() {
-    this.shapes = new ArrayList<>();
-    this.snapshots = new ArrayList<>();
+    this(DEFAULT_KEYFRAME_INTERVAL);
+  }
+
+  /**
+   * Constructs a PhotoAlbumModel with empty shape and snapshot lists that stores a full keyframe
+   * every given number of snapshots. Larger intervals use less memory, smaller ones make
+   * retrieving an arbitrary snapshot faster.
+   *
+   * @param keyframeInterval the maximum number of snapshots between two keyframes
+   * @throws IllegalArgumentException if the interval is not positive
+   */
+  public PhotoAlbumModel(int keyframeInterval) {
+    this(keyframeInterval, false);
+  }
+
+  /**
+   * Constructs a PhotoAlbumModel with empty shape and snapshot lists, optionally packed. A packed
+   * album stores its shapes in primitive arrays, which takes much less memory for large albums
+   * but builds a new shape object whenever one is read back as a {@link Shape}.
+   *
+   * @param keyframeInterval the maximum number of snapshots between two keyframes
+   * @param packed           true to store the shapes packed
+   * @throws IllegalArgumentException if the interval is not positive
+   */
+  public PhotoAlbumModel(int keyframeInterval, boolean packed) {
+    this.slots = new SlotTable();
+    this.snapshots = new SnapshotTimeline(keyframeInterval);
+    this.shapes = packed ? ShapeVector.PACKED_EMPTY : ShapeVector.EMPTY;
+    this.edit = new Object();
+  }
+
+  /**
+   * Constructs a PhotoAlbumModel from previously stored state, as when an album is loaded from a
+   * file.
+   *
+   * @param snapshots the album's snapshots
+   * @param shapes    the album's current shapes
+   */
+  PhotoAlbumModel(SnapshotTimeline snapshots, ShapeVector shapes) {
+    this.slots = new SlotTable();
+    this.snapshots = snapshots;
+    this.shapes = shapes;
+    this.edit = new Object();
+    for (int i = 0; i < shapes.size(); i++) {
+      String name = shapes.nameAt(i);
+      if (name != null) {
+        slots.put(name, i);
+      }
+    }
   }
 
   /**
    * Adds a new shape to the photo album.
    *
    * @param shape the shape to add
-   * @throws IllegalArgumentException if the shape already exists in the album
+   * @throws IllegalArgumentException if a shape with the same name already exists in the album
    */
   public void addShape(Shape shape) {
-    if (shapes.contains(shape)) {
+    if (slots.contains(shape.getName())) {
       throw new IllegalArgumentException("Shape already exists, please add another one");
     }
-    shapes.add(shape.copy());
+    int slot = shapes.size();
+    Shape copy = shape.copy();
+    copy.freeze();
+    slots.put(shape.getName(), slot);
+    shapes = shapes.append(copy, edit);
+    snapshots.changed(slot);
+    if (index != null) {
+      index.put(slot, shapes.view(slot));
+    }
   }
 
   /**
@@ -42,12 +122,11 @@ public class PhotoAlbumModel {
    * @param y    the new y-coordinate for the shape
    */
   public void move(String name, double x, double y) {
-    for (Shape shape : this.shapes) {
-      if (shape.getName().equals(name)) {
-        shape.setX(x);
-        shape.setY(y);
-        break;
-      }
+    Shape shape = editableCopy(name);
+    if (shape != null) {
+      shape.setX(x);
+      shape.setY(y);
+      replace(name, shape);
     }
   }
 
@@ -59,12 +138,11 @@ public class PhotoAlbumModel {
    * @param y    the new height of the shape
    */
   public void resize(String name, double x, double y) {
-    for (Shape shape : this.shapes) {
-      if (shape.getName().equals(name)) {
-        shape.setWidth(x);
-        shape.setHeight(y);
-        break;
-      }
+    Shape shape = editableCopy(name);
+    if (shape != null) {
+      shape.setWidth(x);
+      shape.setHeight(y);
+      replace(name, shape);
     }
   }
 
@@ -75,11 +153,10 @@ public class PhotoAlbumModel {
    * @param color the new color for the shape
    */
   public void changeColor(String name, Color color) {
-    for (Shape shape : this.shapes) {
-      if (shape.getName().equals(name)) {
-        shape.changeColor(color.getRed(), color.getGreen(), color.getBlue());
-        break;
-      }
+    Shape shape = editableCopy(name);
+    if (shape != null) {
+      shape.changeColor(color.getRed(), color.getGreen(), color.getBlue());
+      replace(name, shape);
     }
   }
 
@@ -89,7 +166,25 @@ public class PhotoAlbumModel {
    * @param name the name of the shape to remove
    */
   public void remove(String name) {
-    shapes.removeIf(shape -> shape.getName().equals(name));
+    int slot = slots.remove(name);
+    if (slot < 0) {
+      return;
+    }
+    shapes = shapes.set(slot, null, edit);
+    snapshots.changed(slot);
+    if (index != null) {
+      index.remove(slot);
+    }
+    if (shapes.size() - shapes.count() > Math.max(COMPACT_THRESHOLD, shapes.count())) {
+      shapes = shapes.compact();
+      edit = new Object();
+      snapshots.reset();
+      index = null;
+      slots.clear();
+      for (int i = 0; i < shapes.size(); i++) {
+        slots.put(shapes.nameAt(i), i);
+      }
+    }
   }
 
   /**
@@ -98,40 +193,75 @@ public class PhotoAlbumModel {
    * @param description a description of the snapshot
    */
   public void AddSnapshot(String description) {
-    List<Shape> s = new ArrayList<>();
-    for (Shape shape : shapes) {
-      s.add(shape.copy());
+    if (snapshots.add(description, shapes)) {
+      edit = new Object();
     }
-    snapshots.add(new Snapshot(description, s));
   }
 
   /**
-   * Retrieves the list of snapshots in the album.
+   * Creates a snapshot of the current shapes without adding it to the album, for callers that
+   * pass every snapshot on as soon as it is taken and have no use for the album keeping it. The
+   * snapshot shares the current version of the shapes, as the album's own snapshots do, so
+   * taking it copies nothing, and it stays unchanged as the model is edited further.
+   *
+   * @param description a description of the snapshot
+   * @return the snapshot
+   */
+  public Snapshot takeSnapshot(String description) {
+    edit = new Object();
+    LocalDateTime now = LocalDateTime.now();
+    return new Snapshot(now.toString(), now, description, shapes);
+  }
+
+  /**
+   * Retrieves the list of snapshots in the album. The list is a read-only view that rebuilds
+   * each snapshot from its keyframe when it is accessed, so reading the snapshots in order is
+   * cheaper than reading them at random.
    *
    * @return the list of snapshots
    */
   public List<Snapshot> getSnapshots() {
-    List<Snapshot> s = new ArrayList<>();
-    for (int i = 0; i < this.snapshots.size(); i++) {
-      s.add(new Snapshot(this.snapshots.get(i).getDescription(),
-          this.snapshots.get(i).getShapes()));
-    }
-    return s;
+    return this.snapshots.asList();
   }
 
   /**
-   * Returns a list of copies of all shapes currently managed by the model.
-   * This method ensures that the original shapes remain unmodified by providing
-   * copies of the shapes, maintaining data integrity and encapsulation.
+   * Returns all shapes currently managed by the model. The list is an unmodifiable view of the
+   * model's read-only shapes, so nothing is copied, and it keeps showing the shapes as they were
+   * when it was returned even after the model changes. The shapes of a packed album are
+   * flyweights over its arrays.
    *
-   * @return a list of copied Shape objects
+   * @return an immutable list of read-only shapes
    */
-  public List<Shape> getShapes() {
-    List<Shape> sps = new ArrayList<>();
-    for (Shape shape : this.shapes) {
-      sps.add(shape.copy());
-    }
-    return sps;
+  public List<IShape> getShapes() {
+    edit = new Object();
+    return this.shapes.asList();
+  }
+
+  /**
+   * Finds the shapes currently in the album whose bounds overlap a rectangular region, such as
+   * the visible part of the canvas.
+   *
+   * @param x      the left edge of the region
+   * @param y      the top edge of the region
+   * @param width  the width of the region
+   * @param height the height of the region
+   * @return the read-only shapes overlapping the region, in drawing order
+   */
+  public List<IShape> getShapesIn(double x, double y, double width, double height) {
+    freezeViews();
+    return spatialIndex().query(x, y, width, height);
+  }
+
+  /**
+   * Finds the shape currently drawn on top at a point of the canvas.
+   *
+   * @param x the x-coordinate of the point
+   * @param y the y-coordinate of the point
+   * @return the read-only shape drawn on top at the point, or null if no shape covers it
+   */
+  public IShape getShapeAt(double x, double y) {
+    freezeViews();
+    return spatialIndex().shapeAt(x, y);
   }
 
   /**
@@ -140,10 +270,85 @@ public class PhotoAlbumModel {
    * @return a string representation of all shapes
    */
   public String getShapesString() {
-    String result = "";
+    StringBuilder result = new StringBuilder();
     for (Shape shape : shapes) {
-      result += shape + "\n";
+      result.append(shape).append("\n");
+    }
+    return result.toString();
+  }
+
+  /**
+   * Returns the album's snapshots.
+   *
+   * @return the snapshot timeline
+   */
+  SnapshotTimeline timeline() {
+    return this.snapshots;
+  }
+
+  /**
+   * Returns the current version of the album's shapes. The caller must not keep the vector
+   * across later changes to the model.
+   *
+   * @return the current shapes
+   */
+  ShapeVector currentShapes() {
+    return this.shapes;
+  }
+
+  /**
+   * Returns the index of the current shapes, building it if it does not exist yet.
+   *
+   * @return the spatial index, keyed by slot
+   */
+  private SpatialIndex spatialIndex() {
+    if (index == null) {
+      index = new SpatialIndex();
+      for (int i = 0; i < shapes.size(); i++) {
+        IShape shape = shapes.view(i);
+        if (shape != null) {
+          index.put(i, shape);
+        }
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Makes sure the flyweights of a packed album handed out so far keep showing the shapes as
+   * they are now, by having later changes copy the packed leaves instead of updating them in
+   * place.
+   */
+  private void freezeViews() {
+    if (shapes.isPacked()) {
+      edit = new Object();
+    }
+  }
+
+  /**
+   * Returns a modifiable copy of the named shape, or null if there is no such shape.
+   *
+   * @param name the name of the shape
+   * @return a copy of the shape that can be updated and stored back with replace
+   */
+  private Shape editableCopy(String name) {
+    int slot = slots.get(name);
+    return slot < 0 ? null : shapes.get(slot).copy();
+  }
+
+  /**
+   * Makes an updated shape read-only and stores it in the slot of the named shape.
+   *
+   * @param name  the name of the shape
+   * @param shape the updated shape
+   */
+  private void replace(String name, Shape shape) {
+    shape.freeze();
+    int slot = slots.get(name);
+    shapes = shapes.set(slot, shape, edit);
+    snapshots.changed(slot);
+    if (index != null) {
+      index.put(slot, shapes.view(slot));
     }
-    return result;
   }
 }
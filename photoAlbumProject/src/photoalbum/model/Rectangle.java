@@ -21,6 +21,16 @@ public class Rectangle extends Shape {
     super(name, X, Y, width, height, color);
   }
 
+  /**
+   * Returns the type of the shape.
+   *
+   * @return ShapeType.RECTANGLE
+   */
+  @Override
+  public ShapeType getType() {
+    return ShapeType.RECTANGLE;
+  }
+
   /**
    * Returns a string representation of the rectangle, including its name, type, position,
    * dimensions, and color.
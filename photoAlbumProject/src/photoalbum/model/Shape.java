@@ -15,6 +15,7 @@ public abstract class Shape implements IShape {
   protected double width;
   protected double height;
   protected Color color;
+  private boolean frozen;
 
   /**
    * Constructs a Shape object with the specified parameters.
@@ -63,6 +64,7 @@ public abstract class Shape implements IShape {
    */
   @Override
   public void setX(double x) {
+    checkMutable();
     this.X = x;
   }
 
@@ -83,6 +85,7 @@ public abstract class Shape implements IShape {
    */
   @Override
   public void setY(double y) {
+    checkMutable();
     this.Y = y;
   }
 
@@ -103,6 +106,7 @@ public abstract class Shape implements IShape {
    */
   @Override
   public void setWidth(double width) {
+    checkMutable();
     this.width = width;
   }
 
@@ -123,17 +127,18 @@ public abstract class Shape implements IShape {
    */
   @Override
   public void setHeight(double height) {
+    checkMutable();
     this.height = height;
   }
 
   /**
-   * Gets the color of the shape.
+   * Gets the color of the shape. Colors are immutable, so the shape's own color is returned.
    *
    * @return the color of the shape
    */
   @Override
   public Color getColor() {
-    return new Color(this.color.getRed(), this.color.getGreen(), this.color.getBlue());
+    return this.color;
   }
 
   /**
@@ -145,7 +150,8 @@ public abstract class Shape implements IShape {
    */
   @Override
   public void changeColor(double r, double g, double b) {
-    this.color = new Color(r, g, b);
+    checkMutable();
+    this.color = Color.of(r, g, b);
   }
 
   /**
@@ -177,10 +183,29 @@ public abstract class Shape implements IShape {
   }
 
   /**
-   * Creates and returns a copy of the shape.
+   * Creates and returns a copy of the shape. The copy is modifiable even if this shape is not.
    *
    * @return a new Shape object that is an exact copy of the current shape
    */
   public abstract Shape copy();
 
+  /**
+   * Makes the shape read-only. Every setter called afterwards throws an exception. The model
+   * freezes the shapes it stores so it can share them with snapshots and views without copying.
+   */
+  void freeze() {
+    this.frozen = true;
+  }
+
+  /**
+   * Throws if the shape has been made read-only.
+   *
+   * @throws IllegalStateException if the shape is read-only
+   */
+  protected void checkMutable() {
+    if (this.frozen) {
+      throw new IllegalStateException("Shape " + this.name + " is read-only");
+    }
+  }
+
 }
@@ -0,0 +1,18 @@
+package photoalbum.model;
+
+/**
+ * The ShapeType enum lists the kinds of shapes a photo album can hold. Views use it to decide
+ * how to draw a shape without depending on the concrete shape class.
+ */
+public enum ShapeType {
+  /**
+   * A rectangle positioned by its minimum corner and sized by its width and height.
+   */
+  RECTANGLE,
+
+  /**
+   * An oval positioned by its center and sized by its X and Y radii, which are stored as its
+   * width and height.
+   */
+  OVAL
+}
@@ -0,0 +1,488 @@
+package photoalbum.model;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The ShapeVector class is a persistent, slot-addressed sequence of shapes. It is a 32-way trie
+ * in which every update copies only the path from the root to the changed slot, so two versions
+ * of the vector share every node that did not change between them.
+ *
+ * <p>Updates take an edit token. Nodes created under the same token are owned by the caller and
+ * are updated in place; every other node is treated as shared and copied first. A caller that
+ * wants to freeze the current version, for example when a snapshot is taken, simply switches to
+ * a new token. Removed shapes leave an empty slot behind so the slots of the remaining shapes, and
+ * therefore their draw order, never change.</p>
+ *
+ * <p>A vector is either made of shape objects or packed. The leaves of a packed vector are
+ * {@link PackedLeaf}s, which keep the properties of their shapes in primitive arrays. A packed
+ * vector builds a new read-only shape each time one is read through {@link #get} or
+ * {@link #iterator()}, and its list view hands out flyweights over the arrays. Its slots are
+ * compared by value rather than by identity. Every vector derived from a packed vector is packed
+ * too.</p>
+ */
+final class ShapeVector implements Iterable<Shape> {
+  private static final int BITS = 5;
+  private static final int WIDTH = 1 << BITS;
+  private static final int MASK = WIDTH - 1;
+
+  /**
+   * The empty vector.
+   */
+  static final ShapeVector EMPTY = new ShapeVector(0, 0, 0, new Node(null));
+
+  /**
+   * The empty packed vector.
+   */
+  static final ShapeVector PACKED_EMPTY = new ShapeVector(0, 0, 0, new PackedLeaf(null, WIDTH));
+
+  private final int size;
+  private final int count;
+  private final int shift;
+  // An inner node, or a leaf: a Node of shapes or a PackedLeaf.
+  private final Object root;
+
+  /**
+   * A trie node. Leaf nodes hold shapes, inner nodes hold child nodes or packed leaves.
+   */
+  private static final class Node {
+    private final Object edit;
+    private final Object[] slots;
+
+    private Node(Object edit) {
+      this(edit, new Object[WIDTH]);
+    }
+
+    private Node(Object edit, Object[] slots) {
+      this.edit = edit;
+      this.slots = slots;
+    }
+  }
+
+  private ShapeVector(int size, int count, int shift, Object root) {
+    this.size = size;
+    this.count = count;
+    this.shift = shift;
+    this.root = root;
+  }
+
+  /**
+   * Builds a vector holding the given shapes, in order, in slots 0 to n - 1.
+   *
+   * @param shapes the shapes to store
+   * @return a new vector holding the shapes
+   */
+  static ShapeVector of(List<? extends Shape> shapes) {
+    Object edit = new Object();
+    ShapeVector vector = EMPTY;
+    for (Shape shape : shapes) {
+      vector = vector.append(shape, edit);
+    }
+    return vector;
+  }
+
+  /**
+   * Returns true if the vector is packed.
+   *
+   * @return true if the vector's leaves are {@link PackedLeaf}s
+   */
+  boolean isPacked() {
+    return leafFor(0) instanceof PackedLeaf;
+  }
+
+  /**
+   * Returns the number of slots in the vector, including the empty slots of removed shapes.
+   *
+   * @return the number of slots
+   */
+  int size() {
+    return this.size;
+  }
+
+  /**
+   * Returns the number of shapes in the vector.
+   *
+   * @return the number of non-empty slots
+   */
+  int count() {
+    return this.count;
+  }
+
+  /**
+   * Returns the shape stored in a slot.
+   *
+   * @param slot the slot to read
+   * @return the shape in the slot, or null if the slot is empty
+   * @throws IndexOutOfBoundsException if the slot is outside the vector
+   */
+  Shape get(int slot) {
+    if (slot < 0 || slot >= this.size) {
+      throw new IndexOutOfBoundsException("Slot " + slot + " out of range");
+    }
+    Object leaf = leafFor(slot);
+    if (leaf instanceof PackedLeaf) {
+      return ((PackedLeaf) leaf).get(slot & MASK);
+    }
+    return (Shape) ((Node) leaf).slots[slot & MASK];
+  }
+
+  /**
+   * Returns the shape stored in a slot without building a new shape for a packed vector.
+   *
+   * @param slot the slot to read
+   * @return the shape in the slot, or a flyweight view of it, or null if the slot is empty
+   * @throws IndexOutOfBoundsException if the slot is outside the vector
+   */
+  IShape view(int slot) {
+    if (slot < 0 || slot >= this.size) {
+      throw new IndexOutOfBoundsException("Slot " + slot + " out of range");
+    }
+    Object leaf = leafFor(slot);
+    if (leaf instanceof PackedLeaf) {
+      return ((PackedLeaf) leaf).view(slot & MASK);
+    }
+    return (Shape) ((Node) leaf).slots[slot & MASK];
+  }
+
+  /**
+   * Returns the name of the shape stored in a slot.
+   *
+   * @param slot the slot to read
+   * @return the name of the shape in the slot, or null if the slot is empty
+   * @throws IndexOutOfBoundsException if the slot is outside the vector
+   */
+  String nameAt(int slot) {
+    if (slot < 0 || slot >= this.size) {
+      throw new IndexOutOfBoundsException("Slot " + slot + " out of range");
+    }
+    Object leaf = leafFor(slot);
+    if (leaf instanceof PackedLeaf) {
+      return ((PackedLeaf) leaf).name(slot & MASK);
+    }
+    Shape shape = (Shape) ((Node) leaf).slots[slot & MASK];
+    return shape == null ? null : shape.getName();
+  }
+
+  /**
+   * Returns a version of this vector with a slot replaced.
+   *
+   * @param slot  the slot to replace
+   * @param shape the new shape for the slot, or null to empty it
+   * @param edit  the caller's edit token
+   * @return the updated vector
+   * @throws IndexOutOfBoundsException if the slot is outside the vector
+   */
+  ShapeVector set(int slot, Shape shape, Object edit) {
+    if (slot < 0 || slot >= this.size) {
+      throw new IndexOutOfBoundsException("Slot " + slot + " out of range");
+    }
+    int newCount = this.count + (shape != null ? 1 : 0) - (isEmptyAt(slot) ? 0 : 1);
+    return new ShapeVector(this.size, newCount, this.shift,
+        doSet(edit, this.shift, this.root, slot, shape));
+  }
+
+  /**
+   * Returns a version of this vector with a shape added in a new last slot.
+   *
+   * @param shape the shape to add
+   * @param edit  the caller's edit token
+   * @return the updated vector
+   */
+  ShapeVector append(Shape shape, Object edit) {
+    Object newRoot = this.root;
+    int newShift = this.shift;
+    if (this.size == 1 << (this.shift + BITS)) {
+      Node node = new Node(edit);
+      node.slots[0] = this.root;
+      newRoot = node;
+      newShift += BITS;
+    }
+    return new ShapeVector(this.size + 1, this.count + (shape != null ? 1 : 0), newShift,
+        doSet(edit, newShift, newRoot, this.size, shape));
+  }
+
+  /**
+   * Returns a vector holding only the shapes of this one, in the same order but without empty
+   * slots. The slots of the shapes change, so callers must re-index them.
+   *
+   * @return a compacted copy of this vector
+   */
+  ShapeVector compact() {
+    Object edit = new Object();
+    ShapeVector vector = isPacked() ? PACKED_EMPTY : EMPTY;
+    for (Shape shape : this) {
+      vector = vector.append(shape, edit);
+    }
+    return vector;
+  }
+
+  /**
+   * The SlotVisitor interface receives the slots reported by {@link #diff}.
+   */
+  interface SlotVisitor {
+    /**
+     * Receives one slot.
+     *
+     * @param slot  the slot
+     * @param shape the shape in the slot, or null if the slot is empty
+     */
+    void visit(int slot, Shape shape);
+  }
+
+  /**
+   * Reports every slot whose shape differs between an older vector and this one, in slot order,
+   * together with its shape in this vector. Slots are compared by identity, or by value in packed
+   * vectors, and leaves shared by the two versions are skipped without looking at their slots,
+   * so comparing two versions that share most of their structure is cheap. This vector must not
+   * be shorter than the older one.
+   *
+   * @param older   the older version
+   * @param visitor receives each changed slot
+   */
+  void diff(ShapeVector older, SlotVisitor visitor) {
+    for (int base = 0; base < this.size; base += WIDTH) {
+      Object leaf = leafFor(base);
+      Object oldLeaf = base < older.size ? older.leafFor(base) : null;
+      if (leaf == oldLeaf && older.size >= Math.min(this.size, base + WIDTH)) {
+        continue;
+      }
+      int limit = Math.min(WIDTH, this.size - base);
+      for (int i = 0; i < limit; i++) {
+        boolean existed = oldLeaf != null && base + i < older.size;
+        if (!existed || !sameSlot(leaf, oldLeaf, i)) {
+          visitor.visit(base + i, get(base + i));
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns a read-only list view of the shapes in slot order, skipping empty slots. The view
+   * reads this version of the vector directly and copies nothing; the elements of a packed vector
+   * are flyweights over its leaves. Positional access is constant time while the vector has no
+   * empty slots and linear otherwise; iteration is always cheap.
+   *
+   * @return an unmodifiable list of the shapes
+   */
+  List<IShape> asList() {
+    return new AbstractList<>() {
+      @Override
+      public IShape get(int index) {
+        if (index < 0 || index >= count) {
+          throw new IndexOutOfBoundsException("Index " + index + " out of range");
+        }
+        if (count == size) {
+          return ShapeVector.this.view(index);
+        }
+        Iterator<IShape> it = iterator();
+        for (int i = 0; i < index; i++) {
+          it.next();
+        }
+        return it.next();
+      }
+
+      @Override
+      public int size() {
+        return count;
+      }
+
+      @Override
+      public Iterator<IShape> iterator() {
+        return new SlotIterator<>() {
+          @Override
+          IShape read(Object leaf, int row) {
+            return leaf instanceof PackedLeaf ? ((PackedLeaf) leaf).view(row)
+                : (IShape) ((Node) leaf).slots[row];
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Returns an iterator over the shapes in slot order, skipping empty slots.
+   *
+   * @return an iterator over the shapes
+   */
+  @Override
+  public Iterator<Shape> iterator() {
+    return new SlotIterator<>() {
+      @Override
+      Shape read(Object leaf, int row) {
+        return leaf instanceof PackedLeaf ? ((PackedLeaf) leaf).get(row)
+            : (Shape) ((Node) leaf).slots[row];
+      }
+    };
+  }
+
+  /**
+   * An iterator over the non-empty slots of the vector, walking one leaf at a time.
+   *
+   * @param <T> the type of the values returned
+   */
+  private abstract class SlotIterator<T> implements Iterator<T> {
+    private Object leaf;
+    private int leafBase = -1;
+    private int next = advance(0);
+
+    /**
+     * Reads the value of a non-empty slot.
+     *
+     * @param leaf the leaf holding the slot
+     * @param row  the slot's position in the leaf
+     * @return the value
+     */
+    abstract T read(Object leaf, int row);
+
+    /**
+     * Finds the first non-empty slot at or after a slot.
+     *
+     * @param from the slot to start from
+     * @return the slot found, or the size of the vector if there is none
+     */
+    private int advance(int from) {
+      int i = from;
+      while (i < size) {
+        if (leafBase != (i & ~MASK)) {
+          leafBase = i & ~MASK;
+          leaf = leafFor(i);
+        }
+        if (!isEmpty(leaf, i & MASK)) {
+          return i;
+        }
+        i++;
+      }
+      return size;
+    }
+
+    /**
+     * Returns true if there is another non-empty slot.
+     *
+     * @return true if the iteration has more values
+     */
+    @Override
+    public boolean hasNext() {
+      return next < size;
+    }
+
+    /**
+     * Returns the value of the next non-empty slot.
+     *
+     * @return the next value
+     * @throws NoSuchElementException if there are no more slots
+     */
+    @Override
+    public T next() {
+      if (next >= size) {
+        throw new NoSuchElementException();
+      }
+      T value = read(leaf, next & MASK);
+      next = advance(next + 1);
+      return value;
+    }
+  }
+
+  /**
+   * Returns true if a slot is empty.
+   *
+   * @param slot the slot
+   * @return true if the slot holds no shape
+   */
+  private boolean isEmptyAt(int slot) {
+    return isEmpty(leafFor(slot), slot & MASK);
+  }
+
+  /**
+   * Returns true if a position of a leaf is empty.
+   *
+   * @param leaf the leaf, a Node of shapes or a PackedLeaf
+   * @param row  the position in the leaf
+   * @return true if the position holds no shape
+   */
+  private static boolean isEmpty(Object leaf, int row) {
+    return leaf instanceof PackedLeaf ? ((PackedLeaf) leaf).isEmpty(row)
+        : ((Node) leaf).slots[row] == null;
+  }
+
+  /**
+   * Returns true if a position holds the same shape in two leaves: the same object in leaves of
+   * shapes, or equal properties in packed leaves.
+   *
+   * @param leaf    the leaf of this vector
+   * @param oldLeaf the leaf of the older vector
+   * @param row     the position in both leaves
+   * @return true if the position holds the same shape
+   */
+  private static boolean sameSlot(Object leaf, Object oldLeaf, int row) {
+    if (leaf instanceof PackedLeaf && oldLeaf instanceof PackedLeaf) {
+      return ((PackedLeaf) leaf).sameRow(row, (PackedLeaf) oldLeaf, row);
+    }
+    if (leaf instanceof PackedLeaf || oldLeaf instanceof PackedLeaf) {
+      return isEmpty(leaf, row) && isEmpty(oldLeaf, row);
+    }
+    return ((Node) leaf).slots[row] == ((Node) oldLeaf).slots[row];
+  }
+
+  /**
+   * Returns the leaf that holds a slot.
+   *
+   * @param slot the slot to look up
+   * @return the leaf, a Node of shapes or a PackedLeaf
+   */
+  private Object leafFor(int slot) {
+    Object node = this.root;
+    for (int level = this.shift; level > 0; level -= BITS) {
+      node = ((Node) node).slots[(slot >>> level) & MASK];
+    }
+    return node;
+  }
+
+  /**
+   * Stores a value in a slot of the subtree rooted at node, copying the nodes along the path
+   * that the edit token does not own. A new leaf is packed if the vector is.
+   *
+   * @param edit  the caller's edit token
+   * @param level the shift of the node's level, zero for a leaf
+   * @param node  the subtree root, or null if the subtree does not exist yet
+   * @param slot  the slot to store into
+   * @param value the value to store
+   * @return the new subtree root
+   */
+  private Object doSet(Object edit, int level, Object node, int slot, Shape value) {
+    if (level == 0) {
+      if (node instanceof PackedLeaf || (node == null && isPacked())) {
+        PackedLeaf leaf = node == null ? new PackedLeaf(edit, WIDTH)
+            : ((PackedLeaf) node).editable(edit);
+        leaf.put(slot & MASK, value);
+        return leaf;
+      }
+      Node leaf = editable((Node) node, edit);
+      leaf.slots[slot & MASK] = value;
+      return leaf;
+    }
+    Node result = editable((Node) node, edit);
+    int index = (slot >>> level) & MASK;
+    result.slots[index] = doSet(edit, level - BITS, result.slots[index], slot, value);
+    return result;
+  }
+
+  /**
+   * Returns a node that may be modified under the edit token: the node itself if the token owns
+   * it, otherwise a copy owned by the token.
+   *
+   * @param node the node, or null to create an empty one
+   * @param edit the caller's edit token
+   * @return a node owned by the edit token
+   */
+  private static Node editable(Node node, Object edit) {
+    if (node == null) {
+      return new Node(edit);
+    }
+    if (edit != null && node.edit == edit) {
+      return node;
+    }
+    return new Node(edit, node.slots.clone());
+  }
+}
@@ -0,0 +1,150 @@
+package photoalbum.model;
+
+import java.util.Arrays;
+
+/**
+ * The SlotTable class maps shape names to their slots in the model's {@link ShapeVector}. It is
+ * an open-addressing hash table over two parallel arrays, so an entry costs two array elements
+ * instead of a map node, a boxed slot and a hash bucket.
+ *
+ * <p>Collisions are resolved by linear probing, and removing an entry shifts the entries after it
+ * back into place, so the table never fills up with deleted markers.</p>
+ */
+final class SlotTable {
+  private static final int MIN_CAPACITY = 16;
+
+  private String[] names;
+  private int[] slots;
+  private int size;
+
+  /**
+   * Constructs an empty table.
+   */
+  SlotTable() {
+    this.names = new String[MIN_CAPACITY];
+    this.slots = new int[MIN_CAPACITY];
+  }
+
+  /**
+   * Returns the slot of a name.
+   *
+   * @param name the name
+   * @return the slot, or -1 if the name is not in the table
+   */
+  int get(String name) {
+    int mask = this.names.length - 1;
+    for (int i = hash(name) & mask; this.names[i] != null; i = (i + 1) & mask) {
+      if (this.names[i].equals(name)) {
+        return this.slots[i];
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns true if a name is in the table.
+   *
+   * @param name the name
+   * @return true if the name has a slot
+   */
+  boolean contains(String name) {
+    return get(name) >= 0;
+  }
+
+  /**
+   * Sets the slot of a name, adding the name if it is not in the table yet.
+   *
+   * @param name the name
+   * @param slot the slot, not negative
+   */
+  void put(String name, int slot) {
+    if ((this.size + 1) * 4 > this.names.length * 3) {
+      resize(this.names.length * 2);
+    }
+    int mask = this.names.length - 1;
+    int i = hash(name) & mask;
+    while (this.names[i] != null) {
+      if (this.names[i].equals(name)) {
+        this.slots[i] = slot;
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+    this.names[i] = name;
+    this.slots[i] = slot;
+    this.size++;
+  }
+
+  /**
+   * Removes a name from the table.
+   *
+   * @param name the name
+   * @return the slot the name had, or -1 if it was not in the table
+   */
+  int remove(String name) {
+    int mask = this.names.length - 1;
+    int i = hash(name) & mask;
+    while (this.names[i] != null && !this.names[i].equals(name)) {
+      i = (i + 1) & mask;
+    }
+    if (this.names[i] == null) {
+      return -1;
+    }
+    int slot = this.slots[i];
+    // Move back every later entry of the run that can no longer be reached past the gap.
+    int gap = i;
+    for (int j = (i + 1) & mask; this.names[j] != null; j = (j + 1) & mask) {
+      int home = hash(this.names[j]) & mask;
+      if (((j - home) & mask) >= ((j - gap) & mask)) {
+        this.names[gap] = this.names[j];
+        this.slots[gap] = this.slots[j];
+        gap = j;
+      }
+    }
+    this.names[gap] = null;
+    this.size--;
+    return slot;
+  }
+
+  /**
+   * Removes every name from the table.
+   */
+  void clear() {
+    Arrays.fill(this.names, null);
+    this.size = 0;
+  }
+
+  /**
+   * Moves every entry into new arrays of a given capacity.
+   *
+   * @param capacity the new capacity, a power of two
+   */
+  private void resize(int capacity) {
+    String[] oldNames = this.names;
+    int[] oldSlots = this.slots;
+    this.names = new String[capacity];
+    this.slots = new int[capacity];
+    int mask = capacity - 1;
+    for (int k = 0; k < oldNames.length; k++) {
+      if (oldNames[k] != null) {
+        int i = hash(oldNames[k]) & mask;
+        while (this.names[i] != null) {
+          i = (i + 1) & mask;
+        }
+        this.names[i] = oldNames[k];
+        this.slots[i] = oldSlots[k];
+      }
+    }
+  }
+
+  /**
+   * Spreads the hash code of a name so that its low bits can pick a bucket.
+   *
+   * @param name the name
+   * @return the spread hash
+   */
+  private static int hash(String name) {
+    int h = name.hashCode() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
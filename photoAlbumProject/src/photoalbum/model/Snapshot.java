@@ -14,7 +14,7 @@ public class Snapshot {
   private final String snapshotId;
   private final LocalDateTime timestamp;
   private final String description;
-  private final List<Shape> shapes;
+  private final ShapeVector shapes;
 
   /**
    * Constructs a Snapshot with a given description and a list of shapes.
@@ -24,10 +24,23 @@ public class Snapshot {
    * @param shapes      the list of shapes captured in this snapshot
    */
   public Snapshot(String description, List<Shape> shapes) {
-    this.snapshotId = LocalDateTime.now().toString();
-    this.timestamp = LocalDateTime.now();
+    this(LocalDateTime.now().toString(), LocalDateTime.now(), description, copyOf(shapes));
+  }
+
+  /**
+   * Constructs a Snapshot that shares the given version of the album's shapes. The shapes in the
+   * vector must never be modified afterwards.
+   *
+   * @param snapshotId  the ID of the snapshot
+   * @param timestamp   the time the snapshot was taken
+   * @param description a brief description of the snapshot
+   * @param shapes      the shapes captured in this snapshot
+   */
+  Snapshot(String snapshotId, LocalDateTime timestamp, String description, ShapeVector shapes) {
+    this.snapshotId = snapshotId;
+    this.timestamp = timestamp;
     this.description = description;
-    this.shapes = List.copyOf(shapes);
+    this.shapes = shapes;
   }
 
   /**
@@ -49,16 +62,46 @@ public class Snapshot {
   }
 
   /**
-   * Gets the list of shapes in the snapshot.
+   * Gets the list of shapes in the snapshot. The list is an unmodifiable view of the snapshot's
+   * own shapes, which are read-only, so nothing is copied.
    *
-   * @return an immutable list of shapes
+   * @return an immutable list of read-only shapes
    */
-  public List<Shape> getShapes() {
-    List<Shape> returnShapes = new ArrayList<>();
-    for (Shape shape : this.shapes) {
-      returnShapes.add(shape.copy());
-    }
-    return returnShapes;
+  public List<IShape> getShapes() {
+    return this.shapes.asList();
+  }
+
+  /**
+   * Gets the shapes that are drawn differently in this snapshot and another one: every shape of
+   * either snapshot that the other does not hold, unchanged, at the same place in the drawing
+   * order. Any pixel not covered by one of these shapes looks the same in both snapshots. For two
+   * consecutive snapshots of an album this costs about as much as the number of changed shapes.
+   *
+   * @param other the snapshot to compare with
+   * @return the shapes of both snapshots that differ
+   */
+  public List<IShape> getChangedShapes(Snapshot other) {
+    ShapeVector longer = this.shapes.size() >= other.shapes.size() ? this.shapes : other.shapes;
+    ShapeVector shorter = longer == this.shapes ? other.shapes : this.shapes;
+    List<IShape> changed = new ArrayList<>();
+    longer.diff(shorter, (slot, shape) -> {
+      if (shape != null) {
+        changed.add(shape);
+      }
+      if (slot < shorter.size() && shorter.get(slot) != null) {
+        changed.add(shorter.get(slot));
+      }
+    });
+    return changed;
+  }
+
+  /**
+   * Returns the vector holding the snapshot's shapes.
+   *
+   * @return the snapshot's shapes
+   */
+  ShapeVector shapeVector() {
+    return this.shapes;
   }
 
   /**
@@ -87,4 +130,20 @@ public class Snapshot {
     }
     return output;
   }
+
+  /**
+   * Copies the given shapes into a new vector so later changes to them cannot reach the snapshot.
+   *
+   * @param shapes the shapes to copy
+   * @return a vector holding read-only copies of the shapes
+   */
+  private static ShapeVector copyOf(List<Shape> shapes) {
+    List<Shape> copies = new ArrayList<>(shapes.size());
+    for (Shape shape : shapes) {
+      Shape copy = shape.copy();
+      copy.freeze();
+      copies.add(copy);
+    }
+    return ShapeVector.of(copies);
+  }
 }
@@ -0,0 +1,67 @@
+package photoalbum.model;
+
+import java.util.List;
+
+/**
+ * The SnapshotIndex class finds the shapes of a snapshot lying in a region of the plane. It holds
+ * a {@link SpatialIndex} of one snapshot at a time, with each shape keyed by its slot, and moves
+ * it to the snapshot asked about by updating only the slots in which the two snapshots differ.
+ * Results therefore still come back in drawing order, and a query about a snapshot next to the
+ * previous one costs about as much as the number of shapes changed between them plus the number
+ * of shapes found, rather than the number of shapes in the snapshot.
+ *
+ * <p>Queries may be made from several threads at once; they are served one at a time.</p>
+ */
+public final class SnapshotIndex {
+  private final SpatialIndex index = new SpatialIndex();
+  private ShapeVector current = ShapeVector.EMPTY;
+
+  /**
+   * Finds the shapes of a snapshot whose bounds overlap a rectangular region.
+   *
+   * @param snapshot the snapshot
+   * @param x        the left edge of the region
+   * @param y        the top edge of the region
+   * @param width    the width of the region
+   * @param height   the height of the region
+   * @return the shapes of the snapshot overlapping the region, in drawing order
+   */
+  public synchronized List<IShape> query(Snapshot snapshot, double x, double y, double width,
+                                         double height) {
+    moveTo(snapshot.shapeVector());
+    return this.index.query(x, y, width, height);
+  }
+
+  /**
+   * Updates the index so that it holds the shapes of a vector, touching only the slots that
+   * differ from the vector it holds now.
+   *
+   * @param target the vector to hold
+   */
+  private void moveTo(ShapeVector target) {
+    if (target == this.current) {
+      return;
+    }
+    if (target.size() >= this.current.size()) {
+      target.diff(this.current, this::store);
+    } else {
+      this.current.diff(target,
+          (slot, shape) -> store(slot, slot < target.size() ? target.get(slot) : null));
+    }
+    this.current = target;
+  }
+
+  /**
+   * Stores the shape of a slot, or removes the slot if it is empty.
+   *
+   * @param slot  the slot
+   * @param shape the shape in the slot, or null if the slot is empty
+   */
+  private void store(int slot, Shape shape) {
+    if (shape == null) {
+      this.index.remove(slot);
+    } else {
+      this.index.put(slot, shape);
+    }
+  }
+}
@@ -0,0 +1,285 @@
+package photoalbum.model;
+
+import java.time.LocalDateTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The SnapshotTimeline class stores the snapshots of an album as a sequence of deltas. Each
+ * snapshot records only the slots of the model's {@link ShapeVector} that changed since the
+ * previous snapshot, and every keyframe interval a full version of the vector is kept as a
+ * keyframe. Any snapshot can be rebuilt by applying at most that many deltas to its keyframe.
+ *
+ * <p>The model reports every slot it changes through {@link #changed(int)} and calls
+ * {@link #add} when a snapshot is taken. Rebuilt snapshots never share writable nodes with
+ * the model or with each other, so they may be read from any thread.</p>
+ */
+final class SnapshotTimeline {
+  private final int keyframeInterval;
+  private final List<Frame> frames;
+  private int[] pending;
+  private int pendingCount;
+  private int[] changeStamp;
+  private boolean forceKeyframe;
+  private int lastKeyframe;
+  private volatile Cursor cursor;
+
+  /**
+   * The stored form of one snapshot.
+   */
+  private static final class Frame {
+    private final String snapshotId;
+    private final LocalDateTime timestamp;
+    private final String description;
+    private final ShapeVector keyframe;
+    private final boolean renumbered;
+    private final int base;
+    private final int[] slots;
+    private final Shape[] values;
+
+    private Frame(String snapshotId, LocalDateTime timestamp, String description,
+                  ShapeVector keyframe, boolean renumbered, int base, int[] slots,
+                  Shape[] values) {
+      this.snapshotId = snapshotId;
+      this.timestamp = timestamp;
+      this.description = description;
+      this.keyframe = keyframe;
+      this.renumbered = renumbered;
+      this.base = base;
+      this.slots = slots;
+      this.values = values;
+    }
+  }
+
+  /**
+   * The most recently rebuilt snapshot, kept so that stepping through the timeline in order
+   * costs one delta per step.
+   */
+  private static final class Cursor {
+    private final int index;
+    private final ShapeVector shapes;
+
+    private Cursor(int index, ShapeVector shapes) {
+      this.index = index;
+      this.shapes = shapes;
+    }
+  }
+
+  /**
+   * Constructs an empty timeline.
+   *
+   * @param keyframeInterval the maximum number of snapshots between two keyframes
+   * @throws IllegalArgumentException if the interval is not positive
+   */
+  SnapshotTimeline(int keyframeInterval) {
+    if (keyframeInterval <= 0) {
+      throw new IllegalArgumentException("Keyframe interval must be positive");
+    }
+    this.keyframeInterval = keyframeInterval;
+    this.frames = new ArrayList<>();
+    this.pending = new int[16];
+    this.changeStamp = new int[16];
+  }
+
+  /**
+   * Records that a slot of the model's vector changed since the last snapshot.
+   *
+   * @param slot the changed slot
+   */
+  void changed(int slot) {
+    if (slot >= changeStamp.length) {
+      changeStamp = Arrays.copyOf(changeStamp, Math.max(slot + 1, changeStamp.length * 2));
+    }
+    int stamp = frames.size() + 1;
+    if (changeStamp[slot] == stamp) {
+      return;
+    }
+    changeStamp[slot] = stamp;
+    if (pendingCount == pending.length) {
+      pending = Arrays.copyOf(pending, pendingCount * 2);
+    }
+    pending[pendingCount++] = slot;
+  }
+
+  /**
+   * Records that the model renumbered its slots, which makes the pending changes meaningless.
+   * The next snapshot is stored as a keyframe.
+   */
+  void reset() {
+    forceKeyframe = true;
+    pendingCount = 0;
+    Arrays.fill(changeStamp, 0);
+  }
+
+  /**
+   * Appends a snapshot of the given vector.
+   *
+   * @param description the description of the snapshot
+   * @param shapes      the model's current vector
+   * @return true if the snapshot was stored as a keyframe, in which case the caller must not
+   *         modify the vector's nodes in place any more
+   */
+  boolean add(String description, ShapeVector shapes) {
+    return add(LocalDateTime.now().toString(), LocalDateTime.now(), description, shapes);
+  }
+
+  /**
+   * Appends a snapshot of the given vector with a known ID and timestamp, as when an album is
+   * loaded from a file.
+   *
+   * @param snapshotId  the ID of the snapshot
+   * @param timestamp   the time the snapshot was taken
+   * @param description the description of the snapshot
+   * @param shapes      the model's current vector
+   * @return true if the snapshot was stored as a keyframe, in which case the caller must not
+   *         modify the vector's nodes in place any more
+   */
+  boolean add(String snapshotId, LocalDateTime timestamp, String description,
+              ShapeVector shapes) {
+    int index = frames.size();
+    boolean renumbered = index == 0 || forceKeyframe;
+    boolean keyframe = renumbered || index - lastKeyframe >= keyframeInterval;
+    if (keyframe) {
+      frames.add(new Frame(snapshotId, timestamp, description, shapes, renumbered, index, null,
+          null));
+      lastKeyframe = index;
+      forceKeyframe = false;
+    } else {
+      int[] slots = Arrays.copyOf(pending, pendingCount);
+      Arrays.sort(slots);
+      Shape[] values = new Shape[slots.length];
+      for (int i = 0; i < slots.length; i++) {
+        values[i] = shapes.get(slots[i]);
+      }
+      frames.add(new Frame(snapshotId, timestamp, description, null, false, lastKeyframe, slots,
+          values));
+    }
+    pendingCount = 0;
+    return keyframe;
+  }
+
+  /**
+   * Returns the maximum number of snapshots between two keyframes.
+   *
+   * @return the keyframe interval
+   */
+  int keyframeInterval() {
+    return keyframeInterval;
+  }
+
+  /**
+   * Returns true if the slots of the snapshot at an index are numbered independently of those of
+   * the previous snapshot, because it is the first snapshot or the model compacted its slots
+   * before taking it.
+   *
+   * @param index the index of the snapshot
+   * @return true if the snapshot cannot be described as a change of the previous one
+   */
+  boolean isRenumbered(int index) {
+    return frames.get(index).renumbered;
+  }
+
+  /**
+   * Returns true if the model renumbered its slots since the last snapshot was taken.
+   *
+   * @return true if the pending changes were discarded by {@link #reset()}
+   */
+  boolean isResetPending() {
+    return forceKeyframe;
+  }
+
+  /**
+   * Returns the number of snapshots in the timeline.
+   *
+   * @return the number of snapshots
+   */
+  int size() {
+    return frames.size();
+  }
+
+  /**
+   * Rebuilds the snapshot at an index.
+   *
+   * @param index the index of the snapshot
+   * @return the snapshot
+   * @throws IndexOutOfBoundsException if there is no snapshot at the index
+   */
+  Snapshot get(int index) {
+    Frame frame = frames.get(index);
+    return new Snapshot(frame.snapshotId, frame.timestamp, frame.description, shapesAt(index));
+  }
+
+  /**
+   * Returns a read-only list view of the timeline. Each access rebuilds the snapshot.
+   *
+   * @return the snapshots in the timeline
+   */
+  List<Snapshot> asList() {
+    return new AbstractList<>() {
+      @Override
+      public Snapshot get(int index) {
+        return SnapshotTimeline.this.get(index);
+      }
+
+      @Override
+      public int size() {
+        return SnapshotTimeline.this.size();
+      }
+    };
+  }
+
+  /**
+   * Rebuilds the vector of a snapshot from the nearest usable starting point: the snapshot
+   * itself if it is a keyframe, the last rebuilt snapshot if it lies between the keyframe and the
+   * snapshot, or the keyframe otherwise.
+   *
+   * @param index the index of the snapshot
+   * @return the snapshot's vector
+   */
+  private ShapeVector shapesAt(int index) {
+    Frame frame = frames.get(index);
+    if (frame.keyframe != null) {
+      return frame.keyframe;
+    }
+    Cursor last = this.cursor;
+    int from;
+    ShapeVector shapes;
+    if (last != null && last.index <= index && last.index >= frame.base) {
+      from = last.index;
+      shapes = last.shapes;
+    } else {
+      from = frame.base;
+      shapes = frames.get(from).keyframe;
+    }
+    if (from < index) {
+      Object edit = new Object();
+      for (int i = from + 1; i <= index; i++) {
+        shapes = apply(frames.get(i), shapes, edit);
+      }
+      this.cursor = new Cursor(index, shapes);
+    }
+    return shapes;
+  }
+
+  /**
+   * Applies the delta of a frame to a vector.
+   *
+   * @param frame  the frame holding the delta
+   * @param shapes the vector of the previous snapshot
+   * @param edit   the edit token of this rebuild
+   * @return the vector of the frame's snapshot
+   */
+  private static ShapeVector apply(Frame frame, ShapeVector shapes, Object edit) {
+    for (int i = 0; i < frame.slots.length; i++) {
+      int slot = frame.slots[i];
+      if (slot < shapes.size()) {
+        shapes = shapes.set(slot, frame.values[i], edit);
+      } else {
+        shapes = shapes.append(frame.values[i], edit);
+      }
+    }
+    return shapes;
+  }
+}
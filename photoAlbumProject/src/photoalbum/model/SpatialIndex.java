@@ -0,0 +1,424 @@
+package photoalbum.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SpatialIndex class finds the shapes lying in a region of the plane without looking at the
+ * others. Each shape is stored under an integer key, its position in the drawing order, and
+ * results always come back in that order, so the last shape found at a point is the one drawn on
+ * top there.
+ *
+ * <p>The index is a uniform grid of square cells. A shape is listed in every cell its bounds
+ * overlap, and only cells holding a shape are stored. Shapes that would span too many cells, such
+ * as a background covering the whole canvas, are kept in a separate oversized set that every
+ * query checks instead. Adding, moving or removing a shape only touches the cells it covers, and a
+ * query only visits the cells it covers, so its cost depends on the size of the region and the
+ * number of shapes near it rather than on the number of shapes in the index.</p>
+ *
+ * <p>A shape's bounds are the pixels it may cover: from its corner to its corner plus its size
+ * for a rectangle, and its center plus or minus its radii for an oval. Shapes of zero or negative
+ * size cover nothing and are never found. An index must not be used by several threads at
+ * once.</p>
+ */
+public final class SpatialIndex {
+  /**
+   * The default width and height of a grid cell, in canvas units.
+   */
+  public static final double DEFAULT_CELL_SIZE = 64;
+  // Shapes overlapping more cells than this are kept in the oversized set.
+  private static final int MAX_CELLS = 64;
+  private static final byte ABSENT = 0;
+  private static final byte EMPTY = 1;
+  private static final byte GRID = 2;
+  private static final byte OVERSIZED = 3;
+
+  private final double cellSize;
+  private final Map<Long, Cell> cells = new HashMap<>();
+  private final BitSet oversized = new BitSet();
+  private IShape[] shapes = new IShape[16];
+  private byte[] states = new byte[16];
+  // The first and last cell column and row of each shape in the grid, four ints per key.
+  private int[] boxes = new int[64];
+  private int[] seen = new int[16];
+  private int queryStamp;
+  private int size;
+
+  /**
+   * The keys of the shapes listed in one cell.
+   */
+  private static final class Cell {
+    private int[] keys = new int[4];
+    private int count;
+  }
+
+  /**
+   * Constructs an empty index with cells of the default size.
+   */
+  public SpatialIndex() {
+    this(DEFAULT_CELL_SIZE);
+  }
+
+  /**
+   * Constructs an empty index. Cells about the size of a typical shape work best.
+   *
+   * @param cellSize the width and height of a grid cell, in canvas units
+   * @throws IllegalArgumentException if the cell size is not a positive finite number
+   */
+  public SpatialIndex(double cellSize) {
+    if (!(cellSize > 0) || Double.isInfinite(cellSize)) {
+      throw new IllegalArgumentException("Cell size must be positive");
+    }
+    this.cellSize = cellSize;
+  }
+
+  /**
+   * Builds an index of a list of shapes, such as the shapes of a snapshot, with each shape keyed
+   * by its position in the list.
+   *
+   * @param shapes the shapes, in drawing order
+   * @return a new index holding the shapes
+   */
+  public static SpatialIndex of(List<? extends IShape> shapes) {
+    SpatialIndex index = new SpatialIndex();
+    int key = 0;
+    for (IShape shape : shapes) {
+      index.put(key++, shape);
+    }
+    return index;
+  }
+
+  /**
+   * Returns the number of shapes in the index.
+   *
+   * @return the number of keys holding a shape
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Stores a shape under a key, replacing any shape stored there before. If the new shape covers
+   * the same cells as the old one, as after a change of color, no cell is touched.
+   *
+   * @param key   the key, the position of the shape in the drawing order
+   * @param shape the shape
+   * @throws IllegalArgumentException if the key is negative
+   */
+  public void put(int key, IShape shape) {
+    if (key < 0) {
+      throw new IllegalArgumentException("Key cannot be negative");
+    }
+    ensureCapacity(key);
+    double[] bounds = boundsOf(shape);
+    int[] box = bounds == null ? null : cellBox(bounds, MAX_CELLS);
+    byte state = bounds == null ? EMPTY : box == null ? OVERSIZED : GRID;
+    byte old = this.states[key];
+    if (old == state && (state != GRID || sameBox(key, box))) {
+      this.shapes[key] = shape;
+      return;
+    }
+    if (old != ABSENT) {
+      remove(key);
+    }
+    this.shapes[key] = shape;
+    this.states[key] = state;
+    this.size++;
+    if (state == OVERSIZED) {
+      this.oversized.set(key);
+    } else if (state == GRID) {
+      System.arraycopy(box, 0, this.boxes, key * 4, 4);
+      for (int column = box[0]; column <= box[2]; column++) {
+        for (int row = box[1]; row <= box[3]; row++) {
+          Cell cell = this.cells.computeIfAbsent(cellKey(column, row), k -> new Cell());
+          if (cell.count == cell.keys.length) {
+            cell.keys = Arrays.copyOf(cell.keys, cell.count * 2);
+          }
+          cell.keys[cell.count++] = key;
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the shape stored under a key, if there is one.
+   *
+   * @param key the key
+   */
+  public void remove(int key) {
+    if (key < 0 || key >= this.states.length || this.states[key] == ABSENT) {
+      return;
+    }
+    if (this.states[key] == OVERSIZED) {
+      this.oversized.clear(key);
+    } else if (this.states[key] == GRID) {
+      int at = key * 4;
+      for (int column = this.boxes[at]; column <= this.boxes[at + 2]; column++) {
+        for (int row = this.boxes[at + 1]; row <= this.boxes[at + 3]; row++) {
+          long cellKey = cellKey(column, row);
+          Cell cell = this.cells.get(cellKey);
+          for (int i = 0; i < cell.count; i++) {
+            if (cell.keys[i] == key) {
+              cell.keys[i] = cell.keys[--cell.count];
+              break;
+            }
+          }
+          if (cell.count == 0) {
+            this.cells.remove(cellKey);
+          }
+        }
+      }
+    }
+    this.shapes[key] = null;
+    this.states[key] = ABSENT;
+    this.size--;
+  }
+
+  /**
+   * Removes every shape from the index.
+   */
+  public void clear() {
+    this.cells.clear();
+    this.oversized.clear();
+    Arrays.fill(this.shapes, null);
+    Arrays.fill(this.states, ABSENT);
+    this.size = 0;
+  }
+
+  /**
+   * Finds the shapes whose bounds overlap a rectangular region, such as the part of the canvas
+   * that is visible.
+   *
+   * @param x      the left edge of the region
+   * @param y      the top edge of the region
+   * @param width  the width of the region
+   * @param height the height of the region
+   * @return the shapes overlapping the region, in drawing order
+   */
+  public List<IShape> query(double x, double y, double width, double height) {
+    if (!(width > 0) || !(height > 0)) {
+      return new ArrayList<>();
+    }
+    double[] region = {x, y, x + width, y + height};
+    int[] keys = collect(region);
+    List<IShape> result = new ArrayList<>(keys.length);
+    for (int key : keys) {
+      result.add(this.shapes[key]);
+    }
+    return result;
+  }
+
+  /**
+   * Finds the shapes covering a point, taking the actual outline of ovals into account.
+   *
+   * @param x the x-coordinate of the point
+   * @param y the y-coordinate of the point
+   * @return the shapes covering the point, in drawing order
+   */
+  public List<IShape> queryPoint(double x, double y) {
+    List<IShape> result = new ArrayList<>();
+    for (int key : collect(new double[] {x, y, x, y})) {
+      if (contains(this.shapes[key], x, y)) {
+        result.add(this.shapes[key]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Finds the shape drawn on top at a point.
+   *
+   * @param x the x-coordinate of the point
+   * @param y the y-coordinate of the point
+   * @return the last shape in drawing order covering the point, or null if there is none
+   */
+  public IShape shapeAt(double x, double y) {
+    int[] keys = collect(new double[] {x, y, x, y});
+    for (int i = keys.length - 1; i >= 0; i--) {
+      if (contains(this.shapes[keys[i]], x, y)) {
+        return this.shapes[keys[i]];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns true if a point lies inside a shape.
+   *
+   * @param shape the shape
+   * @param x     the x-coordinate of the point
+   * @param y     the y-coordinate of the point
+   * @return true if the shape covers the point
+   */
+  static boolean contains(IShape shape, double x, double y) {
+    if (shape.getType() == ShapeType.OVAL) {
+      double dx = (x - shape.getX()) / shape.getWidth();
+      double dy = (y - shape.getY()) / shape.getHeight();
+      return dx * dx + dy * dy <= 1;
+    }
+    return x >= shape.getX() && x < shape.getX() + shape.getWidth()
+        && y >= shape.getY() && y < shape.getY() + shape.getHeight();
+  }
+
+  /**
+   * Returns the bounds of a shape.
+   *
+   * @param shape the shape
+   * @return the left, top, right and bottom edges, or null if the shape covers nothing
+   */
+  static double[] boundsOf(IShape shape) {
+    double width = shape.getWidth();
+    double height = shape.getHeight();
+    if (!(width > 0) || !(height > 0) || Double.isNaN(shape.getX())
+        || Double.isNaN(shape.getY())) {
+      return null;
+    }
+    if (shape.getType() == ShapeType.OVAL) {
+      return new double[] {shape.getX() - width, shape.getY() - height, shape.getX() + width,
+          shape.getY() + height};
+    }
+    return new double[] {shape.getX(), shape.getY(), shape.getX() + width,
+        shape.getY() + height};
+  }
+
+  /**
+   * Collects the keys of the shapes whose bounds overlap a region.
+   *
+   * @param region the left, top, right and bottom edges of the region
+   * @return the keys, sorted
+   */
+  private int[] collect(double[] region) {
+    if (++this.queryStamp == 0) {
+      Arrays.fill(this.seen, 0);
+      this.queryStamp = 1;
+    }
+    int[] found = new int[16];
+    int count = 0;
+    // Visit the covered cells one by one unless there are more of them than cells in the map.
+    int[] box = cellBox(region, this.cells.size());
+    Iterable<Cell> visit;
+    if (box != null) {
+      List<Cell> covered = new ArrayList<>();
+      for (int column = box[0]; column <= box[2]; column++) {
+        for (int row = box[1]; row <= box[3]; row++) {
+          Cell cell = this.cells.get(cellKey(column, row));
+          if (cell != null) {
+            covered.add(cell);
+          }
+        }
+      }
+      visit = covered;
+    } else {
+      visit = this.cells.values();
+    }
+    for (Cell cell : visit) {
+      for (int i = 0; i < cell.count; i++) {
+        int key = cell.keys[i];
+        if (this.seen[key] != this.queryStamp) {
+          this.seen[key] = this.queryStamp;
+          if (overlaps(boundsOf(this.shapes[key]), region)) {
+            if (count == found.length) {
+              found = Arrays.copyOf(found, count * 2);
+            }
+            found[count++] = key;
+          }
+        }
+      }
+    }
+    for (int key = this.oversized.nextSetBit(0); key >= 0;
+         key = this.oversized.nextSetBit(key + 1)) {
+      if (overlaps(boundsOf(this.shapes[key]), region)) {
+        if (count == found.length) {
+          found = Arrays.copyOf(found, count * 2);
+        }
+        found[count++] = key;
+      }
+    }
+    int[] keys = Arrays.copyOf(found, count);
+    Arrays.sort(keys);
+    return keys;
+  }
+
+  /**
+   * Returns true if two sets of bounds overlap. A region of zero size, a point, overlaps the
+   * bounds that contain it.
+   *
+   * @param bounds the bounds of a shape
+   * @param region the bounds of the region
+   * @return true if the two overlap
+   */
+  private static boolean overlaps(double[] bounds, double[] region) {
+    boolean point = region[0] == region[2] && region[1] == region[3];
+    if (point) {
+      return region[0] >= bounds[0] && region[0] <= bounds[2]
+          && region[1] >= bounds[1] && region[1] <= bounds[3];
+    }
+    return bounds[0] < region[2] && region[0] < bounds[2]
+        && bounds[1] < region[3] && region[1] < bounds[3];
+  }
+
+  /**
+   * Returns the range of cells covered by some bounds.
+   *
+   * @param bounds   the left, top, right and bottom edges
+   * @param maxCells the largest number of cells the range may hold
+   * @return the first column, first row, last column and last row, or null if the bounds cover
+   *         more cells than allowed
+   */
+  private int[] cellBox(double[] bounds, int maxCells) {
+    double left = Math.floor(bounds[0] / this.cellSize);
+    double top = Math.floor(bounds[1] / this.cellSize);
+    double right = Math.floor(bounds[2] / this.cellSize);
+    double bottom = Math.floor(bounds[3] / this.cellSize);
+    if (!((right - left + 1) * (bottom - top + 1) <= maxCells)
+        || left < Integer.MIN_VALUE || right > Integer.MAX_VALUE
+        || top < Integer.MIN_VALUE || bottom > Integer.MAX_VALUE) {
+      return null;
+    }
+    return new int[] {(int) left, (int) top, (int) right, (int) bottom};
+  }
+
+  /**
+   * Returns true if a key is listed in exactly the given range of cells.
+   *
+   * @param key the key
+   * @param box the range of cells
+   * @return true if the key's stored range equals the given one
+   */
+  private boolean sameBox(int key, int[] box) {
+    int at = key * 4;
+    return this.boxes[at] == box[0] && this.boxes[at + 1] == box[1]
+        && this.boxes[at + 2] == box[2] && this.boxes[at + 3] == box[3];
+  }
+
+  /**
+   * Packs the column and row of a cell into one map key.
+   *
+   * @param column the column of the cell
+   * @param row    the row of the cell
+   * @return the map key of the cell
+   */
+  private static long cellKey(int column, int row) {
+    return (long) column << 32 | (row & 0xffffffffL);
+  }
+
+  /**
+   * Grows the per-key arrays so they can hold a key.
+   *
+   * @param key the key
+   */
+  private void ensureCapacity(int key) {
+    if (key < this.states.length) {
+      return;
+    }
+    int length = Math.max(key + 1, this.states.length * 2);
+    this.shapes = Arrays.copyOf(this.shapes, length);
+    this.states = Arrays.copyOf(this.states, length);
+    this.seen = Arrays.copyOf(this.seen, length);
+    this.boxes = Arrays.copyOf(this.boxes, length * 4);
+  }
+}
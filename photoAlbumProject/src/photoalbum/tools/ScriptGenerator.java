@@ -0,0 +1,506 @@
+package photoalbum.tools;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * The ScriptGenerator class writes synthetic album scripts for load testing, benchmarks and
+ * memory profiling. A script first creates a number of shapes and takes a snapshot of them, then
+ * applies a number of random edits, taking a snapshot every so many edits and once more at the
+ * end. The edits are moves, resizes, color changes and removals in tunable proportions; a
+ * removed shape is replaced right away by a new one, so the album keeps its size. Shapes are
+ * spread evenly over the canvas or gathered in a few clusters.
+ *
+ * <p>The script only depends on the settings and the seed, so the same generator always
+ * produces the same script. It can be written to a file, or read through {@link #open} as a
+ * stream that produces it line by line as it is read, so even a very large script can be handed
+ * to the {@link photoalbum.controller.ScriptParser} without ever being held whole in memory or
+ * stored on disk.</p>
+ */
+public class ScriptGenerator {
+  private static final int BUFFER_SIZE = 1 << 14;
+  private static final int CLUSTERS = 8;
+
+  /**
+   * The ways shapes are spread over the canvas.
+   */
+  public enum Distribution {
+    /**
+     * Shapes are placed anywhere on the canvas with equal likelihood.
+     */
+    UNIFORM,
+    /**
+     * Shapes are gathered around a few random points of the canvas.
+     */
+    CLUSTERED
+  }
+
+  private final long seed;
+  private int shapes = 1000;
+  private int edits = 10000;
+  private int snapshotEvery = 1000;
+  private int moveWeight = 4;
+  private int resizeWeight = 2;
+  private int colorWeight = 2;
+  private int removeWeight = 1;
+  private Distribution distribution = Distribution.UNIFORM;
+  private int width = 1000;
+  private int height = 1000;
+  private int minSize = 1;
+  private int maxSize = 60;
+
+  /**
+   * Constructs a generator of scripts of 1000 uniformly spread shapes and 10000 edits, with a
+   * snapshot every 1000 edits.
+   *
+   * @param seed the seed of the random numbers
+   */
+  public ScriptGenerator(long seed) {
+    this.seed = seed;
+  }
+
+  /**
+   * Sets the number of shapes the script creates before its first edit.
+   *
+   * @param count the number of shapes
+   * @return this generator
+   * @throws IllegalArgumentException if the count is negative
+   */
+  public ScriptGenerator shapes(int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("Number of shapes cannot be negative");
+    }
+    this.shapes = count;
+    return this;
+  }
+
+  /**
+   * Sets the number of edits the script applies after creating its shapes.
+   *
+   * @param count the number of edits
+   * @return this generator
+   * @throws IllegalArgumentException if the count is negative
+   */
+  public ScriptGenerator edits(int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("Number of edits cannot be negative");
+    }
+    this.edits = count;
+    return this;
+  }
+
+  /**
+   * Sets how many edits are applied between two snapshots.
+   *
+   * @param edits the number of edits between snapshots
+   * @return this generator
+   * @throws IllegalArgumentException if the number is not positive
+   */
+  public ScriptGenerator snapshotEvery(int edits) {
+    if (edits <= 0) {
+      throw new IllegalArgumentException("Snapshot interval must be positive");
+    }
+    this.snapshotEvery = edits;
+    return this;
+  }
+
+  /**
+   * Sets the relative proportions of the kinds of edits.
+   *
+   * @param move   the weight of moves
+   * @param resize the weight of resizes
+   * @param color  the weight of color changes
+   * @param remove the weight of removals
+   * @return this generator
+   * @throws IllegalArgumentException if a weight is negative or all are zero
+   */
+  public ScriptGenerator editMix(int move, int resize, int color, int remove) {
+    if (move < 0 || resize < 0 || color < 0 || remove < 0) {
+      throw new IllegalArgumentException("Edit weights cannot be negative");
+    }
+    if ((long) move + resize + color + remove == 0
+        || (long) move + resize + color + remove > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Edit weights must add up to a positive int");
+    }
+    this.moveWeight = move;
+    this.resizeWeight = resize;
+    this.colorWeight = color;
+    this.removeWeight = remove;
+    return this;
+  }
+
+  /**
+   * Sets how shapes are spread over the canvas.
+   *
+   * @param distribution the distribution of shape positions
+   * @return this generator
+   */
+  public ScriptGenerator distribution(Distribution distribution) {
+    this.distribution = distribution;
+    return this;
+  }
+
+  /**
+   * Sets the size of the canvas the shapes are spread over.
+   *
+   * @param width  the width of the canvas
+   * @param height the height of the canvas
+   * @return this generator
+   * @throws IllegalArgumentException if a dimension is not positive
+   */
+  public ScriptGenerator canvas(int width, int height) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Canvas size must be positive");
+    }
+    this.width = width;
+    this.height = height;
+    return this;
+  }
+
+  /**
+   * Sets the range of the widths and heights of rectangles and the radii of ovals.
+   *
+   * @param min the smallest size
+   * @param max the largest size
+   * @return this generator
+   * @throws IllegalArgumentException if the smallest size is negative or above the largest
+   */
+  public ScriptGenerator sizes(int min, int max) {
+    if (min < 0 || min > max) {
+      throw new IllegalArgumentException("Invalid size range");
+    }
+    this.minSize = min;
+    this.maxSize = max;
+    return this;
+  }
+
+  /**
+   * Writes the script. The writer is not buffered further, nor closed.
+   *
+   * @param out the writer
+   * @throws IOException if the script cannot be written
+   */
+  public void write(Writer out) throws IOException {
+    Run run = new Run();
+    StringBuilder lines = new StringBuilder(BUFFER_SIZE + 256);
+    while (run.next(lines)) {
+      if (lines.length() >= BUFFER_SIZE) {
+        out.append(lines);
+        lines.setLength(0);
+      }
+    }
+    out.append(lines);
+  }
+
+  /**
+   * Returns a stream of the script's bytes, which are generated as they are read.
+   *
+   * @return the stream
+   */
+  public InputStream open() {
+    return new ScriptStream(new Run());
+  }
+
+  /**
+   * Writes a script to a file or to standard output. The options are {@code -shapes <count>},
+   * {@code -edits <count>}, {@code -snapshot <edits between snapshots>},
+   * {@code -mix <move>,<resize>,<color>,<remove>}, {@code -distribution uniform|clustered},
+   * {@code -canvas <width> <height>}, {@code -sizes <min> <max>}, {@code -seed <seed>} and
+   * {@code -out <file>}.
+   *
+   * @param args the command-line arguments
+   * @throws IOException              if the script cannot be written
+   * @throws IllegalArgumentException if an argument is invalid
+   */
+  public static void main(String[] args) throws IOException {
+    long seed = 5004;
+    String outputFile = null;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equalsIgnoreCase("-seed")) {
+        seed = Long.parseLong(args[++i]);
+      }
+    }
+    ScriptGenerator generator = new ScriptGenerator(seed);
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equalsIgnoreCase("-shapes")) {
+        generator.shapes(Integer.parseInt(args[++i]));
+      } else if (args[i].equalsIgnoreCase("-edits")) {
+        generator.edits(Integer.parseInt(args[++i]));
+      } else if (args[i].equalsIgnoreCase("-snapshot")) {
+        generator.snapshotEvery(Integer.parseInt(args[++i]));
+      } else if (args[i].equalsIgnoreCase("-mix")) {
+        String[] weights = args[++i].split(",");
+        if (weights.length != 4) {
+          throw new IllegalArgumentException("-mix takes four weights");
+        }
+        generator.editMix(Integer.parseInt(weights[0]), Integer.parseInt(weights[1]),
+            Integer.parseInt(weights[2]), Integer.parseInt(weights[3]));
+      } else if (args[i].equalsIgnoreCase("-distribution")) {
+        generator.distribution(Distribution.valueOf(args[++i].toUpperCase()));
+      } else if (args[i].equalsIgnoreCase("-canvas")) {
+        generator.canvas(Integer.parseInt(args[i + 1]), Integer.parseInt(args[i + 2]));
+        i += 2;
+      } else if (args[i].equalsIgnoreCase("-sizes")) {
+        generator.sizes(Integer.parseInt(args[i + 1]), Integer.parseInt(args[i + 2]));
+        i += 2;
+      } else if (args[i].equalsIgnoreCase("-out")) {
+        outputFile = args[++i];
+      } else if (args[i].equalsIgnoreCase("-seed")) {
+        i++;
+      }
+    }
+    OutputStream out = outputFile == null ? System.out : new FileOutputStream(outputFile);
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII),
+        BUFFER_SIZE);
+    try {
+      generator.write(writer);
+    } finally {
+      if (outputFile == null) {
+        writer.flush();
+      } else {
+        writer.close();
+      }
+    }
+  }
+
+  /**
+   * The Run class produces the lines of one script in order. Shapes are named {@code s<id>},
+   * and the ids of the shapes currently in the album are kept in an array so a random one can be
+   * picked for each edit.
+   */
+  private final class Run {
+    private final Random random = new Random(seed);
+    private final int[] centers = new int[CLUSTERS * 2];
+    private final int[] live = new int[shapes];
+    private int liveCount;
+    private int nextId;
+    private int editsDone;
+    private int cluster;
+    private boolean replacing;
+    private boolean finished;
+
+    private Run() {
+      for (int i = 0; i < CLUSTERS; i++) {
+        this.centers[i * 2] = this.random.nextInt(width);
+        this.centers[i * 2 + 1] = this.random.nextInt(height);
+      }
+    }
+
+    /**
+     * Appends the next line of the script, with its line break.
+     *
+     * @param out the builder to append to
+     * @return false if the script has ended and nothing was appended
+     */
+    private boolean next(StringBuilder out) {
+      if (this.finished) {
+        return false;
+      }
+      if (this.nextId < shapes) {
+        this.live[this.liveCount++] = this.nextId;
+        appendShape(out, this.nextId++);
+        if (this.nextId == shapes) {
+          out.append("snapshot Initial shapes\n");
+        }
+      } else if (this.replacing) {
+        this.replacing = false;
+        this.live[this.liveCount++] = this.nextId;
+        appendShape(out, this.nextId++);
+        endEdit(out);
+      } else if (this.editsDone < edits && this.liveCount > 0) {
+        appendEdit(out);
+      } else {
+        if (shapes == 0 || (this.editsDone > 0 && this.editsDone % snapshotEvery != 0)) {
+          out.append("snapshot Final\n");
+        }
+        this.finished = true;
+      }
+      return true;
+    }
+
+    /**
+     * Appends a random edit of a random shape.
+     *
+     * @param out the builder to append to
+     */
+    private void appendEdit(StringBuilder out) {
+      int index = this.random.nextInt(this.liveCount);
+      int id = this.live[index];
+      int pick = this.random.nextInt(moveWeight + resizeWeight + colorWeight + removeWeight);
+      if (pick < moveWeight) {
+        out.append("move s").append(id).append(' ').append(x()).append(' ').append(y())
+            .append('\n');
+      } else if (pick < moveWeight + resizeWeight) {
+        out.append("resize s").append(id).append(' ').append(size()).append(' ').append(size())
+            .append('\n');
+      } else if (pick < moveWeight + resizeWeight + colorWeight) {
+        out.append("color s").append(id);
+        appendColor(out);
+      } else {
+        out.append("remove s").append(id).append('\n');
+        this.live[index] = this.live[--this.liveCount];
+        this.replacing = true;
+        return;
+      }
+      endEdit(out);
+    }
+
+    /**
+     * Counts an edit as done and appends a snapshot if one is due.
+     *
+     * @param out the builder to append to
+     */
+    private void endEdit(StringBuilder out) {
+      if (++this.editsDone % snapshotEvery == 0) {
+        out.append("snapshot After edit ").append(this.editsDone).append('\n');
+      }
+    }
+
+    /**
+     * Appends a command creating a random shape.
+     *
+     * @param out the builder to append to
+     * @param id  the id of the shape
+     */
+    private void appendShape(StringBuilder out, int id) {
+      out.append("shape s").append(id)
+          .append(this.random.nextInt(4) == 0 ? " oval " : " rectangle ")
+          .append(x()).append(' ').append(y()).append(' ').append(size()).append(' ')
+          .append(size());
+      appendColor(out);
+    }
+
+    /**
+     * Appends a random color and a line break.
+     *
+     * @param out the builder to append to
+     */
+    private void appendColor(StringBuilder out) {
+      out.append(' ').append(this.random.nextInt(256)).append(' ')
+          .append(this.random.nextInt(256)).append(' ').append(this.random.nextInt(256))
+          .append('\n');
+    }
+
+    /**
+     * Returns a random size.
+     *
+     * @return a size within the configured range
+     */
+    private int size() {
+      return minSize + this.random.nextInt(maxSize - minSize + 1);
+    }
+
+    /**
+     * Returns a random x-coordinate following the distribution. The matching y-coordinate must
+     * be drawn next with {@link #y}.
+     *
+     * @return the x-coordinate
+     */
+    private int x() {
+      if (distribution == Distribution.UNIFORM) {
+        return this.random.nextInt(width);
+      }
+      this.cluster = this.random.nextInt(CLUSTERS);
+      return around(this.centers[this.cluster * 2], width);
+    }
+
+    /**
+     * Returns a random y-coordinate following the distribution, in the cluster of the last
+     * x-coordinate.
+     *
+     * @return the y-coordinate
+     */
+    private int y() {
+      if (distribution == Distribution.UNIFORM) {
+        return this.random.nextInt(height);
+      }
+      return around(this.centers[this.cluster * 2 + 1], height);
+    }
+
+    /**
+     * Returns a normally distributed coordinate around a center, within the canvas.
+     *
+     * @param center the center of the cluster
+     * @param extent the width or height of the canvas
+     * @return the coordinate
+     */
+    private int around(int center, int extent) {
+      double value = center + this.random.nextGaussian() * extent / (CLUSTERS * 2);
+      return (int) Math.max(0, Math.min(extent - 1, Math.round(value)));
+    }
+  }
+
+  /**
+   * The ScriptStream class reads the lines of a run as ASCII bytes, generating them a block at a
+   * time.
+   */
+  private static final class ScriptStream extends InputStream {
+    private final Run run;
+    private final StringBuilder lines = new StringBuilder(BUFFER_SIZE + 256);
+    private byte[] buffer = new byte[BUFFER_SIZE + 256];
+    private int pos;
+    private int limit;
+    private boolean ended;
+
+    private ScriptStream(Run run) {
+      this.run = run;
+    }
+
+    @Override
+    public int read() {
+      return fill() ? this.buffer[this.pos++] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      int n = Math.min(len, this.limit - this.pos);
+      System.arraycopy(this.buffer, this.pos, b, off, n);
+      this.pos += n;
+      return n;
+    }
+
+    /**
+     * Generates the next block of lines if every byte generated so far has been read.
+     *
+     * @return false if the script has ended and every byte has been read
+     */
+    private boolean fill() {
+      if (this.pos < this.limit) {
+        return true;
+      }
+      if (this.ended) {
+        return false;
+      }
+      this.lines.setLength(0);
+      while (this.lines.length() < BUFFER_SIZE) {
+        if (!this.run.next(this.lines)) {
+          this.ended = true;
+          break;
+        }
+      }
+      int length = this.lines.length();
+      if (length > this.buffer.length) {
+        this.buffer = new byte[length];
+      }
+      for (int i = 0; i < length; i++) {
+        this.buffer[i] = (byte) this.lines.charAt(i);
+      }
+      this.pos = 0;
+      this.limit = length;
+      return length > 0;
+    }
+  }
+}
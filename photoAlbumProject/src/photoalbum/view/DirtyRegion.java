@@ -0,0 +1,172 @@
+package photoalbum.view;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.List;
+
+import photoalbum.model.IShape;
+import photoalbum.model.ShapeType;
+import photoalbum.model.Snapshot;
+import photoalbum.model.SnapshotIndex;
+
+/**
+ * The DirtyRegion class describes the part of the canvas that differs between two snapshots: the
+ * pixel bounds of every shape that was added, removed or changed between them. An image of one
+ * snapshot can be turned into an image of the other by redrawing only this region, and a window
+ * showing one can switch to the other by repainting only this region.
+ */
+final class DirtyRegion {
+  private static final int MAX_RECTANGLES = 64;
+  private static final int MAX_COVERAGE_PERCENT = 50;
+  private static final long LIMIT = 1 << 29;
+  // Java2D treats the edge of an image like a clip, so scratch images reach a little further.
+  private static final int SCRATCH_MARGIN = 4;
+
+  private final List<Rectangle> rectangles;
+  private final Rectangle bounds;
+
+  /**
+   * Constructs a region.
+   *
+   * @param rectangles the rectangles making up the region
+   * @param bounds     the bounds of all the rectangles
+   */
+  private DirtyRegion(List<Rectangle> rectangles, Rectangle bounds) {
+    this.rectangles = rectangles;
+    this.bounds = bounds;
+  }
+
+  /**
+   * Computes the region of a canvas that differs between two snapshots.
+   *
+   * @param from   the snapshot drawn already
+   * @param to     the snapshot to draw
+   * @param width  the width of the canvas
+   * @param height the height of the canvas
+   * @return the region, or null if it covers so much of the canvas that drawing the whole
+   *         snapshot is cheaper
+   */
+  static DirtyRegion between(Snapshot from, Snapshot to, int width, int height) {
+    Rectangle canvas = new Rectangle(0, 0, width, height);
+    List<Rectangle> rectangles = new ArrayList<>();
+    Rectangle bounds = new Rectangle();
+    long area = 0;
+    for (IShape shape : to.getChangedShapes(from)) {
+      Rectangle rectangle = boundsOf(shape).intersection(canvas);
+      if (!rectangle.isEmpty()) {
+        rectangles.add(rectangle);
+        bounds = bounds.isEmpty() ? rectangle : bounds.union(rectangle);
+        area += (long) rectangle.width * rectangle.height;
+      }
+    }
+    if (area * 100 > (long) width * height * MAX_COVERAGE_PERCENT) {
+      return null;
+    }
+    if (rectangles.size() > MAX_RECTANGLES) {
+      rectangles.clear();
+      rectangles.add(bounds);
+    }
+    return new DirtyRegion(rectangles, bounds);
+  }
+
+  /**
+   * Returns the bounds of the region.
+   *
+   * @return the smallest rectangle holding the region, empty if nothing changed
+   */
+  Rectangle getBounds() {
+    return new Rectangle(this.bounds);
+  }
+
+  /**
+   * Redraws the region of an image holding the other snapshot so that it holds the given one.
+   * The drawing stops early if the thread is interrupted.
+   *
+   * <p>Each rectangle of the region is drawn on a scratch image a few pixels larger than itself,
+   * with only the shapes the index finds near it, and only the rectangle is copied back, so the
+   * cost depends on the size of the change rather than on the size of the snapshot or the
+   * canvas. The shapes are drawn whole: drawing them through a clip instead would save the
+   * scratch image, but Java2D rasterizes the edges of an oval differently when a clip cuts
+   * through it. Java2D traces an oval's outline in single precision, so on the shifted scratch
+   * image a pixel on the edge of an oval may now and then come out differently from a full
+   * redraw, as in a tiled image; it is put right the next time the snapshot is drawn whole.</p>
+   *
+   * @param image            the image to draw on
+   * @param snapshot         the snapshot to draw
+   * @param index            the index to find the snapshot's shapes with
+   * @param directRectangles true to fill rectangles straight into the image's pixels
+   * @return true if the whole region was drawn, false if the thread was interrupted
+   */
+  boolean redraw(BufferedImage image, Snapshot snapshot, SnapshotIndex index,
+                 boolean directRectangles) {
+    WritableRaster target = image.getRaster();
+    for (Rectangle r : this.rectangles) {
+      if (Thread.currentThread().isInterrupted()) {
+        return false;
+      }
+      // The pixel bounds of a shape reach up to two pixels past the bounds the index uses.
+      List<IShape> shapes = index.query(snapshot, r.x - 2, r.y - 2, r.width + 4, r.height + 4);
+      BufferedImage scratch = new BufferedImage(r.width + 2 * SCRATCH_MARGIN,
+          r.height + 2 * SCRATCH_MARGIN, image.getType());
+      try (ShapeRasterizer rasterizer = new ShapeRasterizer(scratch, directRectangles,
+          r.x - SCRATCH_MARGIN, r.y - SCRATCH_MARGIN)) {
+        rasterizer.clear();
+        int count = 0;
+        for (IShape shape : shapes) {
+          if ((++count & 1023) == 0 && Thread.currentThread().isInterrupted()) {
+            return false;
+          }
+          if (boundsOf(shape).intersects(r)) {
+            rasterizer.fill(shape);
+          }
+        }
+      }
+      target.setDataElements(r.x, r.y, scratch.getRaster().createChild(SCRATCH_MARGIN,
+          SCRATCH_MARGIN, r.width, r.height, 0, 0, null));
+    }
+    return true;
+  }
+
+  /**
+   * Returns the pixels a shape may cover when it is drawn, with a pixel of margin for rounding.
+   *
+   * @param shape the shape
+   * @return the pixel bounds of the shape, empty if it draws nothing
+   */
+  static Rectangle boundsOf(IShape shape) {
+    int x;
+    int y;
+    int width;
+    int height;
+    if (shape.getType() == ShapeType.OVAL) {
+      x = (int) (shape.getX() - shape.getWidth());
+      y = (int) (shape.getY() - shape.getHeight());
+      width = (int) (shape.getWidth() * 2);
+      height = (int) (shape.getHeight() * 2);
+    } else {
+      x = (int) shape.getX();
+      y = (int) shape.getY();
+      width = (int) shape.getWidth();
+      height = (int) shape.getHeight();
+    }
+    if (width <= 0 || height <= 0) {
+      return new Rectangle();
+    }
+    int left = clamp(x - 1L);
+    int top = clamp(y - 1L);
+    return new Rectangle(left, top, clamp((long) x + width + 1) - left,
+        clamp((long) y + height + 1) - top);
+  }
+
+  /**
+   * Limits a coordinate so that a rectangle built from such coordinates cannot overflow.
+   *
+   * @param value the coordinate
+   * @return the coordinate, limited to plus or minus 2^29
+   */
+  private static int clamp(long value) {
+    return (int) Math.max(-LIMIT, Math.min(LIMIT, value));
+  }
+}
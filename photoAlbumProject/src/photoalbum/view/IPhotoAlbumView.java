@@ -3,9 +3,8 @@ package photoalbum.view;
 import java.io.IOException;
 import java.util.List;
 
-import photoalbum.model.Rectangle;
+import photoalbum.model.IShape;
 import photoalbum.model.Snapshot;
-import photoalbum.model.Oval;
 
 /**
  * The IPhotoAlbumView interface defines the methods for rendering snapshots
@@ -36,13 +35,13 @@ public interface IPhotoAlbumView {
    *
    * @param rec the rectangle to render
    */
-  void renderRectangle(Rectangle rec);
+  void renderRectangle(IShape rec);
 
   /**
-   * Renders an oval shape in the view.
+   * Renders an oval shape in the view. The oval's width and height are its radii.
    *
    * @param oval the oval to render
    */
-  void renderOval(Oval oval);
+  void renderOval(IShape oval);
 } 
 
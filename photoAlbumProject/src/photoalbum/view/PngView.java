@@ -0,0 +1,365 @@
+package photoalbum.view;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+
+import photoalbum.model.IShape;
+import photoalbum.model.Snapshot;
+
+/**
+ * The PngView class implements the StreamingView interface by writing every snapshot to a
+ * numbered PNG file, drawn exactly as the graphical view draws it. It needs no display, so it
+ * can run on a headless server.
+ *
+ * <p>The files are named after the output file name given to {@link #render}: for
+ * {@code out/album.png} they are {@code out/album-0001.png}, {@code out/album-0002.png} and so
+ * on, with more digits if there are more than 9999 snapshots. Each snapshot is drawn and encoded
+ * on a pool of worker threads; at most two snapshots per thread are in flight at once, and each
+ * thread reuses one image, so memory use does not grow with the number of snapshots. A canvas
+ * too large for one image is drawn by a {@link TiledRenderer} instead, one snapshot at a time
+ * with its tiles spread over the threads, and only one band of tiles is held while it is
+ * encoded. When the album has been written, the number of frames per second is reported.</p>
+ *
+ * <p>The snapshots can also be handed over one at a time as they are taken, through the
+ * {@link SnapshotSink} returned by {@link #open}. As their number is not known in advance, the
+ * files are then numbered with four digits until there are more than 9999.</p>
+ */
+public class PngView implements StreamingView {
+  private static final String SUFFIX = ".png";
+
+  private final int threads;
+  private final boolean directRectangles;
+  private final PrintStream report;
+  private PngSink sink;
+  private BufferedImage image;
+
+  /**
+   * Constructs a PNG view that draws on every available core through Java2D and reports to
+   * standard output.
+   */
+  public PngView() {
+    this(Runtime.getRuntime().availableProcessors(), false, System.out);
+  }
+
+  /**
+   * Constructs a PNG view.
+   *
+   * @param threads          the number of threads drawing and encoding snapshots
+   * @param directRectangles true to fill rectangles straight into the pixels of the images
+   * @param report           the stream the frame rate is reported to, or null for none
+   * @throws IllegalArgumentException if the number of threads is not positive
+   */
+  public PngView(int threads, boolean directRectangles, PrintStream report) {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Number of threads must be positive");
+    }
+    this.threads = threads;
+    this.directRectangles = directRectangles;
+    this.report = report;
+  }
+
+  /**
+   * Writes every snapshot to its own PNG file.
+   *
+   * @param snapshots      the list of snapshots to render
+   * @param sizeX          the width of the images
+   * @param sizeY          the height of the images
+   * @param outputFileName the name the files are numbered after
+   * @throws IOException if a file cannot be written
+   */
+  @Override
+  public void render(List<Snapshot> snapshots, int sizeX, int sizeY, String outputFileName)
+      throws IOException {
+    this.image = null;
+    try (PngSink sink = new PngSink(outputFileName, sizeX, sizeY,
+        Math.max(4, Integer.toString(snapshots.size()).length()),
+        snapshots.size() > 1 ? this.threads : 1)) {
+      this.sink = sink;
+      for (Snapshot snapshot : snapshots) {
+        sink.accept(snapshot);
+      }
+    } finally {
+      this.sink = null;
+    }
+  }
+
+  /**
+   * Starts writing numbered PNG files for snapshots handed over one at a time. Each is drawn and
+   * encoded as it comes, on the view's threads.
+   *
+   * @param sizeX          the width of the images
+   * @param sizeY          the height of the images
+   * @param outputFileName the name the files are numbered after
+   * @return the sink the snapshots are handed to
+   */
+  @Override
+  public SnapshotSink open(int sizeX, int sizeY, String outputFileName) {
+    return new PngSink(outputFileName, sizeX, sizeY, 4, this.threads);
+  }
+
+  /**
+   * Draws a snapshot and writes it to the next numbered file, on the calling thread. It may only
+   * be called while {@link #render} is writing the files.
+   *
+   * @param snapshot the snapshot to render
+   * @throws IllegalStateException if no files are being written
+   * @throws UncheckedIOException  if the file cannot be written
+   */
+  @Override
+  public void renderSnapshot(Snapshot snapshot) {
+    if (this.sink == null) {
+      throw new IllegalStateException("Snapshots can only be rendered to files");
+    }
+    if (this.image == null) {
+      this.image = new BufferedImage(this.sink.sizeX, this.sink.sizeY,
+          BufferedImage.TYPE_INT_RGB);
+    }
+    SwingPhotoAlbum.draw(this.image, snapshot, this.directRectangles);
+    try {
+      write(this.image, this.sink.nextFileName());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Draws a rectangle onto the image of the snapshot last rendered by {@link #renderSnapshot}.
+   *
+   * @param rec the rectangle to render
+   * @throws IllegalStateException if no snapshot has been rendered yet
+   */
+  @Override
+  public void renderRectangle(IShape rec) {
+    try (ShapeRasterizer rasterizer = new ShapeRasterizer(currentImage(), false)) {
+      rasterizer.fill(rec);
+    }
+  }
+
+  /**
+   * Draws an oval onto the image of the snapshot last rendered by {@link #renderSnapshot}.
+   *
+   * @param oval the oval to render
+   * @throws IllegalStateException if no snapshot has been rendered yet
+   */
+  @Override
+  public void renderOval(IShape oval) {
+    try (ShapeRasterizer rasterizer = new ShapeRasterizer(currentImage(), false)) {
+      rasterizer.fill(oval);
+    }
+  }
+
+  /**
+   * Waits for a snapshot to be written.
+   *
+   * @param future the pending snapshot
+   * @throws IOException if the thread is interrupted or the snapshot could not be written
+   */
+  private static void await(Future<?> future) throws IOException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while rendering", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Encodes an image as a PNG file.
+   *
+   * @param image the image
+   * @param file  the name of the file
+   * @throws IOException if the file cannot be written
+   */
+  private static void write(RenderedImage image, String file) throws IOException {
+    try {
+      if (!ImageIO.write(image, "png", new File(file))) {
+        throw new IOException("No PNG encoder is available");
+      }
+    } catch (IOException e) {
+      throw new IOException("Cannot write to:" + file, e);
+    }
+  }
+
+  /**
+   * Returns the image of the snapshot last rendered by {@link #renderSnapshot}.
+   *
+   * @return the image
+   * @throws IllegalStateException if no snapshot has been rendered yet
+   */
+  private BufferedImage currentImage() {
+    if (this.image == null) {
+      throw new IllegalStateException("No snapshot has been rendered");
+    }
+    return this.image;
+  }
+
+  /**
+   * The PngSink class writes the numbered files of an album as its snapshots are handed over.
+   * With more than one thread, each snapshot is drawn and encoded on a pool of threads started
+   * with the first snapshot, at most two snapshots per thread are in flight at once, and each
+   * thread reuses one image. With one thread the sink draws on its caller's thread, which may
+   * be a long-lived pool thread of a batch, so it keeps the image itself rather than leaving it
+   * attached to that thread. A canvas too large for one image is drawn in tiles instead, one
+   * snapshot at a time with its tiles spread over the threads. The files written before a sink
+   * is aborted are kept, as each of them holds a whole snapshot, but no frame rate is reported.
+   */
+  private final class PngSink implements SnapshotSink {
+    private final String prefix;
+    private final int sizeX;
+    private final int sizeY;
+    private final int digits;
+    private final int threads;
+    private final long start = System.nanoTime();
+    private final Deque<Future<?>> pending = new ArrayDeque<>();
+    private int frame;
+    private boolean failed;
+    private ExecutorService pool;
+    private BufferedImage image;
+    private ThreadLocal<BufferedImage> images;
+    private TiledRenderer renderer;
+
+    /**
+     * Constructs a sink that has written no files yet.
+     *
+     * @param outputFileName the name the files are numbered after
+     * @param sizeX          the width of the images
+     * @param sizeY          the height of the images
+     * @param digits         the least number of digits in a file number
+     * @param threads        the number of threads drawing and encoding snapshots
+     */
+    private PngSink(String outputFileName, int sizeX, int sizeY, int digits, int threads) {
+      this.prefix = outputFileName.toLowerCase().endsWith(SUFFIX)
+          ? outputFileName.substring(0, outputFileName.length() - SUFFIX.length())
+          : outputFileName;
+      this.sizeX = sizeX;
+      this.sizeY = sizeY;
+      this.digits = digits;
+      this.threads = threads;
+    }
+
+    @Override
+    public void abort() {
+      this.failed = true;
+    }
+
+    @Override
+    public void accept(Snapshot snapshot) throws IOException {
+      boolean written = false;
+      try {
+        write(snapshot, nextFileName());
+        written = true;
+      } finally {
+        this.failed |= !written;
+      }
+    }
+
+    /**
+     * Draws and writes a snapshot, or queues it on the pool.
+     *
+     * @param snapshot the snapshot
+     * @param file     the name of its file
+     * @throws IOException if a file cannot be written
+     */
+    private void write(Snapshot snapshot, String file) throws IOException {
+      if (TiledRenderer.isLarge(this.sizeX, this.sizeY)) {
+        if (this.renderer == null) {
+          this.renderer = new TiledRenderer(TiledRenderer.DEFAULT_TILE_SIZE,
+              PngView.this.threads, directRectangles);
+        }
+        PngView.write(new TiledImage(this.renderer, this.renderer.bin(snapshot, this.sizeX,
+            this.sizeY)), file);
+        return;
+      }
+      if (this.threads == 1) {
+        if (this.image == null) {
+          this.image = new BufferedImage(this.sizeX, this.sizeY, BufferedImage.TYPE_INT_RGB);
+        }
+        SwingPhotoAlbum.draw(this.image, snapshot, directRectangles);
+        PngView.write(this.image, file);
+        return;
+      }
+      if (this.images == null) {
+        this.images = ThreadLocal.withInitial(
+            () -> new BufferedImage(this.sizeX, this.sizeY, BufferedImage.TYPE_INT_RGB));
+      }
+      if (this.pool == null) {
+        this.pool = Executors.newFixedThreadPool(this.threads, runnable -> {
+          Thread thread = new Thread(runnable, "png-renderer");
+          thread.setDaemon(true);
+          return thread;
+        });
+      }
+      if (this.pending.size() >= this.threads * 2) {
+        await(this.pending.poll());
+      }
+      this.pending.add(this.pool.submit(() -> {
+        BufferedImage image = this.images.get();
+        SwingPhotoAlbum.draw(image, snapshot, directRectangles);
+        PngView.write(image, file);
+        return null;
+      }));
+    }
+
+    /**
+     * Waits for the files still being written and reports the frame rate, unless a file could
+     * not be written.
+     *
+     * @throws IOException if a file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+      try {
+        while (!this.pending.isEmpty()) {
+          await(this.pending.poll());
+        }
+      } finally {
+        if (this.pool != null) {
+          this.pool.shutdownNow();
+        }
+        if (this.renderer != null) {
+          this.renderer.close();
+        }
+        this.image = null;
+      }
+      if (report != null && !this.failed) {
+        double seconds = Math.max(1e-9, (System.nanoTime() - this.start) / 1e9);
+        report.printf("Wrote %d frames in %.2f s (%.2f frames per second)%n", this.frame,
+            seconds, this.frame / seconds);
+      }
+    }
+
+    /**
+     * Returns the name of the next numbered file and counts it as written.
+     *
+     * @return the file name
+     */
+    private String nextFileName() {
+      String number = Integer.toString(++this.frame);
+      StringBuilder name = new StringBuilder(this.prefix).append('-');
+      for (int i = number.length(); i < this.digits; i++) {
+        name.append('0');
+      }
+      return name.append(number).append(SUFFIX).toString();
+    }
+  }
+}
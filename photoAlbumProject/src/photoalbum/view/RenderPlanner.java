@@ -0,0 +1,259 @@
+package photoalbum.view;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import photoalbum.model.IShape;
+import photoalbum.model.ShapeType;
+
+/**
+ * The RenderPlanner class decides which shapes of a snapshot actually need to be drawn. Every
+ * shape is opaque, so a shape whose visible pixels are all covered by rectangles drawn after it
+ * cannot be seen, and neither can a shape lying entirely off the canvas. The views draw only the
+ * shapes the planner keeps, which gives the same picture with fewer primitives.
+ *
+ * <p>The shapes are visited from the top of the drawing order down while a coverage bitmap
+ * records the canvas pixels already hidden by the rectangles seen so far. The test is
+ * conservative for both views: a rectangle only counts as covering the pixels it fills completely
+ * both when Java2D truncates its coordinates and when a browser anti-aliases its edges, and a
+ * shape is only dropped if every pixel it could touch, plus a margin of two pixels, is covered.
+ * On very large canvases the bitmap tracks blocks of pixels instead of single pixels, which
+ * only makes the test more cautious.</p>
+ */
+final class RenderPlanner {
+  // The coverage bitmap holds at most this many cells.
+  private static final long MAX_CELLS = 1L << 22;
+  private static final int MARGIN = 2;
+  private static final double LIMIT = 1 << 30;
+
+  private final int width;
+  private final int height;
+  private final int shift;
+  private final int columns;
+  private final int rows;
+  private final int wordsPerRow;
+  private final long[] covered;
+  private long coveredCells;
+
+  /**
+   * Constructs a planner for a canvas with nothing covered yet.
+   *
+   * @param width  the width of the canvas
+   * @param height the height of the canvas
+   */
+  private RenderPlanner(int width, int height) {
+    this.width = Math.max(0, width);
+    this.height = Math.max(0, height);
+    int shift = 0;
+    while ((long) cells(this.width, shift) * cells(this.height, shift) > MAX_CELLS) {
+      shift++;
+    }
+    this.shift = shift;
+    this.columns = cells(this.width, shift);
+    this.rows = cells(this.height, shift);
+    this.wordsPerRow = (this.columns + 63) >>> 6;
+    this.covered = new long[this.wordsPerRow * this.rows];
+  }
+
+  /**
+   * Returns the shapes of a snapshot that can be seen on a canvas, in drawing order.
+   *
+   * @param shapes the shapes, in drawing order
+   * @param width  the width of the canvas
+   * @param height the height of the canvas
+   * @return the shapes that are not hidden by later rectangles or lying off the canvas
+   */
+  static List<IShape> visibleShapes(List<IShape> shapes, int width, int height) {
+    IShape[] all = shapes.toArray(new IShape[0]);
+    boolean[] visible = new boolean[all.length];
+    RenderPlanner planner = new RenderPlanner(width, height);
+    int count = 0;
+    for (int i = all.length - 1; i >= 0 && !planner.isFull(); i--) {
+      if (!planner.isHidden(all[i])) {
+        visible[i] = true;
+        count++;
+        planner.cover(all[i]);
+      }
+    }
+    List<IShape> result = new ArrayList<>(count);
+    for (int i = 0; i < all.length; i++) {
+      if (visible[i]) {
+        result.add(all[i]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns true once every pixel of the canvas is covered, after which nothing further down
+   * the drawing order can be seen.
+   *
+   * @return true if the whole canvas is covered
+   */
+  private boolean isFull() {
+    return this.coveredCells == (long) this.columns * this.rows;
+  }
+
+  /**
+   * Returns true if no pixel a shape could touch is visible, because it lies off the canvas or
+   * under rectangles already covered.
+   *
+   * @param shape the shape
+   * @return true if the shape cannot be seen
+   */
+  private boolean isHidden(IShape shape) {
+    double x = shape.getX();
+    double y = shape.getY();
+    double w = shape.getWidth();
+    double h = shape.getHeight();
+    if (!isUsable(x) || !isUsable(y) || !isUsable(w) || !isUsable(h)) {
+      return false;
+    }
+    if (w <= 0 || h <= 0) {
+      // Both views draw nothing for a shape without area.
+      return true;
+    }
+    double left = shape.getType() == ShapeType.OVAL ? x - w : x;
+    double top = shape.getType() == ShapeType.OVAL ? y - h : y;
+    int fromX = (int) Math.max(0, Math.floor(left) - MARGIN);
+    int fromY = (int) Math.max(0, Math.floor(top) - MARGIN);
+    int toX = (int) Math.min(this.width, Math.ceil(x + w) + MARGIN);
+    int toY = (int) Math.min(this.height, Math.ceil(y + h) + MARGIN);
+    if (fromX >= toX || fromY >= toY) {
+      return true;
+    }
+    // Any cell the shape's pixels reach must be covered.
+    int lastColumn = (toX - 1) >> this.shift;
+    int lastRow = (toY - 1) >> this.shift;
+    for (int row = fromY >> this.shift; row <= lastRow; row++) {
+      if (!isRangeSet(row, fromX >> this.shift, lastColumn + 1)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Records the pixels a rectangle is certain to fill. Ovals cover nothing.
+   *
+   * @param shape the shape drawn on top of the shapes still to be visited
+   */
+  private void cover(IShape shape) {
+    if (shape.getType() != ShapeType.RECTANGLE) {
+      return;
+    }
+    double x = shape.getX();
+    double y = shape.getY();
+    double w = shape.getWidth();
+    double h = shape.getHeight();
+    if (!isUsable(x) || !isUsable(y) || !isUsable(w) || !isUsable(h)) {
+      return;
+    }
+    // Java2D fills from the truncated corner for the truncated size; a browser fully covers
+    // only the pixels lying inside the outline as written.
+    long left = Math.max(0, Math.max((long) x, (long) Math.ceil(x)));
+    long top = Math.max(0, Math.max((long) y, (long) Math.ceil(y)));
+    long right = Math.min(this.width, Math.min((long) x + (long) w, innerEdge(x, w)));
+    long bottom = Math.min(this.height, Math.min((long) y + (long) h, innerEdge(y, h)));
+    // Only cells lying entirely inside the rectangle count as covered.
+    int cell = 1 << this.shift;
+    int fromColumn = (int) ((left + cell - 1) >> this.shift);
+    int fromRow = (int) ((top + cell - 1) >> this.shift);
+    int toColumn = (int) (right == this.width ? this.columns : right >> this.shift);
+    int toRow = (int) (bottom == this.height ? this.rows : bottom >> this.shift);
+    for (int row = fromRow; row < toRow; row++) {
+      setRange(row, fromColumn, toColumn);
+    }
+  }
+
+  /**
+   * Returns the pixel edge a browser is certain to fill up to from a corner and a size. The web
+   * view rounds both to its precision, which can pull the far edge back by up to a pixel unless
+   * they are whole numbers and written exactly.
+   *
+   * @param corner the left or top edge
+   * @param size   the width or height
+   * @return the edge after the last pixel certain to be filled
+   */
+  private static long innerEdge(double corner, double size) {
+    if (corner == Math.rint(corner) && size == Math.rint(size)) {
+      return (long) (corner + size);
+    }
+    return (long) Math.floor(corner + size - 1);
+  }
+
+  /**
+   * Returns true if every cell of a row in a range is covered.
+   *
+   * @param row  the row
+   * @param from the first column
+   * @param to   the column after the last one
+   * @return true if the range is covered
+   */
+  private boolean isRangeSet(int row, int from, int to) {
+    int base = row * this.wordsPerRow;
+    for (int column = from; column < to; ) {
+      int word = column >>> 6;
+      int end = Math.min(to, (word + 1) << 6);
+      long mask = bits(column & 63, end - (word << 6));
+      if ((this.covered[base + word] & mask) != mask) {
+        return false;
+      }
+      column = end;
+    }
+    return true;
+  }
+
+  /**
+   * Marks the cells of a row in a range as covered.
+   *
+   * @param row  the row
+   * @param from the first column
+   * @param to   the column after the last one
+   */
+  private void setRange(int row, int from, int to) {
+    int base = row * this.wordsPerRow;
+    for (int column = from; column < to; ) {
+      int word = column >>> 6;
+      int end = Math.min(to, (word + 1) << 6);
+      long mask = bits(column & 63, end - (word << 6));
+      long old = this.covered[base + word];
+      this.coveredCells += Long.bitCount(mask & ~old);
+      this.covered[base + word] = old | mask;
+      column = end;
+    }
+  }
+
+  /**
+   * Returns a mask of consecutive bits of a word.
+   *
+   * @param from the first bit
+   * @param to   the bit after the last one, at most 64
+   * @return the mask
+   */
+  private static long bits(int from, int to) {
+    long upTo = to == 64 ? -1L : (1L << to) - 1;
+    return upTo & (-1L << from);
+  }
+
+  /**
+   * Returns true if a coordinate is small enough for the pixel arithmetic of both views.
+   *
+   * @param value the coordinate or size
+   * @return true if the value is finite and within about a billion pixels of the origin
+   */
+  private static boolean isUsable(double value) {
+    return value > -LIMIT && value < LIMIT;
+  }
+
+  /**
+   * Returns the number of cells of a given size needed to cover a length.
+   *
+   * @param length the length in pixels
+   * @param shift  the cell size as a power of two
+   * @return the number of cells
+   */
+  private static int cells(int length, int shift) {
+    return (int) ((length + (1L << shift) - 1) >> shift);
+  }
+}
@@ -0,0 +1,218 @@
+package photoalbum.view;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import photoalbum.model.IShape;
+import photoalbum.model.ShapeType;
+
+/**
+ * The ShapeRasterizer class draws batches of shapes onto one image. It holds a single
+ * {@link Graphics2D} for the whole frame, sets the color only when it changes, and takes AWT
+ * colors from a table shared by all rasterizers and keyed by packed RGB, so drawing a shape
+ * allocates nothing.
+ *
+ * <p>Optionally, rectangles are filled by writing their pixels straight into the image's
+ * {@link DataBufferInt}, one {@link Arrays#fill} per row, instead of going through Java2D. This
+ * gives the same pixels as {@code fillRect}. It only applies to images with one packed int per
+ * pixel and no alpha; on any other image the rasterizer draws everything with Java2D. Touching
+ * the data buffer makes Java2D stop accelerating the image, which does not matter for the
+ * off-screen images the views draw into.</p>
+ *
+ * <p>A rasterizer is used by one thread at a time and must be closed when the frame is done.</p>
+ */
+final class ShapeRasterizer implements AutoCloseable {
+  private static final int COLOR_CACHE_SIZE = 4096;
+  private static final AtomicReferenceArray<Color> COLORS =
+      new AtomicReferenceArray<>(COLOR_CACHE_SIZE);
+
+  private final BufferedImage image;
+  private final Graphics2D g2d;
+  private final int[] pixels;
+  private final int stride;
+  private final int originX;
+  private final int originY;
+  private int rgb = -1;
+
+  /**
+   * Starts drawing a frame onto an image.
+   *
+   * @param image            the image to draw on
+   * @param directRectangles true to fill rectangles straight into the image's pixels when the
+   *                         image allows it
+   */
+  ShapeRasterizer(BufferedImage image, boolean directRectangles) {
+    this(image, directRectangles, 0, 0);
+  }
+
+  /**
+   * Starts drawing a frame onto an image that holds a part of the canvas, such as a tile. Shapes
+   * and areas are given in canvas coordinates and land on the image shifted by its origin.
+   *
+   * @param image            the image to draw on
+   * @param directRectangles true to fill rectangles straight into the image's pixels when the
+   *                         image allows it
+   * @param originX          the canvas x-coordinate of the image's left edge
+   * @param originY          the canvas y-coordinate of the image's top edge
+   */
+  ShapeRasterizer(BufferedImage image, boolean directRectangles, int originX, int originY) {
+    this.image = image;
+    this.originX = originX;
+    this.originY = originY;
+    this.g2d = image.createGraphics();
+    if (originX != 0 || originY != 0) {
+      this.g2d.translate(-originX, -originY);
+    }
+    WritableRaster raster = image.getRaster();
+    if (directRectangles && image.getType() == BufferedImage.TYPE_INT_RGB
+        && raster.getDataBuffer() instanceof DataBufferInt
+        && raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+      this.pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+      this.stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+    } else {
+      this.pixels = null;
+      this.stride = 0;
+    }
+  }
+
+  /**
+   * Fills the whole image with the background color.
+   */
+  void clear() {
+    clear(new Rectangle(this.originX, this.originY, this.image.getWidth(),
+        this.image.getHeight()));
+  }
+
+  /**
+   * Fills part of the image with the background color.
+   *
+   * @param area the part to fill, in canvas coordinates
+   */
+  void clear(Rectangle area) {
+    setColor(Color.WHITE.getRGB() & 0xffffff);
+    fillRect(area.x, area.y, area.width, area.height);
+  }
+
+  /**
+   * Draws a shape in its color.
+   *
+   * @param shape the shape
+   */
+  void fill(IShape shape) {
+    setColor(rgbOf(shape));
+    if (shape.getType() == ShapeType.RECTANGLE) {
+      fillRect((int) shape.getX(), (int) shape.getY(), (int) shape.getWidth(),
+          (int) shape.getHeight());
+    } else if (shape.getType() == ShapeType.OVAL) {
+      this.g2d.fillOval((int) (shape.getX() - shape.getWidth()),
+          (int) (shape.getY() - shape.getHeight()),
+          (int) (shape.getWidth() * 2),
+          (int) (shape.getHeight() * 2));
+    }
+  }
+
+  /**
+   * Draws shapes in order. The drawing stops early if the thread is interrupted.
+   *
+   * @param shapes the shapes
+   * @return true if every shape was drawn, false if the thread was interrupted
+   */
+  boolean fillAll(Iterable<? extends IShape> shapes) {
+    int count = 0;
+    for (IShape shape : shapes) {
+      if ((++count & 1023) == 0 && Thread.currentThread().isInterrupted()) {
+        return false;
+      }
+      fill(shape);
+    }
+    return true;
+  }
+
+  /**
+   * Ends the frame.
+   */
+  @Override
+  public void close() {
+    this.g2d.dispose();
+  }
+
+  /**
+   * Returns the packed RGB value a shape is drawn in. Components outside the range of a color
+   * are clamped to it.
+   *
+   * @param shape the shape
+   * @return the color as 0xRRGGBB
+   */
+  static int rgbOf(IShape shape) {
+    return shape.getColor().getRgb();
+  }
+
+  /**
+   * Returns the AWT color for a packed RGB value, creating it only the first time it is used.
+   * The table is shared by the rendering threads. Its entries are read and written through an
+   * {@link AtomicReferenceArray}, which publishes each Color safely: java.awt.Color has fields
+   * that are not final, so a plain array could hand another thread a Color it sees only half
+   * built.
+   *
+   * @param rgb the color as 0xRRGGBB
+   * @return the AWT color
+   */
+  static Color awtColor(int rgb) {
+    int index = (rgb ^ rgb >>> 12) & (COLOR_CACHE_SIZE - 1);
+    Color color = COLORS.get(index);
+    if (color == null || (color.getRGB() & 0xffffff) != rgb) {
+      color = new Color(rgb);
+      COLORS.set(index, color);
+    }
+    return color;
+  }
+
+  /**
+   * Makes a color current, unless it is current already.
+   *
+   * @param rgb the color as 0xRRGGBB
+   */
+  private void setColor(int rgb) {
+    if (rgb != this.rgb) {
+      this.rgb = rgb;
+      this.g2d.setColor(awtColor(rgb));
+    }
+  }
+
+  /**
+   * Fills an axis-aligned rectangle in the current color, like {@link Graphics2D#fillRect}.
+   *
+   * @param x      the left edge, in canvas coordinates
+   * @param y      the top edge, in canvas coordinates
+   * @param width  the width
+   * @param height the height
+   */
+  private void fillRect(int x, int y, int width, int height) {
+    if (this.pixels == null) {
+      this.g2d.fillRect(x, y, width, height);
+      return;
+    }
+    long imageX = (long) x - this.originX;
+    long imageY = (long) y - this.originY;
+    int left = (int) Math.max(0, imageX);
+    int top = (int) Math.max(0, imageY);
+    int right = (int) Math.min(this.image.getWidth(), imageX + width);
+    int bottom = (int) Math.min(this.image.getHeight(), imageY + height);
+    if (left >= right || top >= bottom) {
+      return;
+    }
+    // Java2D stores opaque pixels with the unused alpha byte set, so do the same.
+    int pixel = 0xff000000 | this.rgb;
+    for (int row = top; row < bottom; row++) {
+      int start = row * this.stride;
+      Arrays.fill(this.pixels, start + left, start + right, pixel);
+    }
+  }
+}
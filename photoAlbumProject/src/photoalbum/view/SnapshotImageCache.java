@@ -0,0 +1,150 @@
+package photoalbum.view;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The SnapshotImageCache class keeps rendered snapshot images, keyed by snapshot index, so that
+ * going back to a snapshot only needs the image to be drawn again instead of every shape. The
+ * cache holds images up to a budget of bytes and evicts the least recently used ones beyond it.
+ *
+ * <p>The images can optionally be held through soft references, which lets the garbage
+ * collector reclaim them under memory pressure before the budget is reached. All methods are
+ * safe to call from several threads.</p>
+ */
+class SnapshotImageCache {
+  private final long maxBytes;
+  private final boolean soft;
+  // In insertion order: get() puts an entry back at the end, so the eldest is the least
+  // recently used, while contains() leaves the order alone.
+  private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>();
+  private long bytes;
+
+  /**
+   * A cached image, held strongly or softly, and its size.
+   */
+  private static final class Entry {
+    private final BufferedImage image;
+    private final SoftReference<BufferedImage> reference;
+    private final long bytes;
+
+    private Entry(BufferedImage image, boolean soft, long bytes) {
+      this.image = soft ? null : image;
+      this.reference = soft ? new SoftReference<>(image) : null;
+      this.bytes = bytes;
+    }
+
+    /**
+     * Returns the image, or null if the garbage collector has reclaimed it.
+     *
+     * @return the image
+     */
+    private BufferedImage get() {
+      return this.image != null ? this.image : this.reference.get();
+    }
+  }
+
+  /**
+   * Constructs an empty cache.
+   *
+   * @param maxBytes the largest number of bytes of image data to keep
+   * @param soft     true to hold the images through soft references
+   * @throws IllegalArgumentException if the budget is negative
+   */
+  SnapshotImageCache(long maxBytes, boolean soft) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("Cache size cannot be negative");
+    }
+    this.maxBytes = maxBytes;
+    this.soft = soft;
+  }
+
+  /**
+   * Returns the image of a snapshot and marks it as the most recently used.
+   *
+   * @param index the index of the snapshot
+   * @return the image, or null if it is not cached
+   */
+  synchronized BufferedImage get(int index) {
+    Entry entry = this.entries.remove(index);
+    if (entry == null) {
+      return null;
+    }
+    BufferedImage image = entry.get();
+    if (image == null) {
+      this.bytes -= entry.bytes;
+    } else {
+      this.entries.put(index, entry);
+    }
+    return image;
+  }
+
+  /**
+   * Returns true if the image of a snapshot is cached, without marking it as used.
+   *
+   * @param index the index of the snapshot
+   * @return true if the image is cached
+   */
+  synchronized boolean contains(int index) {
+    Entry entry = this.entries.get(index);
+    return entry != null && entry.get() != null;
+  }
+
+  /**
+   * Adds the image of a snapshot and evicts the least recently used images beyond the budget.
+   * An image larger than the whole budget is not cached.
+   *
+   * @param index the index of the snapshot
+   * @param image the rendered image, which must not be drawn on afterwards
+   */
+  synchronized void put(int index, BufferedImage image) {
+    remove(index);
+    long size = sizeOf(image);
+    if (size > this.maxBytes) {
+      return;
+    }
+    this.entries.put(index, new Entry(image, this.soft, size));
+    this.bytes += size;
+    Iterator<Map.Entry<Integer, Entry>> eldest = this.entries.entrySet().iterator();
+    while (this.bytes > this.maxBytes) {
+      this.bytes -= eldest.next().getValue().bytes;
+      eldest.remove();
+    }
+  }
+
+  /**
+   * Removes every image from the cache.
+   */
+  synchronized void clear() {
+    this.entries.clear();
+    this.bytes = 0;
+  }
+
+  /**
+   * Removes the image of a snapshot.
+   *
+   * @param index the index of the snapshot
+   */
+  private void remove(int index) {
+    Entry entry = this.entries.remove(index);
+    if (entry != null) {
+      this.bytes -= entry.bytes;
+    }
+  }
+
+  /**
+   * Returns the number of bytes of an image's pixel data.
+   *
+   * @param image the image
+   * @return the size of the image
+   */
+  private static long sizeOf(BufferedImage image) {
+    DataBuffer data = image.getRaster().getDataBuffer();
+    return (long) data.getSize() * data.getNumBanks()
+        * DataBuffer.getDataTypeSize(data.getDataType()) / 8;
+  }
+}
@@ -0,0 +1,265 @@
+package photoalbum.view;
+
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.swing.SwingUtilities;
+
+import photoalbum.model.Snapshot;
+import photoalbum.model.SnapshotIndex;
+
+/**
+ * The SnapshotPrefetcher class renders snapshots off the Event Dispatch Thread. When the viewer
+ * moves to a snapshot, the snapshot itself and its neighbours within a radius are rendered on a
+ * pool of worker threads into off-screen images, which are put in a {@link SnapshotImageCache}.
+ * Renders of snapshots that fall outside the radius, as after a jump with the Select dialog, are
+ * cancelled. A snapshot next to one that is cached already is rendered by copying that image and
+ * redrawing only the {@link DirtyRegion} between the two, unless the album is drawn in tiles.
+ * The shapes to redraw are found through a {@link SnapshotIndex} shared by the workers. A render
+ * that fails is reported to the listener and is tried again the next time the viewer moves near
+ * its snapshot.
+ *
+ * <p>All methods must be called on the Event Dispatch Thread, and the listener is called there
+ * too.</p>
+ */
+class SnapshotPrefetcher {
+  private final SnapshotImageCache cache;
+  private final Listener listener;
+  private final int radius;
+  private final boolean directRectangles;
+  private final ExecutorService pool;
+  private final Map<Integer, Job> pending = new HashMap<>();
+  private List<Snapshot> snapshots;
+  private SnapshotIndex index;
+  private TiledRenderer tiles;
+  private int sizeX;
+  private int sizeY;
+
+  /**
+   * The Listener interface is told when a snapshot has been rendered or could not be.
+   */
+  interface Listener {
+    /**
+     * Called on the Event Dispatch Thread when a snapshot has been rendered.
+     *
+     * @param index the index of the snapshot
+     * @param image the rendered image, which is also in the cache
+     */
+    void rendered(int index, BufferedImage image);
+
+    /**
+     * Called on the Event Dispatch Thread when rendering a snapshot failed.
+     *
+     * @param index the index of the snapshot
+     * @param error what went wrong
+     */
+    void failed(int index, Throwable error);
+  }
+
+  /**
+   * A render of one snapshot, which can be cancelled.
+   */
+  private static final class Job {
+    private volatile boolean cancelled;
+    private Future<?> future;
+
+    /**
+     * Cancels the render, interrupting it if it has started.
+     */
+    private void cancel() {
+      this.cancelled = true;
+      this.future.cancel(true);
+    }
+  }
+
+  /**
+   * Constructs a prefetcher.
+   *
+   * @param cache    the cache the rendered images are put in
+   * @param threads  the number of rendering threads
+   * @param radius   how many snapshots on each side of the current one are rendered ahead
+   * @param direct   true to fill rectangles straight into the pixels of the images
+   * @param listener the listener told when a snapshot has been rendered
+   * @throws IllegalArgumentException if the number of threads is not positive or the radius is
+   *                                  negative
+   */
+  SnapshotPrefetcher(SnapshotImageCache cache, int threads, int radius, boolean direct,
+                     Listener listener) {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Number of threads must be positive");
+    }
+    if (radius < 0) {
+      throw new IllegalArgumentException("Radius cannot be negative");
+    }
+    this.cache = cache;
+    this.radius = radius;
+    this.directRectangles = direct;
+    this.listener = listener;
+    this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "snapshot-prefetch");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.NORM_PRIORITY - 1);
+      return thread;
+    });
+  }
+
+  /**
+   * Sets the album whose snapshots are rendered, cancelling every render in progress.
+   *
+   * @param snapshots the snapshots of the album
+   * @param sizeX     the width of the images
+   * @param sizeY     the height of the images
+   * @param tiles     the renderer to draw the images in tiles with, or null to draw each on a
+   *                  single thread
+   */
+  void setAlbum(List<Snapshot> snapshots, int sizeX, int sizeY, TiledRenderer tiles) {
+    for (Job job : this.pending.values()) {
+      job.cancel();
+    }
+    this.pending.clear();
+    this.snapshots = snapshots;
+    this.index = new SnapshotIndex();
+    this.tiles = tiles;
+    this.sizeX = sizeX;
+    this.sizeY = sizeY;
+  }
+
+  /**
+   * Moves to a snapshot. Renders outside the radius around it are cancelled, and the snapshot and
+   * then its nearest neighbours are queued for rendering unless they are cached or queued
+   * already.
+   *
+   * @param index the index of the snapshot now shown
+   */
+  void focus(int index) {
+    Iterator<Map.Entry<Integer, Job>> jobs = this.pending.entrySet().iterator();
+    while (jobs.hasNext()) {
+      Map.Entry<Integer, Job> entry = jobs.next();
+      if (Math.abs(entry.getKey() - index) > this.radius) {
+        entry.getValue().cancel();
+        jobs.remove();
+      }
+    }
+    submit(index);
+    for (int distance = 1; distance <= this.radius; distance++) {
+      submit(index + distance);
+      submit(index - distance);
+    }
+  }
+
+  /**
+   * Queues a snapshot for rendering unless it is out of range, cached or queued already.
+   *
+   * @param index the index of the snapshot
+   */
+  private void submit(int index) {
+    if (index < 0 || index >= this.snapshots.size() || this.pending.containsKey(index)
+        || this.cache.contains(index)) {
+      return;
+    }
+    Job job = new Job();
+    Snapshot snapshot = this.snapshots.get(index);
+    int base = this.cache.contains(index - 1) ? index - 1
+        : this.cache.contains(index + 1) ? index + 1 : -1;
+    Snapshot baseSnapshot = base >= 0 ? this.snapshots.get(base) : null;
+    int width = this.sizeX;
+    int height = this.sizeY;
+    TiledRenderer tiles = this.tiles;
+    SnapshotIndex shapeIndex = this.index;
+    job.future = this.pool.submit(() -> {
+      if (job.cancelled) {
+        return;
+      }
+      BufferedImage image = null;
+      Throwable failure = null;
+      try {
+        image = tiles != null ? render(snapshot, width, height, tiles)
+            : render(snapshot, base, baseSnapshot, shapeIndex, width, height);
+        if (image != null && !job.cancelled) {
+          this.cache.put(index, image);
+        }
+      } catch (RuntimeException | Error e) {
+        failure = e;
+      }
+      if (job.cancelled) {
+        return;
+      }
+      BufferedImage rendered = image;
+      Throwable error = failure;
+      SwingUtilities.invokeLater(() -> finish(index, job, rendered, error));
+    });
+    this.pending.put(index, job);
+  }
+
+  /**
+   * Ends a render on the Event Dispatch Thread, so its snapshot can be queued again, and tells
+   * the listener how it went unless the render has been cancelled meanwhile.
+   *
+   * @param index   the index of the snapshot
+   * @param job     the render
+   * @param image   the rendered image, or null if the render failed or was interrupted
+   * @param failure what went wrong, or null if nothing did
+   */
+  private void finish(int index, Job job, BufferedImage image, Throwable failure) {
+    if (this.pending.get(index) != job) {
+      return;
+    }
+    this.pending.remove(index);
+    if (failure != null) {
+      this.listener.failed(index, failure);
+    } else if (image != null) {
+      this.listener.rendered(index, image);
+    }
+  }
+
+  /**
+   * Renders a snapshot, starting from the cached image of a neighbouring snapshot if there is
+   * one and only a small region differs, and from a blank image otherwise. Cached images are
+   * never drawn on, so a snapshot that looks the same as its neighbour shares its image, and
+   * otherwise the neighbour's pixels are copied in one pass with no shape drawn outside the
+   * region.
+   *
+   * @param snapshot     the snapshot to render
+   * @param base         the index of the neighbouring snapshot, or -1 if there is none
+   * @param baseSnapshot the neighbouring snapshot, or null if there is none
+   * @param index        the index to find the shapes of the album's snapshots with
+   * @param width        the width of the image
+   * @param height       the height of the image
+   * @return the rendered image, or null if the thread was interrupted
+   */
+  private BufferedImage render(Snapshot snapshot, int base, Snapshot baseSnapshot,
+                               SnapshotIndex index, int width, int height) {
+    BufferedImage previous = base >= 0 ? this.cache.get(base) : null;
+    DirtyRegion region = previous != null
+        ? DirtyRegion.between(baseSnapshot, snapshot, width, height) : null;
+    if (region != null && region.getBounds().isEmpty()) {
+      return previous;
+    }
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    if (region != null) {
+      previous.copyData(image.getRaster());
+      return region.redraw(image, snapshot, index, this.directRectangles) ? image : null;
+    }
+    return SwingPhotoAlbum.draw(image, snapshot, this.directRectangles) ? image : null;
+  }
+
+  /**
+   * Renders a snapshot in tiles. Tiled images are always drawn whole, as a tiled image may differ
+   * from a redrawn region in a few pixels.
+   *
+   * @param snapshot the snapshot to render
+   * @param width    the width of the image
+   * @param height   the height of the image
+   * @param tiles    the renderer drawing the tiles
+   * @return the rendered image, or null if the thread was interrupted
+   */
+  private BufferedImage render(Snapshot snapshot, int width, int height, TiledRenderer tiles) {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    return SwingPhotoAlbum.draw(image, snapshot, this.directRectangles, tiles) ? image : null;
+  }
+}
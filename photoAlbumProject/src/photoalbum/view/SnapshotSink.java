@@ -0,0 +1,38 @@
+package photoalbum.view;
+
+import java.io.IOException;
+
+import photoalbum.model.Snapshot;
+
+/**
+ * The SnapshotSink interface renders the snapshots of an album one at a time, in album order,
+ * as they are handed to it, without needing the whole album up front. A view hands one out from
+ * {@link StreamingView#open}, and only holds the few snapshots it is still rendering, so an
+ * album of any length can be rendered in constant memory. Closing the sink finishes the output.
+ */
+public interface SnapshotSink extends AutoCloseable {
+  /**
+   * Renders the next snapshot of the album. The snapshot may be rendered in the background, in
+   * which case this waits only while too many snapshots are being rendered already.
+   *
+   * @param snapshot the snapshot to render
+   * @throws IOException if the output cannot be written
+   */
+  void accept(Snapshot snapshot) throws IOException;
+
+  /**
+   * Tells the sink that the album will not be finished, because reading or rendering it failed.
+   * Closing the sink afterwards releases what it holds without finishing the output, so that a
+   * partial album is not mistaken for a whole one.
+   */
+  void abort();
+
+  /**
+   * Waits for every snapshot to be rendered and finishes the output, unless the sink has been
+   * aborted.
+   *
+   * @throws IOException if the output cannot be written
+   */
+  @Override
+  void close() throws IOException;
+}
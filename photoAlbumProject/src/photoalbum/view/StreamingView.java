@@ -0,0 +1,22 @@
+package photoalbum.view;
+
+import java.io.IOException;
+
+/**
+ * The StreamingView interface is implemented by the views that can render an album whose
+ * snapshots are handed over one at a time as they are taken, rather than all at once, such as
+ * the web and png views. A view that can only show a whole album does not implement it.
+ */
+public interface StreamingView extends IPhotoAlbumView {
+  /**
+   * Starts rendering an album whose snapshots are handed over one at a time.
+   *
+   * @param sizeX          the width of the canvas or viewing area
+   * @param sizeY          the height of the canvas or viewing area
+   * @param outputFileName the name of the output file
+   * @return the sink the snapshots are handed to, which must be closed once the last one has
+   *         been handed over
+   * @throws IOException if the output cannot be opened
+   */
+  SnapshotSink open(int sizeX, int sizeY, String outputFileName) throws IOException;
+}
@@ -0,0 +1,245 @@
+package photoalbum.view;
+
+import java.io.CharArrayWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * The SvgWriter class writes SVG markup to a character stream. Numbers are formatted straight
+ * into its own buffer instead of going through {@link String#format}, which is where most of the
+ * time of a large export used to go.
+ *
+ * <p>Doubles are written like {@code %f} with the writer's precision: a fixed number of
+ * decimals, rounded half up from the shortest decimal form of the double. Values far from a
+ * rounding tie are rounded with plain arithmetic; the rare values close to one, and very large
+ * values, are rounded with {@link BigDecimal} so the output always matches {@code %f}.</p>
+ */
+final class SvgWriter implements Closeable {
+  /**
+   * The number of decimals written by {@code %f}.
+   */
+  static final int DEFAULT_PRECISION = 6;
+  /**
+   * The largest number of decimals supported.
+   */
+  static final int MAX_PRECISION = 15;
+  private static final int BUFFER_SIZE = 8192;
+  private static final double FAST_LIMIT = 0x1p43;
+  private static final double TIE_MARGIN = 0x1p-8;
+  private static final long[] POWERS_OF_TEN = new long[MAX_PRECISION + 1];
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private final Writer out;
+  private final int precision;
+  private final char[] buf = new char[BUFFER_SIZE];
+  private int count;
+
+  /**
+   * Constructs a writer that writes doubles with the given number of decimals.
+   *
+   * @param out       the stream to write to
+   * @param precision the number of decimals of each double
+   * @throws IllegalArgumentException if the precision is negative or above 15
+   */
+  SvgWriter(Writer out, int precision) {
+    if (precision < 0 || precision > MAX_PRECISION) {
+      throw new IllegalArgumentException("Precision must be between 0 and " + MAX_PRECISION);
+    }
+    this.out = out;
+    this.precision = precision;
+  }
+
+  /**
+   * Writes a string.
+   *
+   * @param text the string
+   * @return this writer
+   * @throws IOException if the stream cannot be written
+   */
+  SvgWriter append(String text) throws IOException {
+    int length = text.length();
+    if (length > this.buf.length - this.count) {
+      flushBuffer();
+      if (length > this.buf.length) {
+        this.out.write(text);
+        return this;
+      }
+    }
+    text.getChars(0, length, this.buf, this.count);
+    this.count += length;
+    return this;
+  }
+
+  /**
+   * Writes a character.
+   *
+   * @param c the character
+   * @return this writer
+   * @throws IOException if the stream cannot be written
+   */
+  SvgWriter append(char c) throws IOException {
+    if (this.count == this.buf.length) {
+      flushBuffer();
+    }
+    this.buf[this.count++] = c;
+    return this;
+  }
+
+  /**
+   * Writes an int in decimal, like {@code %d}.
+   *
+   * @param value the value
+   * @return this writer
+   * @throws IOException if the stream cannot be written
+   */
+  SvgWriter append(int value) throws IOException {
+    reserve(12);
+    long v = value;
+    if (v < 0) {
+      this.buf[this.count++] = '-';
+      v = -v;
+    }
+    writeDigits(v, 1);
+    return this;
+  }
+
+  /**
+   * Writes a double with this writer's number of decimals, like {@code %f}.
+   *
+   * @param value the value
+   * @return this writer
+   * @throws IOException if the stream cannot be written
+   */
+  SvgWriter append(double value) throws IOException {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      return append(Double.toString(value));
+    }
+    boolean negative = Double.doubleToRawLongBits(value) < 0;
+    double abs = Math.abs(value);
+    double scaled = abs * POWERS_OF_TEN[this.precision];
+    if (scaled < FAST_LIMIT) {
+      long whole = (long) scaled;
+      double fraction = scaled - whole;
+      if (Math.abs(fraction - 0.5) > TIE_MARGIN) {
+        writeFixed(negative, fraction > 0.5 ? whole + 1 : whole);
+        return this;
+      }
+    }
+    if (negative) {
+      append('-');
+    }
+    return append(new BigDecimal(Double.toString(abs))
+        .setScale(this.precision, RoundingMode.HALF_UP).toPlainString());
+  }
+
+  /**
+   * Writes the contents of a character buffer, such as markup rendered elsewhere.
+   *
+   * @param chars the buffer
+   * @return this writer
+   * @throws IOException if the stream cannot be written
+   */
+  SvgWriter append(CharArrayWriter chars) throws IOException {
+    flushBuffer();
+    chars.writeTo(this.out);
+    return this;
+  }
+
+  /**
+   * Writes out the buffered text and flushes the stream.
+   *
+   * @throws IOException if the stream cannot be written
+   */
+  void flush() throws IOException {
+    flushBuffer();
+    this.out.flush();
+  }
+
+  /**
+   * Writes out the buffered text and closes the stream.
+   *
+   * @throws IOException if the stream cannot be written or closed
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      flushBuffer();
+    } finally {
+      this.out.close();
+    }
+  }
+
+  /**
+   * Writes a rounded value that has been scaled by ten to the power of the precision.
+   *
+   * @param negative true if a minus sign goes in front
+   * @param scaled   the absolute value times ten to the power of the precision
+   * @throws IOException if the stream cannot be written
+   */
+  private void writeFixed(boolean negative, long scaled) throws IOException {
+    reserve(22 + this.precision);
+    if (negative) {
+      this.buf[this.count++] = '-';
+    }
+    long unit = POWERS_OF_TEN[this.precision];
+    writeDigits(scaled / unit, 1);
+    if (this.precision > 0) {
+      this.buf[this.count++] = '.';
+      writeDigits(scaled % unit, this.precision);
+    }
+  }
+
+  /**
+   * Writes a non-negative value in decimal, padded with leading zeros to a minimum width. The
+   * caller must have reserved room for it.
+   *
+   * @param value    the value
+   * @param minWidth the minimum number of digits
+   */
+  private void writeDigits(long value, int minWidth) {
+    int digits = 1;
+    for (long v = value / 10; v != 0; v /= 10) {
+      digits++;
+    }
+    digits = Math.max(digits, minWidth);
+    int end = this.count + digits;
+    for (int i = end - 1; i >= this.count; i--) {
+      this.buf[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+    this.count = end;
+  }
+
+  /**
+   * Makes sure the buffer has room for a number of characters.
+   *
+   * @param length the number of characters
+   * @throws IOException if the stream cannot be written
+   */
+  private void reserve(int length) throws IOException {
+    if (length > this.buf.length - this.count) {
+      flushBuffer();
+    }
+  }
+
+  /**
+   * Writes the buffered text to the stream.
+   *
+   * @throws IOException if the stream cannot be written
+   */
+  private void flushBuffer() throws IOException {
+    if (this.count > 0) {
+      this.out.write(this.buf, 0, this.count);
+      this.count = 0;
+    }
+  }
+}
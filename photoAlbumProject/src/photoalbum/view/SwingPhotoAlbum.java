@@ -2,22 +2,65 @@ package photoalbum.view;
 
 import java.util.List;
 
-import photoalbum.model.Oval;
-import photoalbum.model.Rectangle;
+import photoalbum.model.IShape;
 import photoalbum.model.Snapshot;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.image.BufferedImage;
 
 /**
  * The SwingPhotoAlbum class implements the IPhotoAlbumView interface and provides
  * a graphical user interface (GUI) for displaying snapshots of shapes in the photo album.
  * It uses Java Swing components to render shapes and allow user interaction.
+ *
+ * <p>Rendered snapshots are kept in a {@link SnapshotImageCache}, so going back to a snapshot
+ * that was shown recently only draws its image again. Snapshots are rendered off the Event
+ * Dispatch Thread by a {@link SnapshotPrefetcher}, which also renders the two snapshots on either
+ * side of the one shown, so the buttons stay responsive however large a snapshot is. Moving to
+ * the next or previous snapshot only repaints the {@link DirtyRegion} between the two.</p>
+ *
+ * <p>A canvas too large for one image is never allocated whole: at full size from its top left
+ * corner, the view only draws the part of it that fits on the screen, and draws it in tiles on
+ * all cores with a {@link TiledRenderer}.</p>
+ *
+ * <p>The canvas can be zoomed with the mouse wheel, around the point under the pointer, and
+ * panned by dragging it; a double click goes back to the canvas at full size from its top left
+ * corner. A zoomed or panned view is painted from a {@link TilePyramid}, which draws the tiles
+ * in view at the resolution the zoom needs in the background and keeps recent ones cached, so
+ * moving around stays smooth however many shapes the album has.</p>
  */
 public class SwingPhotoAlbum implements IPhotoAlbumView {
+  /**
+   * The default budget of the rendered snapshot cache, in bytes: 256MB, or a quarter of the
+   * heap if that is less.
+   */
+  public static final long DEFAULT_CACHE_BYTES =
+      Math.min(256L << 20, Runtime.getRuntime().maxMemory() / 4);
+  private static final int PREFETCH_RADIUS = 2;
+  private static final double ZOOM_STEP = 1.25;
+  private static final double MAX_ZOOM = 32;
+
   int currentIdx = 0;
+  int shownIdx = -1;
   List<Snapshot> snapshots;
+  final SnapshotImageCache cache;
+  final SnapshotPrefetcher prefetcher;
+  final boolean directRectangles;
+  final TiledRenderer tiles;
+  final TilePyramid pyramid;
+  boolean tiled;
+  int sizeX;
+  int sizeY;
+  int canvasX;
+  int canvasY;
+  double zoom = 1;
+  double viewX;
+  double viewY;
+  Point dragFrom;
   JFrame frame = new JFrame("CS5004 Shapes Photo Album Viewer");
   JLabel snapshotLbl = new JLabel();
   BufferedImage snapshotImg;
@@ -25,16 +68,103 @@ public class SwingPhotoAlbum implements IPhotoAlbumView {
     @Override
     protected void paintComponent(Graphics g) {
       super.paintComponent(g);
-      if (snapshotImg != null) {
+      if (isZoomed()) {
+        if (snapshots != null && !snapshots.isEmpty()) {
+          pyramid.paint((Graphics2D) g, currentIdx, zoom, viewX, viewY, getWidth(), getHeight());
+        }
+      } else if (snapshotImg != null) {
         g.drawImage(snapshotImg, 0, 0, null);
       }
     }
   };
 
   /**
-   * Constructs a SwingPhotoAlbum instance and sets up the GUI components.
+   * Constructs a SwingPhotoAlbum instance and sets up the GUI components, with a rendered
+   * snapshot cache of the default size.
    */
   public SwingPhotoAlbum() {
+    this(DEFAULT_CACHE_BYTES, false);
+  }
+
+  /**
+   * Constructs a SwingPhotoAlbum instance and sets up the GUI components, drawing every shape
+   * through Java2D.
+   *
+   * @param cacheBytes     the largest number of bytes of rendered snapshots to keep
+   * @param softReferences true to let the garbage collector reclaim cached snapshots under memory
+   *                       pressure
+   * @throws IllegalArgumentException if the cache size is negative
+   */
+  public SwingPhotoAlbum(long cacheBytes, boolean softReferences) {
+    this(cacheBytes, softReferences, false);
+  }
+
+  /**
+   * Constructs a SwingPhotoAlbum instance and sets up the GUI components.
+   *
+   * @param cacheBytes       the largest number of bytes of rendered snapshots to keep
+   * @param softReferences   true to let the garbage collector reclaim cached snapshots under
+   *                         memory pressure
+   * @param directRectangles true to fill rectangles straight into the pixels of the rendered
+   *                         images instead of through Java2D
+   * @throws IllegalArgumentException if the cache size is negative
+   */
+  public SwingPhotoAlbum(long cacheBytes, boolean softReferences, boolean directRectangles) {
+    this.cache = new SnapshotImageCache(cacheBytes, softReferences);
+    this.directRectangles = directRectangles;
+    this.tiles = new TiledRenderer(TiledRenderer.DEFAULT_TILE_SIZE,
+        Runtime.getRuntime().availableProcessors(), directRectangles);
+    int threads = Math.max(1, Math.min(PREFETCH_RADIUS * 2,
+        Runtime.getRuntime().availableProcessors() - 1));
+    this.prefetcher = new SnapshotPrefetcher(this.cache, threads, PREFETCH_RADIUS,
+        directRectangles, new SnapshotPrefetcher.Listener() {
+          @Override
+          public void rendered(int index, BufferedImage image) {
+            handleSnapshotRendered(index, image);
+          }
+
+          @Override
+          public void failed(int index, Throwable error) {
+            handleSnapshotFailed(index, error);
+          }
+        });
+    this.pyramid = new TilePyramid(TilePyramid.DEFAULT_CACHE_BYTES,
+        Math.max(1, Runtime.getRuntime().availableProcessors() - 1), directRectangles,
+        this::handleTileRendered);
+    MouseAdapter navigation = new MouseAdapter() {
+      @Override
+      public void mousePressed(MouseEvent e) {
+        dragFrom = e.getPoint();
+      }
+
+      @Override
+      public void mouseDragged(MouseEvent e) {
+        if (dragFrom != null) {
+          pan(e.getX() - dragFrom.x, e.getY() - dragFrom.y);
+          dragFrom = e.getPoint();
+        }
+      }
+
+      @Override
+      public void mouseReleased(MouseEvent e) {
+        dragFrom = null;
+      }
+
+      @Override
+      public void mouseClicked(MouseEvent e) {
+        if (e.getClickCount() == 2) {
+          resetView();
+        }
+      }
+
+      @Override
+      public void mouseWheelMoved(MouseWheelEvent e) {
+        zoomAt(e.getX(), e.getY(), Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()));
+      }
+    };
+    snapshotPanel.addMouseListener(navigation);
+    snapshotPanel.addMouseMotionListener(navigation);
+    snapshotPanel.addMouseWheelListener(navigation);
     this.frame.setLayout(new BorderLayout());
     JPanel buttonPanel = new JPanel();
 
@@ -62,6 +192,88 @@ public class SwingPhotoAlbum implements IPhotoAlbumView {
     this.frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
   }
 
+  /**
+   * Returns true if the view is zoomed or panned away from the canvas at full size from its top
+   * left corner, and is painted from the tile pyramid.
+   *
+   * @return true if the view is zoomed or panned
+   */
+  private boolean isZoomed() {
+    return this.zoom != 1 || this.viewX != 0 || this.viewY != 0;
+  }
+
+  /**
+   * Zooms the view, keeping the canvas point under a point of the panel in place. The view
+   * cannot be zoomed out further than needed to fit the whole canvas, nor zoomed in beyond a
+   * block of 32 by 32 screen pixels per canvas pixel.
+   *
+   * @param x      the x-coordinate of the point on the panel
+   * @param y      the y-coordinate of the point on the panel
+   * @param factor the factor the zoom is multiplied by
+   */
+  private void zoomAt(int x, int y, double factor) {
+    if (this.snapshots == null || this.canvasX <= 0 || this.canvasY <= 0) {
+      return;
+    }
+    double fit = Math.min((double) snapshotPanel.getWidth() / this.canvasX,
+        (double) snapshotPanel.getHeight() / this.canvasY);
+    double zoom = Math.max(Math.min(1, fit), Math.min(MAX_ZOOM, this.zoom * factor));
+    if (Math.abs(zoom - 1) < 1e-9) {
+      zoom = 1;
+    }
+    this.viewX += x / this.zoom - x / zoom;
+    this.viewY += y / this.zoom - y / zoom;
+    this.zoom = zoom;
+    clampView();
+    snapshotPanel.repaint();
+  }
+
+  /**
+   * Pans the view by a distance on the screen.
+   *
+   * @param dx the distance to move the canvas right, in screen pixels
+   * @param dy the distance to move the canvas down, in screen pixels
+   */
+  private void pan(int dx, int dy) {
+    if (this.snapshots == null) {
+      return;
+    }
+    this.viewX -= dx / this.zoom;
+    this.viewY -= dy / this.zoom;
+    clampView();
+    snapshotPanel.repaint();
+  }
+
+  /**
+   * Keeps the view on the canvas: a canvas larger than the panel always fills it, and a canvas
+   * smaller than the panel stays whole inside it.
+   */
+  private void clampView() {
+    double spanX = this.canvasX - snapshotPanel.getWidth() / this.zoom;
+    double spanY = this.canvasY - snapshotPanel.getHeight() / this.zoom;
+    this.viewX = Math.max(Math.min(0, spanX), Math.min(Math.max(0, spanX), this.viewX));
+    this.viewY = Math.max(Math.min(0, spanY), Math.min(Math.max(0, spanY), this.viewY));
+  }
+
+  /**
+   * Goes back to the canvas at full size from its top left corner.
+   */
+  private void resetView() {
+    this.zoom = 1;
+    this.viewX = 0;
+    this.viewY = 0;
+    snapshotPanel.repaint();
+  }
+
+  /**
+   * Repaints a zoomed view when one of its tiles has been drawn.
+   */
+  private void handleTileRendered() {
+    if (isZoomed()) {
+      snapshotPanel.repaint();
+    }
+  }
+
   /**
    * Handles the "Previous" button click event.
    * Displays the previous snapshot if available.
@@ -71,7 +283,7 @@ public class SwingPhotoAlbum implements IPhotoAlbumView {
       JOptionPane.showMessageDialog(this.frame, "First snapshot. No snapshots to "
           + "show before this one.");
     } else {
-      renderSnapshot(this.snapshots.get(--currentIdx));
+      showSnapshot(--currentIdx);
     }
   }
 
@@ -84,7 +296,7 @@ public class SwingPhotoAlbum implements IPhotoAlbumView {
       JOptionPane.showMessageDialog(this.frame, "End of the photo album. "
           + "No snapshots to show beyond this one.");
     } else {
-      renderSnapshot(this.snapshots.get(++currentIdx));
+      showSnapshot(++currentIdx);
     }
   }
 
@@ -121,7 +333,7 @@ public class SwingPhotoAlbum implements IPhotoAlbumView {
       int selectedIndex = snapshotList.getSelectedIndex();
       if (selectedIndex != -1) {
         currentIdx = selectedIndex;
-        renderSnapshot(snapshots.get(currentIdx));
+        showSnapshot(currentIdx);
         dialog.dispose();
       }
     });
@@ -133,7 +345,9 @@ public class SwingPhotoAlbum implements IPhotoAlbumView {
   }
 
   /**
-   * Renders the list of snapshots and displays the first snapshot.
+   * Renders the list of snapshots and displays the first snapshot. The window is set up on the
+   * Event Dispatch Thread. If the canvas is too large for one image, only the part of it that
+   * fits on the screen is drawn at full size; the rest is reached by zooming and panning.
    *
    * @param snapshots      the list of snapshots to render
    * @param sizeX          the width of the rendering area
@@ -141,39 +355,137 @@ public class SwingPhotoAlbum implements IPhotoAlbumView {
    * @param outputFileName not used in Swing rendering
    */
   public void render(List<Snapshot> snapshots, int sizeX, int sizeY, String outputFileName) {
-    this.snapshots = snapshots;
-    this.snapshotImg = new BufferedImage(sizeX, sizeY, BufferedImage.TYPE_INT_RGB);
+    SwingUtilities.invokeLater(() -> {
+      this.snapshots = snapshots;
+      this.canvasX = sizeX;
+      this.canvasY = sizeY;
+      this.zoom = 1;
+      this.viewX = 0;
+      this.viewY = 0;
+      this.pyramid.setAlbum(snapshots, sizeX, sizeY);
+      this.tiled = TiledRenderer.isLarge(sizeX, sizeY);
+      if (this.tiled) {
+        Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+        this.sizeX = Math.min(sizeX, screen.width);
+        this.sizeY = Math.min(sizeY, screen.height);
+      } else {
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+      }
+      this.cache.clear();
+      this.shownIdx = -1;
+      this.prefetcher.setAlbum(snapshots, this.sizeX, this.sizeY,
+          this.tiled ? this.tiles : null);
+      this.snapshotImg = new BufferedImage(this.sizeX, this.sizeY, BufferedImage.TYPE_INT_RGB);
+      try (ShapeRasterizer rasterizer = new ShapeRasterizer(this.snapshotImg, false)) {
+        rasterizer.clear();
+      }
 
-    if (!this.snapshots.isEmpty()) {
-      renderSnapshot(this.snapshots.get(0));
+      if (!this.snapshots.isEmpty()) {
+        showSnapshot(0);
+      }
+
+      this.frame.setVisible(true);
+    });
+  }
+
+  /**
+   * Shows the snapshot at an index. Its image is taken from the cache if it was rendered
+   * recently; otherwise the previous image stays up until the snapshot has been rendered in the
+   * background. Its neighbours are then rendered ahead.
+   *
+   * @param index the index of the snapshot
+   */
+  private void showSnapshot(int index) {
+    showLabel(this.snapshots.get(index));
+    if (isZoomed()) {
+      snapshotPanel.repaint();
     }
+    BufferedImage image = this.cache.get(index);
+    if (image != null) {
+      display(index, image);
+    }
+    this.prefetcher.focus(index);
+  }
 
-    this.frame.setVisible(true);
+  /**
+   * Shows a snapshot rendered in the background if it is still the current one.
+   *
+   * @param index the index of the snapshot
+   * @param image the rendered image
+   */
+  private void handleSnapshotRendered(int index, BufferedImage image) {
+    if (index == this.currentIdx) {
+      display(index, image);
+    }
   }
 
   /**
-   * Renders a single snapshot by drawing all shapes onto the BufferedImage.
+   * Tells the user that the current snapshot could not be rendered. A neighbour rendered ahead
+   * is reported once the user moves to it, as it is then rendered again.
    *
-   * @param snapshot the snapshot to render
+   * @param index the index of the snapshot
+   * @param error what went wrong
    */
-  @Override
-  public void renderSnapshot(Snapshot snapshot) {
-    Graphics2D g2d = snapshotImg.createGraphics();
-    g2d.setColor(Color.WHITE);
-    g2d.fillRect(0, 0, snapshotImg.getWidth(), snapshotImg.getHeight());
-
-    for (photoalbum.model.Shape shape : snapshot.getShapes()) {
-      if (shape instanceof Rectangle) {
-        renderRectangle((Rectangle) shape);
-      } else if (shape instanceof Oval) {
-        renderOval((Oval) shape);
-      }
+  private void handleSnapshotFailed(int index, Throwable error) {
+    if (index == this.currentIdx) {
+      JOptionPane.showMessageDialog(this.frame, "Snapshot "
+          + this.snapshots.get(index).getSnapshotId() + " could not be rendered: " + error,
+          "Error", JOptionPane.ERROR_MESSAGE);
     }
+  }
 
+  /**
+   * Puts up the image of a snapshot. When it replaces the image of the next or previous
+   * snapshot, only the region where the two differ is repainted.
+   *
+   * @param index the index of the snapshot
+   * @param image the rendered image
+   */
+  private void display(int index, BufferedImage image) {
+    DirtyRegion region = null;
+    if (this.shownIdx >= 0 && Math.abs(index - this.shownIdx) == 1) {
+      region = DirtyRegion.between(this.snapshots.get(this.shownIdx), this.snapshots.get(index),
+          this.sizeX, this.sizeY);
+    }
+    this.snapshotImg = image;
+    this.shownIdx = index;
+    if (isZoomed()) {
+      return;
+    }
+    if (region == null) {
+      snapshotPanel.repaint();
+    } else if (!region.getBounds().isEmpty()) {
+      snapshotPanel.repaint(region.getBounds());
+    }
+  }
+
+  /**
+   * Shows the ID and description of a snapshot above the image.
+   *
+   * @param snapshot the snapshot shown
+   */
+  private void showLabel(Snapshot snapshot) {
     snapshotLbl.setText("<html><b>ID:</b> " + snapshot.getSnapshotId() + "<br><b>Description:</b>"
         + " " + snapshot.getDescription() + "</html>");
+  }
+
+  /**
+   * Renders a single snapshot by drawing all shapes onto a new BufferedImage, on the calling
+   * thread.
+   *
+   * @param snapshot the snapshot to render
+   */
+  @Override
+  public void renderSnapshot(Snapshot snapshot) {
+    this.snapshotImg = new BufferedImage(this.sizeX, this.sizeY, BufferedImage.TYPE_INT_RGB);
+    this.shownIdx = -1;
+    this.zoom = 1;
+    this.viewX = 0;
+    this.viewY = 0;
+    draw(this.snapshotImg, snapshot, this.directRectangles, this.tiled ? this.tiles : null);
+    showLabel(snapshot);
     snapshotPanel.repaint();
-    g2d.dispose();
   }
 
   /**
@@ -182,13 +494,10 @@ public class SwingPhotoAlbum implements IPhotoAlbumView {
    * @param rec the rectangle to render
    */
   @Override
-  public void renderRectangle(Rectangle rec) {
-    Graphics2D g2d = snapshotImg.createGraphics();
-    g2d.setColor(new java.awt.Color((int) (rec.getColor().getRed() * 255),
-        (int) (rec.getColor().getGreen() * 255),
-        (int) (rec.getColor().getBlue() * 255)));
-    g2d.fillRect((int) rec.getX(), (int) rec.getY(), (int) rec.getWidth(), (int) rec.getHeight());
-    g2d.dispose();
+  public void renderRectangle(IShape rec) {
+    try (ShapeRasterizer rasterizer = new ShapeRasterizer(snapshotImg, false)) {
+      rasterizer.fill(rec);
+    }
   }
 
   /**
@@ -197,16 +506,44 @@ public class SwingPhotoAlbum implements IPhotoAlbumView {
    * @param oval the oval to render
    */
   @Override
-  public void renderOval(Oval oval) {
-    Graphics2D g2d = snapshotImg.createGraphics();
-    g2d.setColor(new java.awt.Color((int) (oval.getColor().getRed() * 255),
-        (int) (oval.getColor().getGreen() * 255),
-        (int) (oval.getColor().getBlue() * 255)));
-    g2d.fillOval((int) (oval.getX() - oval.getRadiusX()),
-        (int) (oval.getY() - oval.getRadiusY()),
-        (int) (oval.getRadiusX() * 2),
-        (int) (oval.getRadiusY() * 2));
-    g2d.dispose();
+  public void renderOval(IShape oval) {
+    try (ShapeRasterizer rasterizer = new ShapeRasterizer(snapshotImg, false)) {
+      rasterizer.fill(oval);
+    }
+  }
+
+  /**
+   * Draws a snapshot onto an image, on the calling thread. Shapes the {@link RenderPlanner} finds
+   * hidden are skipped. The drawing stops early if the thread is interrupted.
+   *
+   * @param image            the image to draw on
+   * @param snapshot         the snapshot to draw
+   * @param directRectangles true to fill rectangles straight into the image's pixels
+   * @return true if the whole snapshot was drawn, false if the thread was interrupted
+   */
+  static boolean draw(BufferedImage image, Snapshot snapshot, boolean directRectangles) {
+    try (ShapeRasterizer rasterizer = new ShapeRasterizer(image, directRectangles)) {
+      rasterizer.clear();
+      return rasterizer.fillAll(RenderPlanner.visibleShapes(snapshot.getShapes(),
+          image.getWidth(), image.getHeight()));
+    }
   }
-}
 
+  /**
+   * Draws a snapshot onto an image holding the top left part of the canvas, in tiles if a tiled
+   * renderer is given and on the calling thread otherwise.
+   *
+   * @param image            the image to draw on
+   * @param snapshot         the snapshot to draw
+   * @param directRectangles true to fill rectangles straight into the image's pixels
+   * @param tiles            the renderer to draw the image in tiles with, or null
+   * @return true if the whole snapshot was drawn, false if the thread was interrupted
+   */
+  static boolean draw(BufferedImage image, Snapshot snapshot, boolean directRectangles,
+                      TiledRenderer tiles) {
+    if (tiles == null) {
+      return draw(image, snapshot, directRectangles);
+    }
+    return tiles.render(tiles.bin(snapshot, image.getWidth(), image.getHeight()), image, 0, 0);
+  }
+}
@@ -0,0 +1,550 @@
+package photoalbum.view;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.swing.SwingUtilities;
+
+import photoalbum.model.IShape;
+import photoalbum.model.ShapeType;
+import photoalbum.model.SpatialIndex;
+import photoalbum.model.Snapshot;
+
+/**
+ * The TilePyramid class draws the canvas of a snapshot at any zoom, for the graphical view. The
+ * canvas is drawn in square tiles at a pyramid of levels: level 0 holds the canvas at full size,
+ * and every level above it holds the canvas at half the size of the one below. A view zoomed out
+ * is painted from the tiles of the smallest level that is still at least as large as the view,
+ * scaled down by less than half, and a view zoomed in is painted from the tiles of level 0
+ * scaled up, one canvas pixel to a block of screen pixels.
+ *
+ * <p>Tiles are drawn only when a view needs them, on a pool of worker threads, and kept in a
+ * cache that evicts the least recently used tiles beyond a budget of bytes. Until a tile has been
+ * drawn, the view shows the tile of a smaller level covering the same part of the canvas, or the
+ * same tile of the snapshot painted before, if either is cached. Tiles that a view no longer
+ * needs are cancelled before they are drawn.</p>
+ *
+ * <p>The tiles of level 0 are drawn exactly as the {@link TiledRenderer} draws them. The tiles
+ * of smaller levels are drawn with a level of detail that keeps their cost low however many
+ * shapes they cover: shapes covering less than a quarter of a pixel are skipped, shapes less
+ * than two pixels across are merged into the single pixel they fall on, rectangles are filled
+ * straight into the pixels of the tile, and only larger ovals go through Java2D. The shapes a
+ * tile covers are found with a {@link SpatialIndex} of the shapes the {@link RenderPlanner} finds
+ * visible, built once per snapshot.</p>
+ *
+ * <p>All methods must be called on the Event Dispatch Thread, and the listener is called there
+ * too.</p>
+ */
+final class TilePyramid {
+  /**
+   * The default budget of the tile cache, in bytes: 64MB, or an eighth of the heap if that is
+   * less.
+   */
+  static final long DEFAULT_CACHE_BYTES =
+      Math.min(64L << 20, Runtime.getRuntime().maxMemory() / 8);
+  private static final int TILE_SIZE = TiledRenderer.DEFAULT_TILE_SIZE;
+  private static final int MAX_LEVEL = 20;
+  // Shapes covering less than this many pixels of a tile are skipped.
+  private static final double MIN_AREA = 0.25;
+  // Shapes less than this many pixels wide and high are drawn as a single pixel.
+  private static final double DOT_SIZE = 2;
+  // The shapes of a tile are looked up in a region this many canvas pixels larger on each side.
+  private static final int MARGIN = 1;
+
+  private final long maxBytes;
+  private final boolean directRectangles;
+  private final Runnable listener;
+  private final ExecutorService pool;
+  private final LinkedHashMap<Key, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true);
+  private final Map<Key, Job> pending = new HashMap<>();
+  private long bytes;
+  private List<Snapshot> snapshots;
+  private int width;
+  private int height;
+  private int preparedIndex = -1;
+  private Prepared prepared;
+  private int paintedIndex = -1;
+
+  /**
+   * The position of a tile in the pyramid of a snapshot.
+   */
+  private static final class Key {
+    private final int snapshot;
+    private final int level;
+    private final int column;
+    private final int row;
+
+    private Key(int snapshot, int level, int column, int row) {
+      this.snapshot = snapshot;
+      this.level = level;
+      this.column = column;
+      this.row = row;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return this.snapshot == key.snapshot && this.level == key.level
+          && this.column == key.column && this.row == key.row;
+    }
+
+    @Override
+    public int hashCode() {
+      return ((this.snapshot * 31 + this.level) * 31 + this.column) * 31 + this.row;
+    }
+  }
+
+  /**
+   * The shapes of a snapshot indexed by position. The index is built by the first tile drawn
+   * and shared by the others.
+   */
+  private static final class Prepared {
+    private final Snapshot snapshot;
+    private final int width;
+    private final int height;
+    private SpatialIndex index;
+
+    private Prepared(Snapshot snapshot, int width, int height) {
+      this.snapshot = snapshot;
+      this.width = width;
+      this.height = height;
+    }
+
+    /**
+     * Returns the visible shapes whose bounds overlap a region of the canvas, in drawing order.
+     *
+     * @param x      the left edge of the region
+     * @param y      the top edge of the region
+     * @param width  the width of the region
+     * @param height the height of the region
+     * @return the shapes
+     */
+    private synchronized List<IShape> query(double x, double y, double width, double height) {
+      if (this.index == null) {
+        this.index = SpatialIndex.of(RenderPlanner.visibleShapes(this.snapshot.getShapes(),
+            this.width, this.height));
+      }
+      return this.index.query(x, y, width, height);
+    }
+  }
+
+  /**
+   * A tile being drawn, which can be cancelled.
+   */
+  private static final class Job {
+    private volatile boolean cancelled;
+    private Future<?> future;
+
+    /**
+     * Cancels the tile, interrupting it if it has started.
+     */
+    private void cancel() {
+      this.cancelled = true;
+      this.future.cancel(true);
+    }
+  }
+
+  /**
+   * Constructs a pyramid with no album.
+   *
+   * @param maxBytes         the largest number of bytes of tiles to keep
+   * @param threads          the number of threads drawing tiles
+   * @param directRectangles true to fill rectangles straight into the pixels of the full size
+   *                         tiles
+   * @param listener         called on the Event Dispatch Thread whenever a tile has been drawn
+   * @throws IllegalArgumentException if the budget is negative or the number of threads is not
+   *                                  positive
+   */
+  TilePyramid(long maxBytes, int threads, boolean directRectangles, Runnable listener) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("Cache size cannot be negative");
+    }
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Number of threads must be positive");
+    }
+    this.maxBytes = maxBytes;
+    this.directRectangles = directRectangles;
+    this.listener = listener;
+    this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "tile-pyramid");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.NORM_PRIORITY - 1);
+      return thread;
+    });
+  }
+
+  /**
+   * Sets the album whose snapshots are drawn, cancelling every tile in progress and emptying the
+   * cache.
+   *
+   * @param snapshots the snapshots of the album
+   * @param width     the width of the canvas
+   * @param height    the height of the canvas
+   */
+  void setAlbum(List<Snapshot> snapshots, int width, int height) {
+    for (Job job : this.pending.values()) {
+      job.cancel();
+    }
+    this.pending.clear();
+    synchronized (this.tiles) {
+      this.tiles.clear();
+      this.bytes = 0;
+    }
+    this.snapshots = snapshots;
+    this.width = width;
+    this.height = height;
+    this.preparedIndex = -1;
+    this.prepared = null;
+    this.paintedIndex = -1;
+  }
+
+  /**
+   * Paints a view of a snapshot from the tiles that are cached, and queues the missing tiles for
+   * drawing. Tiles queued for an earlier view that this one does not need are cancelled.
+   *
+   * @param g       the graphics to paint with, whose origin is the top left corner of the view
+   * @param index   the index of the snapshot
+   * @param zoom    the number of screen pixels per canvas pixel
+   * @param originX the canvas x-coordinate shown at the left edge of the view
+   * @param originY the canvas y-coordinate shown at the top edge of the view
+   * @param width   the width of the view, in screen pixels
+   * @param height  the height of the view, in screen pixels
+   */
+  void paint(Graphics2D g, int index, double zoom, double originX, double originY, int width,
+             int height) {
+    if (index != this.preparedIndex) {
+      this.prepared = new Prepared(this.snapshots.get(index), this.width, this.height);
+      this.preparedIndex = index;
+    }
+    int level = level(zoom);
+    long span = (long) TILE_SIZE << level;
+    double left = Math.max(0, originX);
+    double top = Math.max(0, originY);
+    double right = Math.min(this.width, originX + width / zoom);
+    double bottom = Math.min(this.height, originY + height / zoom);
+    Set<Key> wanted = new HashSet<>();
+    if (left < right && top < bottom) {
+      g.setColor(Color.WHITE);
+      g.fillRect(screen(left, originX, zoom), screen(top, originY, zoom),
+          screen(right, originX, zoom) - screen(left, originX, zoom),
+          screen(bottom, originY, zoom) - screen(top, originY, zoom));
+      // Smoothing tiles as they are scaled costs more than the rest of the paint together.
+      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+          RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+      int fromColumn = (int) (left / span);
+      int fromRow = (int) (top / span);
+      int toColumn = (int) ((Math.ceil(right) - 1) / span);
+      int toRow = (int) ((Math.ceil(bottom) - 1) / span);
+      // Stand-ins for the missing tiles go first, so the tiles that are cached paint over them.
+      Set<Key> standIns = new HashSet<>();
+      for (int row = fromRow; row <= toRow; row++) {
+        for (int column = fromColumn; column <= toColumn; column++) {
+          Key key = new Key(index, level, column, row);
+          if (get(key) == null) {
+            wanted.add(key);
+            submit(key);
+            Key standIn = standIn(key);
+            if (standIn != null && standIns.add(standIn)) {
+              drawTile(g, standIn, get(standIn), zoom, originX, originY);
+            }
+          }
+        }
+      }
+      for (int row = fromRow; row <= toRow; row++) {
+        for (int column = fromColumn; column <= toColumn; column++) {
+          Key key = new Key(index, level, column, row);
+          if (!wanted.contains(key)) {
+            drawTile(g, key, get(key), zoom, originX, originY);
+          }
+        }
+      }
+    }
+    Iterator<Map.Entry<Key, Job>> jobs = this.pending.entrySet().iterator();
+    while (jobs.hasNext()) {
+      Map.Entry<Key, Job> entry = jobs.next();
+      if (!wanted.contains(entry.getKey())) {
+        entry.getValue().cancel();
+        jobs.remove();
+      }
+    }
+    this.paintedIndex = index;
+  }
+
+  /**
+   * Returns the level whose tiles a view at a zoom is painted from: the smallest level that is
+   * still at least as large as the view.
+   *
+   * @param zoom the number of screen pixels per canvas pixel
+   * @return the level, 0 for full size
+   */
+  static int level(double zoom) {
+    int level = 0;
+    while (level < MAX_LEVEL && zoom * (2L << level) <= 1) {
+      level++;
+    }
+    return level;
+  }
+
+  /**
+   * Returns the cached tile standing in for a missing one: the tile covering the same part of
+   * the canvas at the nearest smaller level, or else the same tile of the snapshot painted
+   * before.
+   *
+   * @param key the missing tile
+   * @return the stand-in, or null if none is cached
+   */
+  private Key standIn(Key key) {
+    for (int level = key.level + 1; level <= Math.min(MAX_LEVEL, key.level + 4); level++) {
+      int shift = level - key.level;
+      Key coarser = new Key(key.snapshot, level, key.column >> shift, key.row >> shift);
+      if (get(coarser) != null) {
+        return coarser;
+      }
+    }
+    if (this.paintedIndex >= 0 && this.paintedIndex != key.snapshot) {
+      Key previous = new Key(this.paintedIndex, key.level, key.column, key.row);
+      if (get(previous) != null) {
+        return previous;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Paints a tile scaled to a view.
+   *
+   * @param g       the graphics to paint with
+   * @param key     the position of the tile
+   * @param image   the image of the tile, or null to paint nothing
+   * @param zoom    the number of screen pixels per canvas pixel
+   * @param originX the canvas x-coordinate shown at the left edge of the view
+   * @param originY the canvas y-coordinate shown at the top edge of the view
+   */
+  private static void drawTile(Graphics2D g, Key key, BufferedImage image, double zoom,
+                               double originX, double originY) {
+    if (image == null) {
+      return;
+    }
+    long span = (long) TILE_SIZE << key.level;
+    double x = key.column * span;
+    double y = key.row * span;
+    // Both edges are rounded the same way for every tile, so neighbouring tiles meet exactly.
+    g.drawImage(image, screen(x, originX, zoom), screen(y, originY, zoom),
+        screen(x + ((long) image.getWidth() << key.level), originX, zoom),
+        screen(y + ((long) image.getHeight() << key.level), originY, zoom),
+        0, 0, image.getWidth(), image.getHeight(), null);
+  }
+
+  /**
+   * Returns the screen coordinate a canvas coordinate lands on.
+   *
+   * @param canvas the canvas coordinate
+   * @param origin the canvas coordinate at the edge of the view
+   * @param zoom   the number of screen pixels per canvas pixel
+   * @return the screen coordinate
+   */
+  private static int screen(double canvas, double origin, double zoom) {
+    return (int) Math.round((canvas - origin) * zoom);
+  }
+
+  /**
+   * Queues a tile for drawing unless it is queued already.
+   *
+   * @param key the position of the tile
+   */
+  private void submit(Key key) {
+    if (this.pending.containsKey(key)) {
+      return;
+    }
+    Job job = new Job();
+    Prepared prepared = this.prepared;
+    job.future = this.pool.submit(() -> {
+      if (job.cancelled) {
+        return;
+      }
+      BufferedImage image = draw(prepared, key);
+      if (image == null) {
+        return;
+      }
+      synchronized (this.tiles) {
+        if (job.cancelled) {
+          return;
+        }
+        put(key, image);
+      }
+      SwingUtilities.invokeLater(() -> {
+        if (this.pending.get(key) == job) {
+          this.pending.remove(key);
+          this.listener.run();
+        }
+      });
+    });
+    this.pending.put(key, job);
+  }
+
+  /**
+   * Returns a cached tile and marks it as the most recently used.
+   *
+   * @param key the position of the tile
+   * @return the image of the tile, or null if it is not cached
+   */
+  private BufferedImage get(Key key) {
+    synchronized (this.tiles) {
+      return this.tiles.get(key);
+    }
+  }
+
+  /**
+   * Adds a tile to the cache and evicts the least recently used tiles beyond the budget. The
+   * caller holds the lock of the cache.
+   *
+   * @param key   the position of the tile
+   * @param image the image of the tile
+   */
+  private void put(Key key, BufferedImage image) {
+    long size = 4L * image.getWidth() * image.getHeight();
+    BufferedImage old = this.tiles.put(key, image);
+    if (old != null) {
+      this.bytes -= 4L * old.getWidth() * old.getHeight();
+    }
+    this.bytes += size;
+    Iterator<BufferedImage> eldest = this.tiles.values().iterator();
+    while (this.bytes > this.maxBytes && eldest.hasNext()) {
+      BufferedImage evicted = eldest.next();
+      this.bytes -= 4L * evicted.getWidth() * evicted.getHeight();
+      eldest.remove();
+    }
+  }
+
+  /**
+   * Draws a tile on a new image of its own. Tiles along the right and bottom edges of the canvas
+   * are cut to it.
+   *
+   * @param prepared the indexed shapes of the snapshot
+   * @param key      the position of the tile
+   * @return the image of the tile, or null if the thread was interrupted
+   */
+  private BufferedImage draw(Prepared prepared, Key key) {
+    long span = (long) TILE_SIZE << key.level;
+    int x = (int) (key.column * span);
+    int y = (int) (key.row * span);
+    int scale = 1 << key.level;
+    BufferedImage image = new BufferedImage(
+        Math.min(TILE_SIZE, (prepared.width - x + scale - 1) / scale),
+        Math.min(TILE_SIZE, (prepared.height - y + scale - 1) / scale),
+        BufferedImage.TYPE_INT_RGB);
+    List<IShape> shapes = prepared.query(x - MARGIN, y - MARGIN, span + 2 * MARGIN,
+        span + 2 * MARGIN);
+    if (key.level == 0) {
+      try (ShapeRasterizer rasterizer = new ShapeRasterizer(image, this.directRectangles, x,
+          y)) {
+        rasterizer.clear();
+        return rasterizer.fillAll(shapes) ? image : null;
+      }
+    }
+    return drawReduced(image, shapes, x, y, key.level) ? image : null;
+  }
+
+  /**
+   * Draws shapes on the image of a tile of a smaller level, with the level of detail described
+   * above. Rectangles and ovals land on the pixels they would cover at full size, scaled down.
+   *
+   * @param image  the image of the tile
+   * @param shapes the shapes touching the tile, in drawing order
+   * @param x      the canvas x-coordinate of the tile's left edge
+   * @param y      the canvas y-coordinate of the tile's top edge
+   * @param level  the level of the tile
+   * @return true if every shape was drawn, false if the thread was interrupted
+   */
+  private static boolean drawReduced(BufferedImage image, List<IShape> shapes, int x, int y,
+                                     int level) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    // Java2D stores opaque pixels with the unused alpha byte set, so do the same.
+    Arrays.fill(pixels, 0xffffffff);
+    double scale = 1.0 / (1 << level);
+    Graphics2D g2d = image.createGraphics();
+    try {
+      int color = -1;
+      int count = 0;
+      for (IShape shape : shapes) {
+        if ((++count & 1023) == 0 && Thread.currentThread().isInterrupted()) {
+          return false;
+        }
+        double left;
+        double top;
+        double across;
+        double down;
+        // The same truncated pixel bounds the full size canvas is drawn with.
+        if (shape.getType() == ShapeType.RECTANGLE) {
+          left = (int) shape.getX();
+          top = (int) shape.getY();
+          across = (int) shape.getWidth();
+          down = (int) shape.getHeight();
+        } else if (shape.getType() == ShapeType.OVAL) {
+          left = (int) (shape.getX() - shape.getWidth());
+          top = (int) (shape.getY() - shape.getHeight());
+          across = (int) (shape.getWidth() * 2);
+          down = (int) (shape.getHeight() * 2);
+        } else {
+          continue;
+        }
+        left = (left - x) * scale;
+        top = (top - y) * scale;
+        across *= scale;
+        down *= scale;
+        if (!(across > 0) || !(down > 0) || across * down < MIN_AREA) {
+          continue;
+        }
+        int rgb = ShapeRasterizer.rgbOf(shape);
+        if (across < DOT_SIZE && down < DOT_SIZE) {
+          int dotX = (int) Math.floor(left + across / 2);
+          int dotY = (int) Math.floor(top + down / 2);
+          if (dotX >= 0 && dotX < width && dotY >= 0 && dotY < height) {
+            pixels[dotY * width + dotX] = 0xff000000 | rgb;
+          }
+        } else if (shape.getType() == ShapeType.RECTANGLE) {
+          long fromX = Math.round(left);
+          long fromY = Math.round(top);
+          long toX = Math.max(Math.round(left + across), fromX + 1);
+          long toY = Math.max(Math.round(top + down), fromY + 1);
+          fromX = Math.max(0, fromX);
+          fromY = Math.max(0, fromY);
+          toX = Math.min(width, toX);
+          toY = Math.min(height, toY);
+          for (long row = fromY; row < toY && fromX < toX; row++) {
+            int start = (int) row * width;
+            Arrays.fill(pixels, start + (int) fromX, start + (int) toX, 0xff000000 | rgb);
+          }
+        } else {
+          if (rgb != color) {
+            color = rgb;
+            g2d.setColor(ShapeRasterizer.awtColor(rgb));
+          }
+          g2d.fillOval((int) Math.round(left), (int) Math.round(top),
+              (int) Math.max(1, Math.round(across)), (int) Math.max(1, Math.round(down)));
+        }
+      }
+      return true;
+    } finally {
+      g2d.dispose();
+    }
+  }
+}
@@ -0,0 +1,201 @@
+package photoalbum.view;
+
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Vector;
+
+/**
+ * The TiledImage class presents a snapshot drawn by a {@link TiledRenderer} as an image of the
+ * whole canvas without ever holding the whole canvas in memory. The image is made of horizontal
+ * bands one tile high; a band is drawn, in parallel, the first time a pixel in it is asked for,
+ * and only the band last drawn is kept. An encoder that reads the image from top to bottom, as
+ * the PNG encoder of {@link javax.imageio.ImageIO} does, thus needs memory for a single band.
+ *
+ * <p>An image must not be read by several threads at once.</p>
+ */
+final class TiledImage implements RenderedImage {
+  private static final BufferedImage PROTOTYPE =
+      new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+  private final TiledRenderer renderer;
+  private final TiledRenderer.Tiles tiles;
+  private final int bandHeight;
+  private final int bands;
+  private int bandIndex = -1;
+  private BufferedImage band;
+
+  /**
+   * Constructs an image of a snapshot.
+   *
+   * @param renderer the renderer drawing the bands
+   * @param tiles    the snapshot's shapes, binned by the renderer
+   */
+  TiledImage(TiledRenderer renderer, TiledRenderer.Tiles tiles) {
+    this.renderer = renderer;
+    this.tiles = tiles;
+    this.bandHeight = tiles.tileSize();
+    this.bands = (int) (((long) tiles.height() + this.bandHeight - 1) / this.bandHeight);
+  }
+
+  @Override
+  public Raster getData(Rectangle rect) {
+    Rectangle area = rect.intersection(getBounds());
+    WritableRaster raster = Raster.createWritableRaster(
+        getSampleModel().createCompatibleSampleModel(Math.max(1, area.width),
+            Math.max(1, area.height)), new Point(area.x, area.y));
+    if (area.isEmpty()) {
+      return raster;
+    }
+    for (int index = area.y / this.bandHeight;
+         index <= (area.y + area.height - 1) / this.bandHeight; index++) {
+      int top = index * this.bandHeight;
+      Rectangle part = area.intersection(new Rectangle(0, top, this.tiles.width(),
+          this.bandHeight));
+      raster.setDataElements(part.x, part.y, band(index).getRaster()
+          .createChild(part.x, part.y - top, part.width, part.height, 0, 0, null));
+    }
+    return raster;
+  }
+
+  @Override
+  public Raster getData() {
+    return getData(getBounds());
+  }
+
+  @Override
+  public WritableRaster copyData(WritableRaster raster) {
+    if (raster == null) {
+      return (WritableRaster) getData();
+    }
+    Raster data = getData(raster.getBounds());
+    raster.setRect(data);
+    return raster;
+  }
+
+  @Override
+  public Raster getTile(int tileX, int tileY) {
+    return band(tileY).getRaster().createTranslatedChild(0, tileY * this.bandHeight);
+  }
+
+  @Override
+  public Vector<RenderedImage> getSources() {
+    return null;
+  }
+
+  @Override
+  public Object getProperty(String name) {
+    return Image.UndefinedProperty;
+  }
+
+  @Override
+  public String[] getPropertyNames() {
+    return null;
+  }
+
+  @Override
+  public ColorModel getColorModel() {
+    return PROTOTYPE.getColorModel();
+  }
+
+  @Override
+  public SampleModel getSampleModel() {
+    return PROTOTYPE.getSampleModel().createCompatibleSampleModel(this.tiles.width(),
+        this.bandHeight);
+  }
+
+  @Override
+  public int getWidth() {
+    return this.tiles.width();
+  }
+
+  @Override
+  public int getHeight() {
+    return this.tiles.height();
+  }
+
+  @Override
+  public int getMinX() {
+    return 0;
+  }
+
+  @Override
+  public int getMinY() {
+    return 0;
+  }
+
+  @Override
+  public int getNumXTiles() {
+    return 1;
+  }
+
+  @Override
+  public int getNumYTiles() {
+    return this.bands;
+  }
+
+  @Override
+  public int getMinTileX() {
+    return 0;
+  }
+
+  @Override
+  public int getMinTileY() {
+    return 0;
+  }
+
+  @Override
+  public int getTileWidth() {
+    return this.tiles.width();
+  }
+
+  @Override
+  public int getTileHeight() {
+    return this.bandHeight;
+  }
+
+  @Override
+  public int getTileGridXOffset() {
+    return 0;
+  }
+
+  @Override
+  public int getTileGridYOffset() {
+    return 0;
+  }
+
+  /**
+   * Returns the bounds of the image.
+   *
+   * @return the rectangle covering the canvas
+   */
+  private Rectangle getBounds() {
+    return new Rectangle(0, 0, this.tiles.width(), this.tiles.height());
+  }
+
+  /**
+   * Returns a band, drawing it unless it is the band drawn last. A band is a new image each
+   * time, so rasters handed out for earlier bands stay valid.
+   *
+   * @param index the index of the band, from the top
+   * @return the image of the band
+   */
+  private BufferedImage band(int index) {
+    if (index != this.bandIndex) {
+      int top = index * this.bandHeight;
+      BufferedImage image = new BufferedImage(this.tiles.width(),
+          Math.min(this.bandHeight, this.tiles.height() - top), BufferedImage.TYPE_INT_RGB);
+      this.band = null;
+      this.renderer.render(this.tiles, image, 0, top);
+      this.band = image;
+      this.bandIndex = index;
+    }
+    return this.band;
+  }
+}
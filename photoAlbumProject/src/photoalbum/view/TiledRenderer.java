@@ -0,0 +1,332 @@
+package photoalbum.view;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import photoalbum.model.IShape;
+import photoalbum.model.Snapshot;
+
+/**
+ * The TiledRenderer class draws canvases too large to be held in one image. The canvas is cut
+ * into square tiles of a fixed size, and the shapes of a snapshot that the {@link RenderPlanner}
+ * finds visible are binned by their pixel bounds into every tile they touch. Any part of the
+ * canvas can then be drawn by drawing just the tiles it overlaps, each on its own small image
+ * with only its own shapes, on a fork-join pool. Nothing is allocated for tiles that are not
+ * drawn, so memory follows the size of the part drawn rather than the size of the canvas.
+ *
+ * <p>A tile is drawn with Java2D shifted by the tile's origin. Java2D can rasterize the edge of
+ * an oval a pixel differently once it is shifted, so a tiled picture may differ from one drawn
+ * on a single image in a few pixels along the edges of ovals. The views only draw tiled when the
+ * canvas is too large for a single image.</p>
+ */
+final class TiledRenderer implements AutoCloseable {
+  /**
+   * The default width and height of a tile, in pixels.
+   */
+  static final int DEFAULT_TILE_SIZE = 256;
+  /**
+   * Canvases with more pixels than this, 64MB worth of image, are drawn in tiles.
+   */
+  static final long TILED_CANVAS_PIXELS = 1L << 24;
+
+  private final int tileSize;
+  private final boolean directRectangles;
+  private final ForkJoinPool pool;
+  private final ThreadLocal<BufferedImage> scratch;
+
+  /**
+   * The shapes of a snapshot binned by tile. The tiles of a canvas are numbered row by row, and
+   * the shapes of each tile are kept in drawing order.
+   */
+  static final class Tiles {
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int columns;
+    private final int rows;
+    private final IShape[] shapes;
+    // The shapes of tile t are shapes[members[starts[t]]] to shapes[members[starts[t + 1] - 1]].
+    private final int[] starts;
+    private final int[] members;
+
+    private Tiles(int width, int height, int tileSize, IShape[] shapes, int[] starts,
+                  int[] members) {
+      this.width = width;
+      this.height = height;
+      this.tileSize = tileSize;
+      this.columns = (int) (((long) width + tileSize - 1) / tileSize);
+      this.rows = (int) (((long) height + tileSize - 1) / tileSize);
+      this.shapes = shapes;
+      this.starts = starts;
+      this.members = members;
+    }
+
+    /**
+     * Returns the width of the canvas.
+     *
+     * @return the width in pixels
+     */
+    int width() {
+      return this.width;
+    }
+
+    /**
+     * Returns the height of the canvas.
+     *
+     * @return the height in pixels
+     */
+    int height() {
+      return this.height;
+    }
+
+    /**
+     * Returns the width and height of a tile.
+     *
+     * @return the tile size in pixels
+     */
+    int tileSize() {
+      return this.tileSize;
+    }
+
+    /**
+     * Returns the number of shapes drawn in a tile.
+     *
+     * @param column the column of the tile
+     * @param row    the row of the tile
+     * @return the number of shapes touching the tile
+     */
+    int count(int column, int row) {
+      int tile = row * this.columns + column;
+      return this.starts[tile + 1] - this.starts[tile];
+    }
+  }
+
+  /**
+   * Constructs a renderer.
+   *
+   * @param tileSize         the width and height of a tile, in pixels
+   * @param threads          the number of threads drawing tiles
+   * @param directRectangles true to fill rectangles straight into the pixels of the tiles
+   * @throws IllegalArgumentException if the tile size or number of threads is not positive
+   */
+  TiledRenderer(int tileSize, int threads, boolean directRectangles) {
+    if (tileSize <= 0) {
+      throw new IllegalArgumentException("Tile size must be positive");
+    }
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Number of threads must be positive");
+    }
+    this.tileSize = tileSize;
+    this.directRectangles = directRectangles;
+    this.pool = new ForkJoinPool(threads, pool -> {
+      ForkJoinWorkerThread thread =
+          ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName("tile-renderer-" + thread.getPoolIndex());
+      thread.setDaemon(true);
+      return thread;
+    }, null, false);
+    this.scratch = ThreadLocal.withInitial(
+        () -> new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_RGB));
+  }
+
+  /**
+   * Returns true if a canvas is too large to be drawn on a single image.
+   *
+   * @param width  the width of the canvas
+   * @param height the height of the canvas
+   * @return true if the canvas should be drawn in tiles
+   */
+  static boolean isLarge(int width, int height) {
+    return (long) width * height > TILED_CANVAS_PIXELS;
+  }
+
+  /**
+   * Bins the visible shapes of a snapshot by tile.
+   *
+   * @param snapshot the snapshot
+   * @param width    the width of the canvas
+   * @param height   the height of the canvas
+   * @return the binned shapes
+   */
+  Tiles bin(Snapshot snapshot, int width, int height) {
+    List<IShape> visible = RenderPlanner.visibleShapes(snapshot.getShapes(), width, height);
+    IShape[] shapes = visible.toArray(new IShape[0]);
+    int columns = (int) (((long) width + this.tileSize - 1) / this.tileSize);
+    int rows = (int) (((long) height + this.tileSize - 1) / this.tileSize);
+    Rectangle canvas = new Rectangle(0, 0, width, height);
+    // The first pass counts the shapes of each tile, the second fills them in.
+    int[] boxes = new int[shapes.length * 4];
+    int[] starts = new int[columns * rows + 1];
+    for (int i = 0; i < shapes.length; i++) {
+      Rectangle bounds = DirtyRegion.boundsOf(shapes[i]).intersection(canvas);
+      if (bounds.isEmpty()) {
+        // An empty column range keeps the shape out of every tile.
+        boxes[i * 4] = 1;
+        continue;
+      }
+      boxes[i * 4] = bounds.x / this.tileSize;
+      boxes[i * 4 + 1] = bounds.y / this.tileSize;
+      boxes[i * 4 + 2] = (bounds.x + bounds.width - 1) / this.tileSize;
+      boxes[i * 4 + 3] = (bounds.y + bounds.height - 1) / this.tileSize;
+      for (int row = boxes[i * 4 + 1]; row <= boxes[i * 4 + 3]; row++) {
+        for (int column = boxes[i * 4]; column <= boxes[i * 4 + 2]; column++) {
+          starts[row * columns + column + 1]++;
+        }
+      }
+    }
+    for (int t = 0; t < columns * rows; t++) {
+      starts[t + 1] += starts[t];
+    }
+    int[] members = new int[starts[columns * rows]];
+    int[] next = Arrays.copyOf(starts, columns * rows);
+    for (int i = 0; i < shapes.length; i++) {
+      for (int row = boxes[i * 4 + 1]; row <= boxes[i * 4 + 3]; row++) {
+        for (int column = boxes[i * 4]; column <= boxes[i * 4 + 2]; column++) {
+          members[next[row * columns + column]++] = i;
+        }
+      }
+    }
+    return new Tiles(width, height, this.tileSize, shapes, starts, members);
+  }
+
+  /**
+   * Draws one tile on a new image of its own. Tiles along the right and bottom edges of the
+   * canvas are cut to it.
+   *
+   * @param tiles  the binned shapes
+   * @param column the column of the tile
+   * @param row    the row of the tile
+   * @return the image of the tile
+   */
+  BufferedImage renderTile(Tiles tiles, int column, int row) {
+    int x = column * tiles.tileSize;
+    int y = row * tiles.tileSize;
+    BufferedImage image = new BufferedImage(Math.min(tiles.tileSize, tiles.width - x),
+        Math.min(tiles.tileSize, tiles.height - y), BufferedImage.TYPE_INT_RGB);
+    draw(tiles, column, row, image);
+    return image;
+  }
+
+  /**
+   * Draws the part of the canvas an image covers, tile by tile on the pool.
+   *
+   * @param tiles  the binned shapes
+   * @param target the image to draw on
+   * @param x      the canvas x-coordinate of the image's left edge
+   * @param y      the canvas y-coordinate of the image's top edge
+   * @return true if the whole image was drawn, false if the calling thread was interrupted
+   */
+  boolean render(Tiles tiles, BufferedImage target, int x, int y) {
+    Rectangle area = new Rectangle(x, y, target.getWidth(), target.getHeight())
+        .intersection(new Rectangle(0, 0, tiles.width, tiles.height));
+    if (area.width < target.getWidth() || area.height < target.getHeight()) {
+      try (ShapeRasterizer rasterizer = new ShapeRasterizer(target, false, x, y)) {
+        rasterizer.clear();
+      }
+    }
+    if (area.isEmpty()) {
+      return !Thread.currentThread().isInterrupted();
+    }
+    int fromColumn = area.x / tiles.tileSize;
+    int fromRow = area.y / tiles.tileSize;
+    int toColumn = (area.x + area.width - 1) / tiles.tileSize;
+    int toRow = (area.y + area.height - 1) / tiles.tileSize;
+    int columns = toColumn - fromColumn + 1;
+    this.pool.invoke(new TileTask(tiles, target, x, y, fromColumn, fromRow, columns, 0,
+        (toRow - fromRow + 1) * columns));
+    return !Thread.currentThread().isInterrupted();
+  }
+
+  /**
+   * Stops the threads of the pool.
+   */
+  @Override
+  public void close() {
+    this.pool.shutdownNow();
+  }
+
+  /**
+   * Draws the shapes of a tile on an image whose top left corner is the tile's.
+   *
+   * @param tiles  the binned shapes
+   * @param column the column of the tile
+   * @param row    the row of the tile
+   * @param image  the image to draw on
+   */
+  private void draw(Tiles tiles, int column, int row, BufferedImage image) {
+    int tile = row * tiles.columns + column;
+    try (ShapeRasterizer rasterizer = new ShapeRasterizer(image, this.directRectangles,
+        column * tiles.tileSize, row * tiles.tileSize)) {
+      rasterizer.clear();
+      for (int i = tiles.starts[tile]; i < tiles.starts[tile + 1]; i++) {
+        rasterizer.fill(tiles.shapes[tiles.members[i]]);
+      }
+    }
+  }
+
+  /**
+   * The TileTask class draws a range of the tiles overlapping a target image and copies them
+   * into it, splitting the range in half until a single tile is left.
+   */
+  private final class TileTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Tiles tiles;
+    private final BufferedImage target;
+    private final int x;
+    private final int y;
+    private final int fromColumn;
+    private final int fromRow;
+    private final int columns;
+    private final int from;
+    private final int to;
+
+    /**
+     * Constructs a task for tiles {@code from} to {@code to - 1} of the block of tiles
+     * overlapping the target, numbered row by row within the block.
+     */
+    private TileTask(Tiles tiles, BufferedImage target, int x, int y, int fromColumn,
+                     int fromRow, int columns, int from, int to) {
+      this.tiles = tiles;
+      this.target = target;
+      this.x = x;
+      this.y = y;
+      this.fromColumn = fromColumn;
+      this.fromRow = fromRow;
+      this.columns = columns;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.to - this.from > 1) {
+        int middle = (this.from + this.to) >>> 1;
+        invokeAll(new TileTask(this.tiles, this.target, this.x, this.y, this.fromColumn,
+                this.fromRow, this.columns, this.from, middle),
+            new TileTask(this.tiles, this.target, this.x, this.y, this.fromColumn,
+                this.fromRow, this.columns, middle, this.to));
+        return;
+      }
+      int column = this.fromColumn + this.from % this.columns;
+      int row = this.fromRow + this.from / this.columns;
+      BufferedImage image = scratch.get();
+      draw(this.tiles, column, row, image);
+      Rectangle tile = new Rectangle(column * this.tiles.tileSize, row * this.tiles.tileSize,
+          this.tiles.tileSize, this.tiles.tileSize);
+      Rectangle part = tile.intersection(new Rectangle(this.x, this.y, this.target.getWidth(),
+          this.target.getHeight())).intersection(new Rectangle(0, 0, this.tiles.width,
+          this.tiles.height));
+      if (!part.isEmpty()) {
+        this.target.getRaster().setDataElements(part.x - this.x, part.y - this.y,
+            image.getRaster().createChild(part.x - tile.x, part.y - tile.y, part.width,
+                part.height, 0, 0, null));
+      }
+    }
+  }
+}
@@ -1,27 +1,101 @@
 package photoalbum.view;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.CharArrayWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
-import photoalbum.model.Oval;
-import photoalbum.model.Rectangle;
-import photoalbum.model.Shape;
+import photoalbum.model.Color;
+import photoalbum.model.IShape;
+import photoalbum.model.ShapeType;
 import photoalbum.model.Snapshot;
 
 /**
- * The WebView class implements the IPhotoAlbumView interface and provides functionality
+ * The WebView class implements the StreamingView interface and provides functionality
  * to render snapshots of shapes in an HTML file using SVG (Scalable Vector Graphics).
+ *
+ * <p>The document is streamed to the file as it is produced, one element at a time, so memory
+ * use does not depend on the size of the album. If the output file name ends in {@code .gz} the
+ * document is gzip-compressed on the way out. Coordinates and sizes are written with six
+ * decimals, as {@code %f} would, unless another precision is given. Shapes that cannot be seen,
+ * because they lie off the canvas or under rectangles drawn after them, are left out, as decided
+ * by the {@link RenderPlanner}.</p>
+ *
+ * <p>With more than one thread, each snapshot is rendered to its own buffer on a worker thread
+ * and the buffers are written to the file in album order. At most two snapshots per thread are
+ * rendered ahead of the one being written.</p>
+ *
+ * <p>The snapshots can also be handed over one at a time as they are taken, through the
+ * {@link SnapshotSink} returned by {@link #open}, which writes the same document.</p>
  */
-public class WebView implements IPhotoAlbumView {
-  private final StringBuilder strBuilder = new StringBuilder("<!DOCTYPE html><html><head><title" +
-      ">Shapes " +
-      "Photo Album</title></head><body>");
+public class WebView implements StreamingView {
+  /**
+   * The number of decimals written by default, the same as {@code %f}.
+   */
+  public static final int DEFAULT_PRECISION = SvgWriter.DEFAULT_PRECISION;
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final String HEADER = "<!DOCTYPE html><html><head><title>Shapes Photo "
+      + "Album</title></head><body>";
+  private static final String FOOTER = "</body></html>";
+
+  private final int precision;
+  private final int threads;
+  private SvgWriter out;
   private int sizeX;
   private int sizeY;
 
+  /**
+   * Constructs a web view that writes numbers with six decimals.
+   */
+  public WebView() {
+    this(DEFAULT_PRECISION);
+  }
+
+  /**
+   * Constructs a web view that writes numbers with the given number of decimals.
+   *
+   * @param precision the number of decimals of coordinates and sizes
+   * @throws IllegalArgumentException if the precision is negative or above 15
+   */
+  public WebView(int precision) {
+    this(precision, 1);
+  }
+
+  /**
+   * Constructs a web view that writes numbers with the given number of decimals and renders
+   * snapshots on the given number of threads.
+   *
+   * @param precision the number of decimals of coordinates and sizes
+   * @param threads   the number of rendering threads
+   * @throws IllegalArgumentException if the precision is negative or above 15, or the number of
+   *                                  threads is not positive
+   */
+  public WebView(int precision, int threads) {
+    if (precision < 0 || precision > SvgWriter.MAX_PRECISION) {
+      throw new IllegalArgumentException("Precision must be between 0 and "
+          + SvgWriter.MAX_PRECISION);
+    }
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Number of threads must be positive");
+    }
+    this.precision = precision;
+    this.threads = threads;
+  }
+
   /**
    * Renders a list of snapshots into an HTML file with an SVG canvas for each snapshot.
    *
@@ -29,73 +103,341 @@ public class WebView implements IPhotoAlbumView {
    * @param sizeX          the width of the SVG canvas
    * @param sizeY          the height of the SVG canvas
    * @param outputFileName the name of the output HTML file
-   * @throws IOException if an error occurs while writing the HTML file
+   * @throws IOException if an error occurs while writing the HTML file, which is then deleted
    */
   public void render(List<Snapshot> snapshots, int sizeX, int sizeY, String outputFileName)
       throws IOException {
     this.sizeX = sizeX;
     this.sizeY = sizeY;
-    for (Snapshot snapshot : snapshots) {
-      renderSnapshot(snapshot);
-    }
-    strBuilder.append("</body></html>");
-    File file = new File(outputFileName);
-    BufferedWriter writer = null;
-    try {
-      writer = new BufferedWriter(new FileWriter(file));
-      writer.append(this.strBuilder);
-    } catch (Exception e) {
-      throw new IOException("Cannot write to:" + outputFileName);
+    try (WebSink sink = new WebSink(outputFileName, sizeX, sizeY,
+        snapshots.size() > 1 ? this.threads : 1)) {
+      this.out = sink.out;
+      try {
+        for (Snapshot snapshot : snapshots) {
+          sink.accept(snapshot);
+        }
+      } catch (IOException | RuntimeException e) {
+        sink.abort();
+        throw e;
+      }
     } finally {
-      if (writer != null) writer.close();
+      this.out = null;
     }
+  }
 
+  /**
+   * Starts writing an HTML file whose snapshots are handed over one at a time. Each is rendered
+   * as it comes, on the view's threads, and written in the order it was handed over.
+   *
+   * @param sizeX          the width of the SVG canvas
+   * @param sizeY          the height of the SVG canvas
+   * @param outputFileName the name of the output HTML file
+   * @return the sink the snapshots are handed to
+   * @throws IOException if the file cannot be opened
+   */
+  @Override
+  public SnapshotSink open(int sizeX, int sizeY, String outputFileName) throws IOException {
+    return new WebSink(outputFileName, sizeX, sizeY, this.threads);
   }
 
   /**
-   * Renders a single snapshot as an SVG canvas within an HTML file.
+   * Renders a single snapshot as an SVG canvas within an HTML file. It may only be called while
+   * {@link #render} is writing the file.
    *
    * @param snapshot the snapshot to render
+   * @throws IllegalStateException if no file is being written
+   * @throws UncheckedIOException  if the file cannot be written
    */
   public void renderSnapshot(Snapshot snapshot) {
-    String line = "<div><h1>%s</h1><p>Description: %s</p><svg width=\"%d\" height=\"%d\">";
-    line = String.format(line, snapshot.getSnapshotId(), snapshot.getDescription(), this.sizeX,
-        this.sizeY);
-    strBuilder.append(line);
-    for (Shape shape : snapshot.getShapes()) {
-      if (shape instanceof Rectangle) {
-        renderRectangle((Rectangle) (shape));
-      } else {
-        renderOval((Oval) shape);
-      }
+    try {
+      writeSnapshot(output(), snapshot, this.sizeX, this.sizeY);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
-    strBuilder.append("</svg></div><hr/>");
   }
 
   /**
    * Renders a rectangle as an SVG <rect> element.
    *
    * @param rec the rectangle to render
+   * @throws IllegalStateException if no file is being written
+   * @throws UncheckedIOException  if the file cannot be written
    */
-  public void renderRectangle(Rectangle rec) {
-    String line = "<rect x=\"%f\" y=\"%f\" width=\"%f\" height=\"%f\" fill=\"rgb(%d,%d,%d)\" />";
-    line = String.format(line, rec.getX(), rec.getY(), rec.getWidth(), rec.getHeight(),
-        (int) (rec.getColor().getRed() * 255), (int) (rec.getColor().getGreen() * 255),
-        (int) (rec.getColor().getBlue() * 255));
-    strBuilder.append(line);
+  public void renderRectangle(IShape rec) {
+    try {
+      writeRectangle(output(), rec);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 
   /**
    * Renders an oval as an SVG <ellipse> element.
    *
    * @param oval the oval to render
+   * @throws IllegalStateException if no file is being written
+   * @throws UncheckedIOException  if the file cannot be written
    */
-  public void renderOval(Oval oval) {
-    String line = "<ellipse cx=\"%f\" cy=\"%f\" rx=\"%f\" ry=\"%f\" fill=\"rgb(%d,%d,%d)\" />";
-    line = String.format(line, oval.getX(), oval.getY(), oval.getWidth(), oval.getHeight(),
-        (int) (oval.getColor().getRed() * 255), (int) (oval.getColor().getGreen() * 255),
-        (int) (oval.getColor().getBlue() * 255));
-    strBuilder.append(line);
+  public void renderOval(IShape oval) {
+    try {
+      writeOval(output(), oval);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Renders one snapshot to a buffer of its own.
+   *
+   * @param snapshot the snapshot to render
+   * @param sizeX    the width of the canvas
+   * @param sizeY    the height of the canvas
+   * @return the buffer holding the snapshot's markup
+   * @throws IOException never in practice, as the buffer is in memory
+   */
+  private CharArrayWriter renderToBuffer(Snapshot snapshot, int sizeX, int sizeY)
+      throws IOException {
+    CharArrayWriter buffer = new CharArrayWriter(BUFFER_SIZE);
+    SvgWriter writer = new SvgWriter(buffer, this.precision);
+    writeSnapshot(writer, snapshot, sizeX, sizeY);
+    writer.close();
+    return buffer;
+  }
+
+  /**
+   * Waits for a snapshot to be rendered.
+   *
+   * @param future the pending snapshot
+   * @return the buffer holding the snapshot's markup
+   * @throws IOException if the thread is interrupted or the snapshot could not be rendered
+   */
+  private static CharArrayWriter await(Future<CharArrayWriter> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while rendering", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Writes a snapshot as an SVG canvas.
+   *
+   * @param out      the writer
+   * @param snapshot the snapshot
+   * @param sizeX    the width of the canvas
+   * @param sizeY    the height of the canvas
+   * @throws IOException if the markup cannot be written
+   */
+  private static void writeSnapshot(SvgWriter out, Snapshot snapshot, int sizeX, int sizeY)
+      throws IOException {
+    out.append("<div><h1>").append(snapshot.getSnapshotId()).append("</h1><p>Description: ")
+        .append(snapshot.getDescription()).append("</p><svg width=\"").append(sizeX)
+        .append("\" height=\"").append(sizeY).append("\">");
+    for (IShape shape : RenderPlanner.visibleShapes(snapshot.getShapes(), sizeX, sizeY)) {
+      if (shape.getType() == ShapeType.RECTANGLE) {
+        writeRectangle(out, shape);
+      } else {
+        writeOval(out, shape);
+      }
+    }
+    out.append("</svg></div><hr/>");
+  }
+
+  /**
+   * Writes a rectangle as an SVG <rect> element.
+   *
+   * @param out the writer
+   * @param rec the rectangle
+   * @throws IOException if the markup cannot be written
+   */
+  private static void writeRectangle(SvgWriter out, IShape rec) throws IOException {
+    out.append("<rect x=\"").append(rec.getX()).append("\" y=\"").append(rec.getY())
+        .append("\" width=\"").append(rec.getWidth()).append("\" height=\"")
+        .append(rec.getHeight()).append('"');
+    writeFill(out, rec.getColor());
+  }
+
+  /**
+   * Writes an oval as an SVG <ellipse> element.
+   *
+   * @param out  the writer
+   * @param oval the oval
+   * @throws IOException if the markup cannot be written
+   */
+  private static void writeOval(SvgWriter out, IShape oval) throws IOException {
+    out.append("<ellipse cx=\"").append(oval.getX()).append("\" cy=\"").append(oval.getY())
+        .append("\" rx=\"").append(oval.getWidth()).append("\" ry=\"")
+        .append(oval.getHeight()).append('"');
+    writeFill(out, oval.getColor());
+  }
+
+  /**
+   * Writes the fill attribute of a shape and closes its element.
+   *
+   * @param out   the writer
+   * @param color the color of the shape
+   * @throws IOException if the markup cannot be written
+   */
+  private static void writeFill(SvgWriter out, Color color) throws IOException {
+    out.append(" fill=\"").append(color.toRgbString()).append("\" />");
+  }
+
+  /**
+   * Opens the output file for writing, compressing it if its name ends in {@code .gz}.
+   *
+   * @param outputFileName the name of the output file
+   * @return a writer to the file
+   * @throws IOException if the file cannot be opened
+   */
+  private SvgWriter openFile(String outputFileName) throws IOException {
+    OutputStream out = new FileOutputStream(outputFileName);
+    try {
+      if (outputFileName.endsWith(".gz")) {
+        out = new GZIPOutputStream(out, BUFFER_SIZE);
+      }
+    } catch (IOException e) {
+      out.close();
+      throw e;
+    }
+    return new SvgWriter(new OutputStreamWriter(new BufferedOutputStream(out, BUFFER_SIZE),
+        StandardCharsets.UTF_8), this.precision);
   }
-}
 
+  /**
+   * Returns the writer of the file being rendered.
+   *
+   * @return the writer
+   * @throws IllegalStateException if no file is being written
+   */
+  private SvgWriter output() {
+    if (this.out == null) {
+      throw new IllegalStateException("Snapshots can only be rendered to a file");
+    }
+    return this.out;
+  }
+
+  /**
+   * The WebSink class writes the HTML file of an album as its snapshots are handed over. With
+   * more than one thread, each snapshot is rendered to its own buffer on a pool of threads
+   * started with the first snapshot, and at most two snapshots per thread are rendered ahead of
+   * the one being written. A sink that has been aborted deletes the file when it is closed
+   * rather than finishing it.
+   */
+  private final class WebSink implements SnapshotSink {
+    private final String outputFileName;
+    private final SvgWriter out;
+    private final int sizeX;
+    private final int sizeY;
+    private final int threads;
+    private final Deque<Future<CharArrayWriter>> pending = new ArrayDeque<>();
+    private ExecutorService pool;
+    private boolean aborted;
+
+    /**
+     * Opens the file and writes the start of the document.
+     *
+     * @param outputFileName the name of the output HTML file
+     * @param sizeX          the width of the SVG canvas
+     * @param sizeY          the height of the SVG canvas
+     * @param threads        the number of rendering threads
+     * @throws IOException if the file cannot be opened
+     */
+    private WebSink(String outputFileName, int sizeX, int sizeY, int threads)
+        throws IOException {
+      this.outputFileName = outputFileName;
+      this.sizeX = sizeX;
+      this.sizeY = sizeY;
+      this.threads = threads;
+      try {
+        this.out = openFile(outputFileName);
+      } catch (IOException e) {
+        throw new IOException("Cannot write to:" + outputFileName, e);
+      }
+      try {
+        this.out.append(HEADER);
+      } catch (IOException e) {
+        this.out.close();
+        throw new IOException("Cannot write to:" + outputFileName, e);
+      }
+    }
+
+    @Override
+    public void accept(Snapshot snapshot) throws IOException {
+      try {
+        if (this.threads == 1) {
+          writeSnapshot(this.out, snapshot, this.sizeX, this.sizeY);
+          return;
+        }
+        if (this.pool == null) {
+          this.pool = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "web-renderer");
+            thread.setDaemon(true);
+            return thread;
+          });
+        }
+        if (this.pending.size() >= this.threads * 2) {
+          this.out.append(await(this.pending.poll()));
+        }
+        this.pending.add(this.pool.submit(() -> renderToBuffer(snapshot, this.sizeX,
+            this.sizeY)));
+      } catch (IOException e) {
+        throw new IOException("Cannot write to:" + this.outputFileName, e);
+      }
+    }
+
+    @Override
+    public void abort() {
+      this.aborted = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (this.aborted) {
+        discard();
+        return;
+      }
+      try (SvgWriter out = this.out) {
+        while (!this.pending.isEmpty()) {
+          out.append(await(this.pending.poll()));
+        }
+        out.append(FOOTER);
+      } catch (IOException e) {
+        throw new IOException("Cannot write to:" + this.outputFileName, e);
+      } finally {
+        if (this.pool != null) {
+          this.pool.shutdownNow();
+        }
+      }
+    }
+
+    /**
+     * Stops the snapshots still being rendered and deletes the file without writing the end of
+     * the document.
+     *
+     * @throws IOException if the file cannot be closed or deleted
+     */
+    private void discard() throws IOException {
+      for (Future<CharArrayWriter> render : this.pending) {
+        render.cancel(true);
+      }
+      this.pending.clear();
+      if (this.pool != null) {
+        this.pool.shutdownNow();
+      }
+      try {
+        this.out.close();
+      } finally {
+        Files.deleteIfExists(Paths.get(this.outputFileName));
+      }
+    }
+  }
+}
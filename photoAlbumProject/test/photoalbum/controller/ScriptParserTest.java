@@ -0,0 +1,98 @@
+package photoalbum.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+
+import photoalbum.model.IShape;
+import photoalbum.model.PhotoAlbumModel;
+import photoalbum.model.Snapshot;
+
+/**
+ * Tests for the ScriptParser class, run through a ModelCommandHandler so the parsed commands
+ * end up in a PhotoAlbumModel.
+ */
+public class ScriptParserTest {
+
+  /**
+   * Parses a script into a new model.
+   *
+   * @param script the script
+   * @return the model
+   * @throws IOException never, as the script is read from memory
+   */
+  private static PhotoAlbumModel parse(String script) throws IOException {
+    PhotoAlbumModel model = new PhotoAlbumModel();
+    new ScriptParser(new ModelCommandHandler(model))
+        .parse(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)));
+    return model;
+  }
+
+  @Test
+  public void testNonAsciiShapeNames() throws IOException {
+    PhotoAlbumModel model = parse("shape aé rectangle 0 0 10 10 255 0 0\n"
+        + "shape aè oval 5 5 10 10 0 255 0\n"
+        + "move aé 20 30\n"
+        + "snapshot\n");
+    List<IShape> shapes = model.getSnapshots().get(0).getShapes();
+    assertEquals(2, shapes.size());
+    assertEquals("aé", shapes.get(0).getName());
+    assertEquals(20, shapes.get(0).getX(), 0);
+    assertEquals(30, shapes.get(0).getY(), 0);
+    assertEquals("aè", shapes.get(1).getName());
+    assertEquals(5, shapes.get(1).getX(), 0);
+  }
+
+  @Test
+  public void testNonAsciiSnapshotDescriptions() throws IOException {
+    List<Snapshot> snapshots = parse("shape R rectangle 0 0 10 10 0 0 0\n"
+        + "snapshot Menü\n"
+        + "snapshot Grüße aus Köln \r\n"
+        + "snapshot 東京\n").getSnapshots();
+    assertEquals("Menü", snapshots.get(0).getDescription());
+    assertEquals("Grüße aus Köln", snapshots.get(1).getDescription());
+    assertEquals("東京", snapshots.get(2).getDescription());
+  }
+
+  @Test
+  public void testTabsAndCarriageReturnsSeparateTokens() throws IOException {
+    PhotoAlbumModel model = parse("shape\tR rectangle  0 0 10 10 0 0 0\r\n"
+        + "  resize R\t40 50\r\n"
+        + "snapshot\r\n");
+    IShape shape = model.getSnapshots().get(0).getShapes().get(0);
+    assertEquals("R", shape.getName());
+    assertEquals(40, shape.getWidth(), 0);
+    assertEquals(50, shape.getHeight(), 0);
+  }
+
+  @Test
+  public void testErrorAfterNonAsciiNameReportsPosition() throws IOException {
+    try {
+      parse("shape R rectangle 0 0 10 10 0 0 0\n"
+          + "move é x 1\n");
+      fail("An invalid number should be rejected");
+    } catch (ScriptException e) {
+      assertEquals(2, e.getLine());
+      // Columns count bytes, and é takes two.
+      assertEquals(9, e.getColumn());
+      assertEquals("invalid number 'x'", e.getReason());
+    }
+  }
+
+  @Test
+  public void testDuplicateNonAsciiNameIsRejected() throws IOException {
+    try {
+      parse("shape é rectangle 0 0 10 10 0 0 0\n"
+          + "shape é oval 0 0 10 10 0 0 0\n");
+      fail("A shape name used twice should be rejected");
+    } catch (ScriptException e) {
+      assertEquals(2, e.getLine());
+    }
+  }
+}
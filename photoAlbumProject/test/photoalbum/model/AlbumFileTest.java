@@ -0,0 +1,292 @@
+package photoalbum.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for the AlbumFile class: albums saved and loaded back must be the same album, and a
+ * corrupt file must be reported as an IOException.
+ */
+public class AlbumFileTest {
+  private static final int MAGIC = 0x50414C42;
+  private static final int VERSION = 1;
+
+  /**
+   * Builds an album with more snapshots than its keyframe interval, so that the file holds
+   * keyframes, deltas, removed shapes and shapes shared between snapshots.
+   *
+   * @param packed true to store the album's shapes packed
+   * @return the album
+   */
+  private static PhotoAlbumModel album(boolean packed) {
+    PhotoAlbumModel model = new PhotoAlbumModel(4, packed);
+    model.addShape(new Rectangle("R", 200, 200, 50, 100, new Color(1, 0, 0)));
+    model.addShape(new Oval("O", 500, 100, 60, 30, new Color(0, 0, 1)));
+    model.addShape(new Rectangle("Grüße", 10, 20, 30, 40, new Color(0.1234, 0.5, 0.75)));
+    model.AddSnapshot("Start");
+    for (int i = 0; i < 10; i++) {
+      model.move("R", 200 + i * 10, 200 - i * 5);
+      if (i % 3 == 0) {
+        model.resize("O", 60 + i, 30 + i);
+      }
+      if (i == 4) {
+        model.remove("Grüße");
+      }
+      if (i == 6) {
+        model.addShape(new Oval("S" + i, i, i, 5, 5, new Color(0, 1, 0)));
+      }
+      model.changeColor("O", new Color(0, i / 10.0, 1));
+      model.AddSnapshot(i % 2 == 0 ? "" : "Step " + i);
+    }
+    model.move("O", 1, 2);
+    return model;
+  }
+
+  /**
+   * Saves an album to memory and loads it back.
+   *
+   * @param model  the album
+   * @param packed true to load it into a packed album
+   * @return the album loaded
+   * @throws IOException never, as the album is kept in memory
+   */
+  private static PhotoAlbumModel roundTrip(PhotoAlbumModel model, boolean packed)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    AlbumFile.write(model, out);
+    return AlbumFile.read(new ByteArrayInputStream(out.toByteArray()), packed);
+  }
+
+  /**
+   * Checks that two lists of shapes hold the same shapes in the same order.
+   *
+   * @param expected the shapes expected
+   * @param actual   the shapes found
+   */
+  private static void assertSameShapes(List<IShape> expected, List<IShape> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      IShape e = expected.get(i);
+      IShape a = actual.get(i);
+      assertEquals(e.getName(), a.getName());
+      assertEquals(e.getType(), a.getType());
+      assertEquals(e.getX(), a.getX(), 0);
+      assertEquals(e.getY(), a.getY(), 0);
+      assertEquals(e.getWidth(), a.getWidth(), 0);
+      assertEquals(e.getHeight(), a.getHeight(), 0);
+      assertEquals(e.getColor(), a.getColor());
+    }
+  }
+
+  /**
+   * Checks that two albums hold the same snapshots and the same current shapes.
+   *
+   * @param expected the album expected
+   * @param actual   the album found
+   */
+  private static void assertSameAlbum(PhotoAlbumModel expected, PhotoAlbumModel actual) {
+    List<Snapshot> e = expected.getSnapshots();
+    List<Snapshot> a = actual.getSnapshots();
+    assertEquals(e.size(), a.size());
+    for (int i = 0; i < e.size(); i++) {
+      assertEquals(e.get(i).getSnapshotId(), a.get(i).getSnapshotId());
+      assertEquals(e.get(i).getTimestamp(), a.get(i).getTimestamp());
+      assertEquals(e.get(i).getDescription(), a.get(i).getDescription());
+      assertSameShapes(e.get(i).getShapes(), a.get(i).getShapes());
+    }
+    assertSameShapes(expected.getShapes(), actual.getShapes());
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    PhotoAlbumModel model = album(false);
+    assertSameAlbum(model, roundTrip(model, false));
+  }
+
+  @Test
+  public void testRoundTripPacked() throws IOException {
+    PhotoAlbumModel model = album(true);
+    assertSameAlbum(model, roundTrip(model, true));
+    assertSameAlbum(model, roundTrip(model, false));
+  }
+
+  @Test
+  public void testRoundTripEmptyAlbum() throws IOException {
+    PhotoAlbumModel model = new PhotoAlbumModel();
+    assertSameAlbum(model, roundTrip(model, false));
+  }
+
+  @Test
+  public void testLoadedAlbumCanBeEdited() throws IOException {
+    PhotoAlbumModel model = album(false);
+    PhotoAlbumModel loaded = roundTrip(model, false);
+    model.move("R", 7, 8);
+    model.AddSnapshot("After");
+    loaded.move("R", 7, 8);
+    loaded.AddSnapshot("After");
+    List<Snapshot> e = model.getSnapshots();
+    List<Snapshot> a = loaded.getSnapshots();
+    assertEquals(e.size(), a.size());
+    assertSameShapes(e.get(e.size() - 1).getShapes(), a.get(a.size() - 1).getShapes());
+  }
+
+  @Test
+  public void testSaveAndLoadFile() throws IOException {
+    Path file = Files.createTempFile("album-", ".alb");
+    try {
+      PhotoAlbumModel model = album(false);
+      AlbumFile.save(model, file);
+      assertSameAlbum(model, AlbumFile.load(file));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testSharedShapesStaySharedAfterLoading() throws IOException {
+    // "Grüße" is left alone until it is removed, so snapshots 1 to 4 share it.
+    for (PhotoAlbumModel model : List.of(album(false), roundTrip(album(false), false))) {
+      List<Snapshot> snapshots = model.getSnapshots();
+      assertSame(snapshots.get(1).getShapes().get(2), snapshots.get(4).getShapes().get(2));
+    }
+  }
+
+  /**
+   * Starts a file with a valid header.
+   *
+   * @param keyframeInterval the keyframe interval written
+   * @param snapshots        the number of snapshots written
+   * @return the stream holding the header
+   * @throws IOException never, as the file is kept in memory
+   */
+  private static ByteArrayOutputStream header(int keyframeInterval, int snapshots)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(keyframeInterval);
+    out.writeInt(snapshots);
+    return bytes;
+  }
+
+  /**
+   * Checks that reading a file fails with the IOException reported for corrupt files.
+   *
+   * @param file the contents of the file
+   */
+  private static void assertCorrupt(byte[] file) {
+    try {
+      AlbumFile.read(new ByteArrayInputStream(file));
+      fail("A corrupt file should be rejected");
+    } catch (IOException e) {
+      assertEquals("Corrupt photo album file", e.getMessage());
+    }
+  }
+
+  /**
+   * Writes the start of a shape version holding one shape, up to the shape's reference.
+   *
+   * @param shapeIndex the reference to the shape
+   * @return the file so far
+   * @throws IOException never, as the file is kept in memory
+   */
+  private static ByteArrayOutputStream oneShape(int shapeIndex) throws IOException {
+    ByteArrayOutputStream bytes = header(32, 0);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(0);
+    out.writeInt(1);
+    out.writeInt(shapeIndex);
+    return bytes;
+  }
+
+  @Test
+  public void testNegativeShapeIndexIsCorrupt() throws IOException {
+    assertCorrupt(oneShape(-2).toByteArray());
+    assertCorrupt(oneShape(Integer.MIN_VALUE).toByteArray());
+  }
+
+  @Test
+  public void testNegativeStringLengthIsCorrupt() throws IOException {
+    ByteArrayOutputStream bytes = header(32, 1);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0);
+    out.writeInt(-5);
+    assertCorrupt(bytes.toByteArray());
+  }
+
+  @Test
+  public void testHugeStringLengthIsCorrupt() throws IOException {
+    ByteArrayOutputStream bytes = header(32, 1);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0);
+    out.writeInt(Integer.MAX_VALUE - 8);
+    out.write("short".getBytes(StandardCharsets.UTF_8));
+    assertCorrupt(bytes.toByteArray());
+  }
+
+  @Test
+  public void testNegativeCountsAreCorrupt() throws IOException {
+    assertCorrupt(header(32, -1).toByteArray());
+    ByteArrayOutputStream bytes = header(32, 0);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(1);
+    out.writeInt(-1);
+    assertCorrupt(bytes.toByteArray());
+  }
+
+  @Test
+  public void testNegativeSlotIsCorrupt() throws IOException {
+    ByteArrayOutputStream bytes = header(32, 0);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(1);
+    out.writeInt(1);
+    out.writeInt(-3);
+    out.writeInt(-1);
+    assertCorrupt(bytes.toByteArray());
+  }
+
+  @Test
+  public void testBadKeyframeIntervalIsCorrupt() throws IOException {
+    assertCorrupt(header(0, 0).toByteArray());
+  }
+
+  @Test
+  public void testBadTimestampIsCorrupt() throws IOException {
+    ByteArrayOutputStream bytes = header(32, 1);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0);
+    out.writeInt(2);
+    out.write("id".getBytes(StandardCharsets.UTF_8));
+    out.writeLong(0);
+    out.writeInt(-1);
+    assertCorrupt(bytes.toByteArray());
+  }
+
+  @Test
+  public void testBadPackedColorIsCorrupt() throws IOException {
+    ByteArrayOutputStream bytes = oneShape(0);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(2);
+    out.writeInt(0);
+    out.writeInt(1);
+    out.write('R');
+    for (int i = 0; i < 4; i++) {
+      out.writeDouble(1);
+    }
+    out.writeInt(0x7F000000);
+    assertCorrupt(bytes.toByteArray());
+  }
+}
@@ -0,0 +1,360 @@
+package photoalbum.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the SpatialIndex class and the album queries built on it: after any sequence of
+ * changes, every query must find exactly the shapes a search through all of them would find, in
+ * the same order.
+ */
+public class SpatialIndexTest {
+  private static final int OPERATIONS = 60000;
+
+  /**
+   * Makes a random shape. Most are small, a few cover no pixels at all and a few span far more
+   * cells than the index lists a shape in.
+   *
+   * @param random the source of randomness
+   * @param name   the name of the shape
+   * @return the shape
+   */
+  private static Shape randomShape(Random random, String name) {
+    double x = random.nextInt(2100) - 100;
+    double y = random.nextInt(2100) - 100;
+    double[] size = randomSize(random);
+    Color color = new Color(random.nextDouble(), random.nextDouble(), random.nextDouble());
+    return random.nextBoolean() ? new Rectangle(name, x, y, size[0], size[1], color)
+        : new Oval(name, x, y, size[0], size[1], color);
+  }
+
+  /**
+   * Makes a random width and height for a shape.
+   *
+   * @param random the source of randomness
+   * @return the width and height
+   */
+  private static double[] randomSize(Random random) {
+    int kind = random.nextInt(50);
+    if (kind == 0) {
+      return new double[] {random.nextInt(6) - 5, random.nextInt(100)};
+    }
+    if (kind == 1) {
+      return new double[] {1000 + random.nextInt(2000), 1000 + random.nextInt(2000)};
+    }
+    return new double[] {1 + random.nextInt(120), 1 + random.nextInt(120)};
+  }
+
+  /**
+   * Returns the left, top, right and bottom edges of the pixels a shape may cover, or null if it
+   * covers none.
+   *
+   * @param shape the shape
+   * @return the bounds of the shape
+   */
+  private static double[] bounds(IShape shape) {
+    double w = shape.getWidth();
+    double h = shape.getHeight();
+    if (w <= 0 || h <= 0) {
+      return null;
+    }
+    double x = shape.getX();
+    double y = shape.getY();
+    return shape.getType() == ShapeType.OVAL ? new double[] {x - w, y - h, x + w, y + h}
+        : new double[] {x, y, x + w, y + h};
+  }
+
+  /**
+   * Returns true if a shape's bounds overlap a region of positive size.
+   *
+   * @param shape  the shape
+   * @param x      the left edge of the region
+   * @param y      the top edge of the region
+   * @param width  the width of the region
+   * @param height the height of the region
+   * @return true if the two overlap
+   */
+  private static boolean overlaps(IShape shape, double x, double y, double width,
+                                  double height) {
+    double[] b = bounds(shape);
+    return b != null && width > 0 && height > 0
+        && b[0] < x + width && x < b[2] && b[1] < y + height && y < b[3];
+  }
+
+  /**
+   * Returns true if a shape covers a point, following the actual outline of ovals.
+   *
+   * @param shape the shape
+   * @param x     the x-coordinate of the point
+   * @param y     the y-coordinate of the point
+   * @return true if the shape covers the point
+   */
+  private static boolean covers(IShape shape, double x, double y) {
+    if (bounds(shape) == null) {
+      return false;
+    }
+    if (shape.getType() == ShapeType.OVAL) {
+      double dx = (x - shape.getX()) / shape.getWidth();
+      double dy = (y - shape.getY()) / shape.getHeight();
+      return dx * dx + dy * dy <= 1;
+    }
+    return x >= shape.getX() && x < shape.getX() + shape.getWidth()
+        && y >= shape.getY() && y < shape.getY() + shape.getHeight();
+  }
+
+  /**
+   * Checks that two lists of shapes hold equal shapes in the same order.
+   *
+   * @param expected the shapes expected
+   * @param actual   the shapes found
+   */
+  private static void assertSameShapes(List<? extends IShape> expected,
+                                       List<? extends IShape> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertSameShape(expected.get(i), actual.get(i));
+    }
+  }
+
+  /**
+   * Checks that two shapes are equal, or both null.
+   *
+   * @param expected the shape expected
+   * @param actual   the shape found
+   */
+  private static void assertSameShape(IShape expected, IShape actual) {
+    if (expected == null) {
+      assertNull(actual);
+      return;
+    }
+    assertEquals(expected.getName(), actual.getName());
+    assertEquals(expected.getType(), actual.getType());
+    assertEquals(expected.getX(), actual.getX(), 0);
+    assertEquals(expected.getY(), actual.getY(), 0);
+    assertEquals(expected.getWidth(), actual.getWidth(), 0);
+    assertEquals(expected.getHeight(), actual.getHeight(), 0);
+    assertEquals(expected.getColor(), actual.getColor());
+  }
+
+  /**
+   * Makes a random query region, at times one of zero size or one covering the whole canvas.
+   *
+   * @param random the source of randomness
+   * @return the left edge, top edge, width and height of the region
+   */
+  private static double[] randomRegion(Random random) {
+    int kind = random.nextInt(20);
+    if (kind == 0) {
+      return new double[] {-5000, -5000, 10000, 10000};
+    }
+    if (kind == 1) {
+      return new double[] {random.nextInt(2000), random.nextInt(2000), 0, random.nextInt(50)};
+    }
+    return new double[] {random.nextInt(2400) - 200, random.nextInt(2400) - 200,
+        1 + random.nextInt(400), 1 + random.nextInt(400)};
+  }
+
+  /**
+   * Checks every kind of query against a search through an array of shapes keyed by position.
+   *
+   * @param index  the index
+   * @param shapes the shapes stored in the index, null where a key holds none
+   * @param random the source of randomness
+   */
+  private static void checkIndex(SpatialIndex index, IShape[] shapes, Random random) {
+    double[] r = randomRegion(random);
+    List<IShape> inRegion = new ArrayList<>();
+    double px = random.nextInt(2200) - 100;
+    double py = random.nextInt(2200) - 100;
+    List<IShape> atPoint = new ArrayList<>();
+    int size = 0;
+    for (IShape shape : shapes) {
+      if (shape != null) {
+        size++;
+        if (overlaps(shape, r[0], r[1], r[2], r[3])) {
+          inRegion.add(shape);
+        }
+        if (covers(shape, px, py)) {
+          atPoint.add(shape);
+        }
+      }
+    }
+    assertEquals(size, index.size());
+    List<IShape> found = index.query(r[0], r[1], r[2], r[3]);
+    assertEquals(inRegion.size(), found.size());
+    for (int i = 0; i < found.size(); i++) {
+      assertSame(inRegion.get(i), found.get(i));
+    }
+    List<IShape> covering = index.queryPoint(px, py);
+    assertEquals(atPoint.size(), covering.size());
+    for (int i = 0; i < covering.size(); i++) {
+      assertSame(atPoint.get(i), covering.get(i));
+    }
+    assertSame(atPoint.isEmpty() ? null : atPoint.get(atPoint.size() - 1),
+        index.shapeAt(px, py));
+  }
+
+  @Test
+  public void testIndexMatchesSearchThroughAllShapes() {
+    Random random = new Random(5004);
+    for (double cellSize : new double[] {SpatialIndex.DEFAULT_CELL_SIZE, 16}) {
+      SpatialIndex index = new SpatialIndex(cellSize);
+      IShape[] shapes = new IShape[600];
+      for (int op = 0; op < OPERATIONS / 2; op++) {
+        int key = random.nextInt(shapes.length);
+        int kind = random.nextInt(100);
+        if (kind < 45) {
+          shapes[key] = randomShape(random, "S" + op);
+          index.put(key, shapes[key]);
+        } else if (kind < 65) {
+          shapes[key] = null;
+          index.remove(key);
+        } else if (kind == 65 && random.nextInt(20) == 0) {
+          Arrays.fill(shapes, null);
+          index.clear();
+        } else {
+          checkIndex(index, shapes, random);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testIndexOfList() {
+    Random random = new Random(17);
+    List<IShape> shapes = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      shapes.add(randomShape(random, "S" + i));
+    }
+    SpatialIndex index = SpatialIndex.of(shapes);
+    IShape[] keyed = shapes.toArray(new IShape[0]);
+    for (int i = 0; i < 1000; i++) {
+      checkIndex(index, keyed, random);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeKeyRejected() {
+    new SpatialIndex().put(-1, new Rectangle("R", 0, 0, 1, 1, new Color(0, 0, 0)));
+  }
+
+  /**
+   * Edits an album at random and checks its region and point queries after many of the edits
+   * against a search through a copy of its shapes. The album grows and shrinks in turn, so that
+   * enough shapes are removed for it to compact its slots several times.
+   *
+   * @param packed true to store the album's shapes packed
+   */
+  private static void checkAlbum(boolean packed) {
+    Random random = new Random(packed ? 1 : 2);
+    PhotoAlbumModel model = new PhotoAlbumModel(PhotoAlbumModel.DEFAULT_KEYFRAME_INTERVAL,
+        packed);
+    // The album's shapes by name, in drawing order.
+    Map<String, Shape> expected = new LinkedHashMap<>();
+    List<String> names = new ArrayList<>();
+    int compactions = 0;
+    for (int op = 0; op < OPERATIONS; op++) {
+      boolean growing = op / 6000 % 2 == 0;
+      int kind = random.nextInt(100);
+      int removeAt = growing ? 75 : 90;
+      String name = names.isEmpty() ? null : names.get(random.nextInt(names.size()));
+      if (kind < (growing ? 35 : 10) || name == null) {
+        Shape shape = randomShape(random, "S" + op);
+        model.addShape(shape);
+        expected.put(shape.getName(), shape);
+        names.add(shape.getName());
+      } else if (kind < 50) {
+        double x = random.nextInt(2100) - 100;
+        double y = random.nextInt(2100) - 100;
+        model.move(name, x, y);
+        expected.get(name).setX(x);
+        expected.get(name).setY(y);
+      } else if (kind < 58) {
+        double[] size = randomSize(random);
+        model.resize(name, size[0], size[1]);
+        expected.get(name).setWidth(size[0]);
+        expected.get(name).setHeight(size[1]);
+      } else if (kind < 65) {
+        Color color = new Color(random.nextDouble(), random.nextDouble(), random.nextDouble());
+        model.changeColor(name, color);
+        expected.get(name).changeColor(color.getRed(), color.getGreen(), color.getBlue());
+      } else if (kind < removeAt) {
+        int slots = model.currentShapes().size();
+        model.remove(name);
+        expected.remove(name);
+        int last = names.size() - 1;
+        names.set(names.indexOf(name), names.get(last));
+        names.remove(last);
+        if (model.currentShapes().size() < slots) {
+          compactions++;
+        }
+      } else {
+        checkAlbumQueries(model, expected.values(), random);
+      }
+      if (random.nextInt(500) == 0) {
+        model.AddSnapshot("Step " + op);
+      }
+    }
+    assertTrue("The album should have compacted its slots", compactions >= 2);
+  }
+
+  /**
+   * Checks an album's region and point queries against a search through its shapes.
+   *
+   * @param model    the album
+   * @param expected the album's shapes, in drawing order
+   * @param random   the source of randomness
+   */
+  private static void checkAlbumQueries(PhotoAlbumModel model, Iterable<Shape> expected,
+                                        Random random) {
+    double[] r = randomRegion(random);
+    double px = random.nextInt(2200) - 100;
+    double py = random.nextInt(2200) - 100;
+    List<IShape> inRegion = new ArrayList<>();
+    IShape top = null;
+    for (Shape shape : expected) {
+      if (overlaps(shape, r[0], r[1], r[2], r[3])) {
+        inRegion.add(shape);
+      }
+      if (covers(shape, px, py)) {
+        top = shape;
+      }
+    }
+    assertSameShapes(inRegion, model.getShapesIn(r[0], r[1], r[2], r[3]));
+    assertSameShape(top, model.getShapeAt(px, py));
+  }
+
+  @Test
+  public void testAlbumQueriesFollowEdits() {
+    checkAlbum(false);
+  }
+
+  @Test
+  public void testPackedAlbumQueriesFollowEdits() {
+    checkAlbum(true);
+  }
+
+  @Test
+  public void testShapesFoundStayUnchangedAfterEdits() {
+    PhotoAlbumModel model = new PhotoAlbumModel(PhotoAlbumModel.DEFAULT_KEYFRAME_INTERVAL, true);
+    model.addShape(new Rectangle("R", 10, 10, 20, 20, new Color(1, 0, 0)));
+    List<IShape> found = model.getShapesIn(0, 0, 100, 100);
+    IShape atPoint = model.getShapeAt(15, 15);
+    model.move("R", 500, 500);
+    assertEquals(10, found.get(0).getX(), 0);
+    assertEquals(10, atPoint.getX(), 0);
+    assertTrue(model.getShapesIn(0, 0, 100, 100).isEmpty());
+    assertEquals(500, model.getShapeAt(510, 510).getX(), 0);
+  }
+}